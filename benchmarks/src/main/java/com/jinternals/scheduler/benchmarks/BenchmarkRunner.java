@@ -0,0 +1,22 @@
+package com.jinternals.scheduler.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler always on, so every result comes with its allocation rate
+ * ({@code gc.alloc.rate.norm} is bytes per operation). Takes the usual JMH command line, e.g. a benchmark regex
+ * or {@code -f 1 -wi 2 -i 3} for a quick run.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
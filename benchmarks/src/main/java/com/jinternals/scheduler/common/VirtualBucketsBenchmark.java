@@ -0,0 +1,67 @@
+package com.jinternals.scheduler.common;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Cost of mapping an event id to its bucket, which the API pays for every scheduled event, against alternative
+ * hash functions. Ids are UUIDs, as generated by the API, or short ids as clients tend to pick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualBucketsBenchmark {
+
+    private static final int ID_COUNT = 1024;
+
+    @Param({"uuid", "short"})
+    private String idKind;
+
+    private String[] ids;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        ids = new String[ID_COUNT];
+        for (int i = 0; i < ID_COUNT; i++) {
+            ids[i] = idKind.equals("uuid") ? UUID.randomUUID().toString() : "order-" + i;
+        }
+    }
+
+    private String nextId() {
+        return ids[next++ & (ID_COUNT - 1)];
+    }
+
+    @Benchmark
+    public int murmur3() {
+        return VirtualBuckets.bucket(nextId());
+    }
+
+    @Benchmark
+    public int partition() {
+        return VirtualBuckets.partition(nextId(), 6);
+    }
+
+    @Benchmark
+    public int crc32() {
+        CRC32 crc = new CRC32();
+        crc.update(nextId().getBytes(StandardCharsets.UTF_8));
+        return (int) (crc.getValue() % VirtualBuckets.BUCKET_COUNT);
+    }
+
+    /**
+     * String caches its hash, so after the first round over the ids this is only the modulo; an id freshly read
+     * from a request pays one pass over its chars. Not stable across JVM implementations either.
+     */
+    @Benchmark
+    public int stringHashCode() {
+        return Math.floorMod(nextId().hashCode(), VirtualBuckets.BUCKET_COUNT);
+    }
+}
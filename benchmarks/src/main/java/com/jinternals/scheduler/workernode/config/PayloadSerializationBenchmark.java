@@ -0,0 +1,59 @@
+package com.jinternals.scheduler.workernode.config;
+
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.jinternals.scheduler.workernode.config.KafkaConfig.SCHEDULER_EVENTS_TOPIC;
+
+/**
+ * Cost of serializing an event payload for {@code scheduler-events}. The worker's {@link PayloadSerializer}
+ * delegates to {@link JacksonJsonSerializer}, which writes the payload string as a JSON string and adds a type
+ * header to every record; the alternative is sending the payload as-is.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadSerializationBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    private int payloadSize;
+
+    private String payload;
+    private JacksonJsonSerializer<Object> jacksonJsonSerializer;
+    private StringSerializer stringSerializer;
+
+    @Setup
+    public void setUp() {
+        // Payloads are usually JSON documents themselves, so quotes have to be escaped
+        StringBuilder builder = new StringBuilder("{");
+        for (int field = 0; builder.length() < payloadSize - 1; field++) {
+            builder.append(field == 0 ? "" : ",").append("\"field").append(field).append("\":\"value\"");
+        }
+        payload = builder.append('}').toString();
+        jacksonJsonSerializer = new JacksonJsonSerializer<>();
+        stringSerializer = new StringSerializer();
+    }
+
+    @TearDown
+    public void tearDown() {
+        jacksonJsonSerializer.close();
+        stringSerializer.close();
+    }
+
+    @Benchmark
+    public byte[] jacksonJsonSerializer() {
+        return jacksonJsonSerializer.serialize(SCHEDULER_EVENTS_TOPIC, new RecordHeaders(), payload);
+    }
+
+    @Benchmark
+    public byte[] stringSerializer() {
+        return stringSerializer.serialize(SCHEDULER_EVENTS_TOPIC, new RecordHeaders(), payload);
+    }
+}
@@ -0,0 +1,65 @@
+package com.jinternals.scheduler.workernode.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event cost of the claim and dispatch loop of {@link EventProcessor} in OUTBOX mode: one poll drains
+ * 20 batches of 50 events from {@link InMemoryRepositories}, building the outbox rows and marking the events
+ * PROCESSED. The database round trips are left out, so this is the Java overhead that comes on top of them.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchLoopBenchmark {
+
+    private static final int EVENTS_PER_POLL = 1000;
+
+    private InMemoryRepositories repositories;
+    private EventProcessor eventProcessor;
+
+    @Setup
+    public void setUp() {
+        repositories = new InMemoryRepositories("{\"orderId\":1}");
+        PartitionManager partitionManager = new PartitionManager();
+        partitionManager.addPartition(0, 1);
+        Executor direct = Runnable::run;
+        ClockService clockService = new ClockService();
+        var eventRepository = repositories.eventRepository();
+        var transactionManager = InMemoryRepositories.transactionManager();
+
+        SchedulerMetrics metrics = new SchedulerMetrics(new SimpleMeterRegistry(), partitionManager, clockService);
+
+        DrainLimiter drainLimiter = new DrainLimiter(partitionManager, 0, 0, 6);
+        OutboxPublisher outboxPublisher = new OutboxPublisher(partitionManager, repositories.outboxRepository(),
+                null, null, null, transactionManager, metrics, drainLimiter, 100, 30000);
+        eventProcessor = new EventProcessor(partitionManager, eventRepository, repositories.outboxRepository(),
+                transactionManager, clockService, outboxPublisher,
+                new RecurrenceMaterializer(eventRepository, null, clockService),
+                new NamespaceRateLimiter(partitionManager, Map.of(), 6),
+                new RetryPolicy(eventRepository, clockService, transactionManager, 10, 1000, 600000), metrics,
+                new ClaimLeases(10000), drainLimiter, Optional.empty(), direct, 0, 0, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        eventProcessor.stop();
+        if (repositories.getEnqueued() == 0) {
+            throw new IllegalStateException("Nothing was dispatched");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_POLL)
+    public void dispatch() {
+        eventProcessor.drainIfDue(0);
+    }
+}
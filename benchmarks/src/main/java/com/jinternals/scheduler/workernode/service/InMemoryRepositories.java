@@ -0,0 +1,101 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import com.jinternals.scheduler.common.repositories.OutboxRepository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repositories backed by an endless supply of due events, so the dispatch loop can be measured without a
+ * database. Every claim returns freshly built events, as Hibernate would; only the methods the claim and dispatch
+ * loop calls are implemented.
+ */
+class InMemoryRepositories {
+
+    private final String payload;
+    private long claimed;
+    private long enqueued;
+
+    InMemoryRepositories(String payload) {
+        this.payload = payload;
+    }
+
+    long getEnqueued() {
+        return enqueued;
+    }
+
+    EventRepository eventRepository() {
+        return proxy(EventRepository.class, (method, args) -> switch (method) {
+            case "findNextScheduledTime" -> LocalDateTime.now().minusSeconds(1);
+            case "findTriggers", "findPendingNamespaces" -> List.of();
+            case "claimDueEvents" -> claim((int) args[0], (LocalDateTime) args[3], (int) args[5]);
+            case "completeClaim" -> ((List<?>) args[1]).size();
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    OutboxRepository outboxRepository() {
+        return proxy(OutboxRepository.class, (method, args) -> switch (method) {
+            case "insertAll" -> {
+                enqueued += ((List<?>) args[0]).size();
+                yield null;
+            }
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    static PlatformTransactionManager transactionManager() {
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+            }
+        };
+    }
+
+    private List<Event> claim(int partition, LocalDateTime lockedAt, int limit) {
+        List<Event> events = new ArrayList<>(limit);
+        for (int i = 0; i < limit; i++) {
+            Event event = new Event();
+            event.setId("event-" + claimed++);
+            event.setPartitionId(partition);
+            event.setPayload(payload);
+            event.setScheduledTime(lockedAt);
+            event.setStatus(EventStatus.IN_PROGRESS);
+            event.setLockedAt(lockedAt);
+            events.add(event);
+        }
+        return events;
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "toString" -> "InMemory" + type.getSimpleName();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> handler.invoke(method.getName(), args);
+                }));
+    }
+}
@@ -0,0 +1,58 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.OutboxEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-event cost of turning a claimed batch of 50 events into outbox rows the way processBatch does, and of its
+ * parts: reading the clock for every row and generating a random UUID for its id.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutboxEventBenchmark {
+
+    private static final int BATCH_SIZE = 50;
+
+    private List<Event> batch;
+
+    @Setup
+    public void setUp() {
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Event event = new Event();
+            event.setId(UUID.randomUUID().toString());
+            event.setPartitionId(1);
+            event.setPayload("{\"orderId\":" + i + "}");
+            batch.add(event);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<OutboxEvent> clockReadPerEvent() {
+        return batch.stream().map(event -> EventProcessor.toOutboxEvent(event, LocalDateTime.now())).toList();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<OutboxEvent> clockReadPerBatch() {
+        LocalDateTime createdAt = LocalDateTime.now();
+        return batch.stream().map(event -> EventProcessor.toOutboxEvent(event, createdAt)).toList();
+    }
+
+    @Benchmark
+    public String randomUuid() {
+        return UUID.randomUUID().toString();
+    }
+}
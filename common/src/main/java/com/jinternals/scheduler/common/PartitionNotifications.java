@@ -0,0 +1,48 @@
+package com.jinternals.scheduler.common;
+
+import java.time.LocalDateTime;
+
+/**
+ * Postgres LISTEN/NOTIFY contract between scheduler-api and the worker owning a partition. The payload is the
+ * scheduled time of the new event, followed by its id when a single event was scheduled.
+ */
+public class PartitionNotifications {
+
+    private static final String CHANNEL_PREFIX = "scheduler_partition_";
+    private static final char SEPARATOR = '|';
+
+    private PartitionNotifications() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static String channel(int partitionId) {
+        return CHANNEL_PREFIX + partitionId;
+    }
+
+    /**
+     * @return the partition of a channel, or -1 if it is not a partition channel
+     */
+    public static int partitionId(String channel) {
+        if (!channel.startsWith(CHANNEL_PREFIX)) {
+            return -1;
+        }
+        return Integer.parseInt(channel.substring(CHANNEL_PREFIX.length()));
+    }
+
+    public static String payload(LocalDateTime scheduledTime, String eventId) {
+        return eventId == null ? scheduledTime.toString() : scheduledTime.toString() + SEPARATOR + eventId;
+    }
+
+    public static LocalDateTime scheduledTime(String payload) {
+        int separator = payload.indexOf(SEPARATOR);
+        return LocalDateTime.parse(separator < 0 ? payload : payload.substring(0, separator));
+    }
+
+    /**
+     * @return the event id, or null if the notification covers a batch of events
+     */
+    public static String eventId(String payload) {
+        int separator = payload.indexOf(SEPARATOR);
+        return separator < 0 ? null : payload.substring(separator + 1);
+    }
+}
@@ -0,0 +1,63 @@
+package com.jinternals.scheduler.common;
+
+import com.github.luben.zstd.Zstd;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventPayload;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Offloads large payloads out of the {@code events} row. A payload of at least the offload threshold is zstd
+ * compressed into an {@link EventPayload} row keyed by the event id, and the event only keeps a reference to it,
+ * so claims scanning the partition's rows never read it. Workers publish the compressed bytes as they are, with a
+ * {@value #CONTENT_ENCODING_HEADER} header naming the encoding; only consumers decompress them.
+ * <p>
+ * What is compressed is the payload as the workers publish an inline one, a JSON string, so a consumer gets the
+ * same value once it has decompressed it, whether the payload was offloaded or not.
+ */
+public class Payloads {
+
+    public static final String ZSTD = "zstd";
+    public static final String CONTENT_ENCODING_HEADER = "content-encoding";
+
+    private static final int COMPRESSION_LEVEL = 3;
+
+    private Payloads() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * Moves the payload of an event about to be scheduled out of its row if it is at least {@code thresholdBytes}
+     * long in UTF-8.
+     *
+     * @return the payload row to store along with the event, or null if the payload stays inline
+     */
+    public static EventPayload offload(Event event, int thresholdBytes) {
+        String payload = event.getPayload();
+        if (payload == null || payload.length() < thresholdBytes / 3) {
+            // A char takes at most 3 bytes in UTF-8
+            return null;
+        }
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < thresholdBytes) {
+            return null;
+        }
+        event.setPayload(null);
+        event.setPayloadRef(event.getId());
+        return new EventPayload(event.getId(), ZSTD,
+                Zstd.compress(JsonMapper.shared().writeValueAsBytes(payload), COMPRESSION_LEVEL));
+    }
+
+    /**
+     * Only for reading a payload back, e.g. to show an event; dispatch never decompresses.
+     */
+    public static String decompress(EventPayload payload) {
+        if (!ZSTD.equals(payload.getEncoding())) {
+            throw new IllegalArgumentException("Unknown payload encoding " + payload.getEncoding());
+        }
+        byte[] data = payload.getData();
+        return JsonMapper.shared().readValue(Zstd.decompress(data, Math.toIntExact(Zstd.getFrameContentSize(data))),
+                String.class);
+    }
+}
@@ -0,0 +1,99 @@
+package com.jinternals.scheduler.common;
+
+import com.jinternals.scheduler.common.model.Event;
+import org.springframework.scheduling.support.CronExpression;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Next-fire computation for recurring events. A series is either a Spring cron expression or a fixed interval,
+ * optionally bounded by a recurrence end. Only one occurrence of a series is stored as PENDING at a time; the
+ * next one is materialized when the current one is dispatched.
+ * <p>
+ * Occurrences missed while nothing fired (e.g. no worker owned the partition) are skipped rather than caught
+ * up one by one. Parsed cron expressions are cached, since far fewer expressions than series are expected.
+ */
+public class Recurrences {
+
+    private static final int MAX_CACHED_EXPRESSIONS = 10_000;
+    private static final Map<String, CronExpression> CRON_EXPRESSIONS = new ConcurrentHashMap<>();
+
+    private Recurrences() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static boolean isRecurring(Event event) {
+        return event.getCronExpression() != null || event.getIntervalMs() != null;
+    }
+
+    /**
+     * @throws IllegalArgumentException if both or neither of a cron expression and an interval are given, the
+     *                                  interval is not positive or the cron expression does not parse
+     */
+    public static void validate(String cronExpression, Long intervalMs) {
+        if ((cronExpression == null) == (intervalMs == null)) {
+            throw new IllegalArgumentException("Exactly one of cron and intervalMs is required");
+        }
+        if (intervalMs != null && intervalMs <= 0) {
+            throw new IllegalArgumentException("intervalMs must be positive");
+        }
+        if (cronExpression != null) {
+            cron(cronExpression);
+        }
+    }
+
+    /**
+     * @return the first fire time of a series created at {@code now} without an explicit scheduled time
+     */
+    public static LocalDateTime firstFireTime(String cronExpression, Long intervalMs, LocalDateTime now) {
+        return intervalMs != null ? now.plus(intervalMs, ChronoUnit.MILLIS) : cron(cronExpression).next(now);
+    }
+
+    /**
+     * @param occurrence an occurrence of a recurring series that is being dispatched
+     * @return the fire time of the series' next occurrence after {@code now}, or null if the series has ended
+     */
+    public static LocalDateTime nextFireTime(Event occurrence, LocalDateTime now) {
+        LocalDateTime last = occurrence.getScheduledTime();
+        LocalDateTime next;
+        if (occurrence.getIntervalMs() != null) {
+            long intervalMs = occurrence.getIntervalMs();
+            long elapsedMs = ChronoUnit.MILLIS.between(last, now);
+            // Stays on the series' grid: last + k * interval for the smallest k landing after now
+            long steps = elapsedMs < 0 ? 1 : elapsedMs / intervalMs + 1;
+            next = last.plus(steps * intervalMs, ChronoUnit.MILLIS);
+        } else {
+            next = cron(occurrence.getCronExpression()).next(now.isAfter(last) ? now : last);
+        }
+        if (next == null || (occurrence.getRecurrenceEnd() != null && next.isAfter(occurrence.getRecurrenceEnd()))) {
+            return null;
+        }
+        return next;
+    }
+
+    /**
+     * @return the id of a series' occurrence at {@code scheduledTime}, the same every time it is derived, so a
+     * re-dispatched occurrence never materializes its successor twice
+     */
+    public static String occurrenceId(String seriesId, LocalDateTime scheduledTime) {
+        String name = seriesId + '@' + scheduledTime;
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static CronExpression cron(String expression) {
+        CronExpression cached = CRON_EXPRESSIONS.get(expression);
+        if (cached != null) {
+            return cached;
+        }
+        CronExpression parsed = CronExpression.parse(expression);
+        if (CRON_EXPRESSIONS.size() < MAX_CACHED_EXPRESSIONS) {
+            CRON_EXPRESSIONS.putIfAbsent(expression, parsed);
+        }
+        return parsed;
+    }
+}
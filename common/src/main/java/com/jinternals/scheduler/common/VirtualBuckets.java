@@ -0,0 +1,81 @@
+package com.jinternals.scheduler.common;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Maps event ids onto a fixed number of virtual buckets and buckets onto scheduler partitions. The bucket of an
+ * event never changes and is stored on its row; only the bucket-to-partition mapping depends on
+ * {@code scheduler.partitions}. Growing the partition count to a multiple of the old one splits every partition,
+ * e.g. 6 to 12 sends each bucket of partition {@code p} to either {@code p} or {@code p + 6}.
+ */
+public class VirtualBuckets {
+
+    public static final int BUCKET_COUNT = 4096;
+
+    private VirtualBuckets() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * @return the bucket of an id, based on the 32-bit MurmurHash3 of its UTF-8 bytes, so it is stable across
+     * JVMs and reproducible outside Java
+     */
+    public static int bucket(String id) {
+        return Math.floorMod(murmur3(id.getBytes(StandardCharsets.UTF_8)), BUCKET_COUNT);
+    }
+
+    public static int partition(int bucket, int numPartitions) {
+        if (numPartitions < 1 || numPartitions > BUCKET_COUNT) {
+            throw new IllegalArgumentException("Partition count must be between 1 and " + BUCKET_COUNT);
+        }
+        return bucket % numPartitions;
+    }
+
+    public static int partition(String id, int numPartitions) {
+        return partition(bucket(id), numPartitions);
+    }
+
+    private static int murmur3(byte[] data) {
+        final int c1 = 0xcc9e2d51;
+        final int c2 = 0x1b873593;
+        int h = 0;
+        int blocks = data.length / 4;
+        for (int i = 0; i < blocks; i++) {
+            int k = (data[i * 4] & 0xff)
+                    | (data[i * 4 + 1] & 0xff) << 8
+                    | (data[i * 4 + 2] & 0xff) << 16
+                    | (data[i * 4 + 3] & 0xff) << 24;
+            k *= c1;
+            k = Integer.rotateLeft(k, 15);
+            k *= c2;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+        }
+
+        int k = 0;
+        int tail = blocks * 4;
+        switch (data.length & 3) {
+            case 3:
+                k ^= (data[tail + 2] & 0xff) << 16;
+            case 2:
+                k ^= (data[tail + 1] & 0xff) << 8;
+            case 1:
+                k ^= data[tail] & 0xff;
+                k *= c1;
+                k = Integer.rotateLeft(k, 15);
+                k *= c2;
+                h ^= k;
+            default:
+                break;
+        }
+
+        h ^= data.length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
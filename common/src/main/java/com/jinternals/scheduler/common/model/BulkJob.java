@@ -0,0 +1,69 @@
+package com.jinternals.scheduler.common.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A bulk cancel or reschedule of the PENDING events matching a filter, run by the API in the background. The job
+ * row records its progress: the partitions done so far and the events affected in them.
+ */
+@Entity
+@Data
+@Table(name = "bulk_jobs")
+public class BulkJob {
+
+    public enum Operation {
+        CANCEL, RESCHEDULE
+    }
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED,
+        // Done, except for matching events that stayed locked by other transactions; see the error
+        PARTIAL,
+        FAILED
+    }
+
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Operation operation;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private Status status;
+
+    private String namespace;
+
+    private String eventName;
+
+    // Scheduled time window of the matching events, from inclusive, to exclusive
+    private LocalDateTime scheduledFrom;
+
+    private LocalDateTime scheduledTo;
+
+    // How far RESCHEDULE moves the events, negative to bring them forward
+    private Long shiftMs;
+
+    private int partitions;
+
+    private int partitionsDone;
+
+    private long affected;
+
+    @Column(length = 1024)
+    private String error;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+}
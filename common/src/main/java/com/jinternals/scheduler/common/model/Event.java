@@ -2,6 +2,7 @@ package com.jinternals.scheduler.common.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.LastModifiedDate;
 import org.springframework.data.annotation.ReadOnlyProperty;
@@ -10,7 +11,10 @@ import java.time.LocalDateTime;
 
 @Entity
 @Data
-@Table(name = "events")
+@Table(name = "events", indexes = {
+        @Index(name = "idx_events_series", columnList = "series_id"),
+        @Index(name = "idx_events_namespace",
+                columnList = "partition_id, status, namespace, priority DESC, scheduled_time")})
 public class Event {
     @Id
     private String id;
@@ -19,18 +23,53 @@ public class Event {
 
     private String namespace;
 
+    // Within a namespace, due events of higher priority are claimed first
+    @ColumnDefault("0")
+    private int priority;
+
     private LocalDateTime scheduledTime;
 
     private String payload;
 
+    // Id of the EventPayload holding the compressed payload instead of the payload column, see Payloads
+    @Column(length = 36)
+    private String payloadRef;
+
     @Column(name = "exception_stack_trace", length = 4096)
     private String exceptionStackTrace;
 
     @Column(name = "locked_at")
     private LocalDateTime lockedAt;
 
+    // Ownership epoch of the partition master that claimed the event, see PartitionEpoch
+    private Long claimEpoch;
+
+    // Helix instance that claimed the event, and until when the claim holds unless it renews it
+    private String claimedBy;
+
+    private LocalDateTime leaseUntil;
+
+    // Failed dispatch attempts so far; reset when a FAILED event is re-driven
+    @ColumnDefault("0")
+    private int attempts;
+
     private int partitionId;
 
+    // Virtual bucket of the id, see VirtualBuckets; null for events scheduled before buckets existed
+    private Integer bucket;
+
+    // Recurring events only, see Recurrences: either a Spring cron expression or a fixed interval
+    private String cronExpression;
+
+    private Long intervalMs;
+
+    // Last time an occurrence may be scheduled at, or null for an endless series
+    private LocalDateTime recurrenceEnd;
+
+    // Id of the first occurrence of the series; each occurrence is a row of its own
+    @Column(length = 36)
+    private String seriesId;
+
     @Enumerated(EnumType.STRING)
     private EventStatus status;
 
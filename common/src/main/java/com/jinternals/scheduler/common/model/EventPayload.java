@@ -0,0 +1,32 @@
+package com.jinternals.scheduler.common.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compressed payload of an event, stored apart from its row, see {@code Payloads}. Every occurrence of a recurring
+ * series refers to the payload of its first occurrence.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "event_payloads")
+public class EventPayload {
+
+    // Id of the event the payload was scheduled with
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @Column(nullable = false, length = 16)
+    private String encoding;
+
+    @Column(nullable = false, columnDefinition = "BYTEA")
+    private byte[] data;
+}
@@ -0,0 +1,9 @@
+package com.jinternals.scheduler.common.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Id and due time of a pending event, used to prefetch upcoming work without loading full entities.
+ */
+public record EventTrigger(String id, LocalDateTime scheduledTime) {
+}
@@ -3,6 +3,7 @@ package com.jinternals.scheduler.common.model;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -12,7 +13,8 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "outbox")
+@Table(name = "outbox", indexes = @Index(name = "idx_outbox_partition_created",
+        columnList = "partition_id, created_at, id"))
 @Data
 @Builder
 @NoArgsConstructor
@@ -31,6 +33,10 @@ public class OutboxEvent {
     @Column(columnDefinition = "TEXT")
     private String payload;
 
+    // Published as the compressed bytes of this EventPayload instead of payload
+    @Column(name = "payload_ref", length = 36)
+    private String payloadRef;
+
     @Column(name = "created_at")
     private LocalDateTime createdAt;
 
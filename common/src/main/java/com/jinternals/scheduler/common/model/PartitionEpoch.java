@@ -0,0 +1,24 @@
+package com.jinternals.scheduler.common.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Data;
+
+/**
+ * Ownership epoch of a scheduler partition, raised every time a worker becomes its master. Claims carry the epoch
+ * of the master making them and are rejected once it is no longer current.
+ */
+@Entity
+@Data
+@Table(name = "partition_epochs")
+public class PartitionEpoch {
+
+    @Id
+    private int partitionId;
+
+    private long epoch;
+
+    // Helix instance name of the master that acquired the epoch
+    private String owner;
+}
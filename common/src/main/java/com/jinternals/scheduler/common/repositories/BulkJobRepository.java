@@ -0,0 +1,7 @@
+package com.jinternals.scheduler.common.repositories;
+
+import com.jinternals.scheduler.common.model.BulkJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface BulkJobRepository extends JpaRepository<BulkJob, String> {
+}
@@ -0,0 +1,35 @@
+package com.jinternals.scheduler.common.repositories;
+
+import com.jinternals.scheduler.common.model.EventStatus;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Status transitions of claimed batches, issued as plain JDBC with the ids bound as one array, so the statement
+ * text does not grow with the batch and bypasses the persistence context the claimed events are no longer in.
+ */
+public interface EventJdbcRepository {
+
+    /**
+     * Moves claimed events to {@code newStatus}, but only while the claim made at {@code lockedAt} still holds,
+     * i.e. the events were not reset by the stuck event reaper and claimed again in the meantime.
+     *
+     * @return the number of events whose claim still held
+     */
+    int completeClaim(int partitionId, Collection<String> ids, LocalDateTime lockedAt, EventStatus oldStatus,
+                      EventStatus newStatus);
+
+    /**
+     * Hands claimed events back, fenced like {@link #completeClaim}, so they are retried without waiting for
+     * the stuck event reaper.
+     */
+    int releaseClaim(int partitionId, Collection<String> ids, LocalDateTime lockedAt, EventStatus oldStatus,
+                     EventStatus newStatus);
+
+    /**
+     * Same as {@link #releaseClaim}, but the events are only due again at {@code scheduledTime}.
+     */
+    int postponeClaim(int partitionId, Collection<String> ids, LocalDateTime lockedAt, EventStatus oldStatus,
+                      EventStatus newStatus, LocalDateTime scheduledTime);
+}
@@ -0,0 +1,60 @@
+package com.jinternals.scheduler.common.repositories;
+
+import com.jinternals.scheduler.common.model.EventStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public class EventJdbcRepositoryImpl implements EventJdbcRepository {
+
+    private static final String COMPLETE_CLAIM = """
+            UPDATE events SET status = ?
+            WHERE partition_id = ? AND id = ANY (?) AND status = ? AND locked_at = ?""";
+
+    private static final String RELEASE_CLAIM = """
+            UPDATE events SET status = ?, locked_at = NULL
+            WHERE partition_id = ? AND id = ANY (?) AND status = ? AND locked_at = ?""";
+
+    private static final String POSTPONE_CLAIM = """
+            UPDATE events SET status = ?, locked_at = NULL, scheduled_time = ?
+            WHERE partition_id = ? AND id = ANY (?) AND status = ? AND locked_at = ?""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EventJdbcRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int completeClaim(int partitionId, Collection<String> ids, LocalDateTime lockedAt, EventStatus oldStatus,
+                             EventStatus newStatus) {
+        return transition(COMPLETE_CLAIM, partitionId, ids, lockedAt, oldStatus, newStatus);
+    }
+
+    @Override
+    public int releaseClaim(int partitionId, Collection<String> ids, LocalDateTime lockedAt, EventStatus oldStatus,
+                            EventStatus newStatus) {
+        return transition(RELEASE_CLAIM, partitionId, ids, lockedAt, oldStatus, newStatus);
+    }
+
+    @Override
+    public int postponeClaim(int partitionId, Collection<String> ids, LocalDateTime lockedAt, EventStatus oldStatus,
+                             EventStatus newStatus, LocalDateTime scheduledTime) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(POSTPONE_CLAIM, newStatus.name(), Timestamp.valueOf(scheduledTime), partitionId,
+                ids.toArray(String[]::new), oldStatus.name(), Timestamp.valueOf(lockedAt));
+    }
+
+    private int transition(String sql, int partitionId, Collection<String> ids, LocalDateTime lockedAt,
+                           EventStatus oldStatus, EventStatus newStatus) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(sql, newStatus.name(), partitionId, ids.toArray(String[]::new), oldStatus.name(),
+                Timestamp.valueOf(lockedAt));
+    }
+}
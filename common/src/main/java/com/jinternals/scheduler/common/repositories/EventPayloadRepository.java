@@ -0,0 +1,26 @@
+package com.jinternals.scheduler.common.repositories;
+
+import com.jinternals.scheduler.common.model.EventPayload;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+
+public interface EventPayloadRepository extends JpaRepository<EventPayload, String> {
+
+    /**
+     * Deletes the given payloads of removed events, except those a PENDING occurrence of a recurring series still
+     * refers to. An occurrence refers to the payload of its series, which has the series id.
+     *
+     * @return the number of payloads deleted
+     */
+    @Modifying
+    @Query(value = """
+            DELETE FROM event_payloads p
+            WHERE p.id IN (:ids)
+              AND NOT EXISTS (SELECT 1 FROM events e WHERE e.series_id = p.id AND e.status = 'PENDING')""",
+            nativeQuery = true)
+    int deleteUnreferenced(@Param("ids") Collection<String> ids);
+}
@@ -2,30 +2,355 @@ package com.jinternals.scheduler.common.repositories;
 
 import com.jinternals.scheduler.common.model.Event;
 import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.model.EventTrigger;
+import com.jinternals.scheduler.common.model.PartitionEpoch;
 import com.jinternals.scheduler.common.QueryHintsUtils;
 import jakarta.persistence.LockModeType;
 import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
-public interface EventRepository extends JpaRepository<Event, String> {
+public interface EventRepository extends JpaRepository<Event, String>, EventJdbcRepository {
 
     @QueryHints({@QueryHint(name = QueryHintsUtils.TIMEOUT_HINT_NAME, value = QueryHintsUtils.UPGRADE_SKIP_LOCKED)})
     @Lock(LockModeType.PESSIMISTIC_WRITE)
     List<Event> findTop50ByPartitionIdAndStatusOrderByScheduledTime(int partitionId, EventStatus status);
 
-    @QueryHints({@QueryHint(name = QueryHintsUtils.TIMEOUT_HINT_NAME, value = QueryHintsUtils.UPGRADE_SKIP_LOCKED)})
-    @Lock(LockModeType.PESSIMISTIC_WRITE)
-    List<Event> findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(int partitionId,
-                                                                                                 EventStatus status, LocalDateTime scheduledTime);
+    /**
+     * Claims up to {@code limit} due PENDING events of a partition in a single statement: the rows are locked
+     * with SKIP LOCKED, moved to IN_PROGRESS and returned in their updated state. The rows are picked in a
+     * materialized CTE: as an {@code IN} subquery the planner may rescan the LIMIT once per outer row, and every
+     * rescan skips the rows already claimed and locks the next ones.
+     * <p>
+     * Events of {@code excludedNamespaces} are left alone; they are rate limited and claimed per namespace.
+     * <p>
+     * Nothing is claimed unless {@code epoch} is still the partition's current {@link PartitionEpoch}, so a
+     * master that lost the partition cannot claim behind its successor's back. The epoch row is share-locked, so
+     * a successor taking over waits for claims in flight to commit; the claimed rows are stamped with the epoch.
+     * <p>
+     * The claim records the partition's master in {@code claimed_by} and holds until {@code leaseUntil}, unless
+     * the master renews it; see {@link #renewLeases}.
+     */
+    @Query(value = """
+            WITH due AS MATERIALIZED (
+                SELECT id FROM events
+                WHERE partition_id = :partitionId AND status = 'PENDING' AND scheduled_time <= :now
+                    AND (namespace IS NULL OR namespace <> ALL (:excludedNamespaces))
+                    AND EXISTS (SELECT 1 FROM partition_epochs
+                                WHERE partition_id = :partitionId AND epoch = :epoch FOR SHARE)
+                ORDER BY scheduled_time
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED)
+            UPDATE events SET status = 'IN_PROGRESS', locked_at = :lockedAt, lease_until = :leaseUntil, claim_epoch = :epoch,
+                claimed_by = (SELECT owner FROM partition_epochs WHERE partition_id = :partitionId)
+            WHERE partition_id = :partitionId AND id IN (SELECT id FROM due)
+            RETURNING *""", nativeQuery = true)
+    List<Event> claimDueEvents(@Param("partitionId") int partitionId,
+                               @Param("epoch") long epoch,
+                               @Param("now") LocalDateTime now,
+                               @Param("lockedAt") LocalDateTime lockedAt,
+                               @Param("leaseUntil") LocalDateTime leaseUntil,
+                               @Param("limit") int limit,
+                               @Param("excludedNamespaces") String[] excludedNamespaces);
+
+    /**
+     * Same as {@link #claimDueEvents} for the events of one namespace, highest priority first.
+     */
+    @Query(value = """
+            WITH due AS MATERIALIZED (
+                SELECT id FROM events
+                WHERE partition_id = :partitionId AND status = 'PENDING' AND namespace = :namespace
+                    AND scheduled_time <= :now
+                    AND EXISTS (SELECT 1 FROM partition_epochs
+                                WHERE partition_id = :partitionId AND epoch = :epoch FOR SHARE)
+                ORDER BY priority DESC, scheduled_time
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED)
+            UPDATE events SET status = 'IN_PROGRESS', locked_at = :lockedAt, lease_until = :leaseUntil, claim_epoch = :epoch,
+                claimed_by = (SELECT owner FROM partition_epochs WHERE partition_id = :partitionId)
+            WHERE partition_id = :partitionId AND id IN (SELECT id FROM due)
+            RETURNING *""", nativeQuery = true)
+    List<Event> claimDueEventsInNamespace(@Param("partitionId") int partitionId,
+                                          @Param("epoch") long epoch,
+                                          @Param("namespace") String namespace,
+                                          @Param("now") LocalDateTime now,
+                                          @Param("lockedAt") LocalDateTime lockedAt,
+                                          @Param("leaseUntil") LocalDateTime leaseUntil,
+                                          @Param("limit") int limit);
+
+    /**
+     * Lists the namespaces with PENDING events in a partition, skipping from one namespace to the next through
+     * the namespace index instead of reading every pending row.
+     */
+    @Query(value = """
+            WITH RECURSIVE namespaces AS (
+                (SELECT namespace FROM events
+                 WHERE partition_id = :partitionId AND status = 'PENDING' AND namespace IS NOT NULL
+                 ORDER BY namespace LIMIT 1)
+                UNION ALL
+                SELECT (SELECT e.namespace FROM events e
+                        WHERE e.partition_id = :partitionId AND e.status = 'PENDING' AND e.namespace > n.namespace
+                        ORDER BY e.namespace LIMIT 1)
+                FROM namespaces n WHERE n.namespace IS NOT NULL)
+            SELECT namespace FROM namespaces WHERE namespace IS NOT NULL""", nativeQuery = true)
+    List<String> findPendingNamespaces(@Param("partitionId") int partitionId);
+
+    /**
+     * Same as {@link #claimDueEvents} for events already known by id, e.g. fired by the timing wheel.
+     */
+    @Query(value = """
+            UPDATE events SET status = 'IN_PROGRESS', locked_at = :lockedAt, lease_until = :leaseUntil, claim_epoch = :epoch,
+                claimed_by = (SELECT owner FROM partition_epochs WHERE partition_id = :partitionId)
+            WHERE partition_id = :partitionId AND id IN (
+                SELECT id FROM events
+                WHERE partition_id = :partitionId AND id IN (:ids) AND status = 'PENDING' AND scheduled_time <= :now
+                    AND (namespace IS NULL OR namespace <> ALL (:excludedNamespaces))
+                    AND EXISTS (SELECT 1 FROM partition_epochs
+                                WHERE partition_id = :partitionId AND epoch = :epoch FOR SHARE)
+                FOR UPDATE SKIP LOCKED)
+            RETURNING *""", nativeQuery = true)
+    List<Event> claimDueEventsById(@Param("partitionId") int partitionId,
+                                   @Param("epoch") long epoch,
+                                   @Param("ids") Collection<String> ids,
+                                   @Param("now") LocalDateTime now,
+                                   @Param("lockedAt") LocalDateTime lockedAt,
+                                   @Param("leaseUntil") LocalDateTime leaseUntil,
+                                   @Param("excludedNamespaces") String[] excludedNamespaces);
+
+    /**
+     * Fused dispatch: claims up to {@code limit} due PENDING events of a partition, marks them PROCESSED and
+     * copies them into the outbox in a single statement, skipping the IN_PROGRESS state.
+     *
+     * @return the events enqueued, so that recurring ones can materialize their next occurrence
+     */
+    @Query(value = """
+            WITH due AS MATERIALIZED (
+                SELECT id FROM events
+                WHERE partition_id = :partitionId AND status = 'PENDING' AND scheduled_time <= :now
+                    AND (namespace IS NULL OR namespace <> ALL (:excludedNamespaces))
+                    AND EXISTS (SELECT 1 FROM partition_epochs
+                                WHERE partition_id = :partitionId AND epoch = :epoch FOR SHARE)
+                ORDER BY scheduled_time
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED),
+            claimed AS (
+                UPDATE events SET status = 'PROCESSED', claim_epoch = :epoch
+                WHERE partition_id = :partitionId AND id IN (SELECT id FROM due)
+                RETURNING *),
+            enqueued AS (
+                INSERT INTO outbox (id, aggregate_id, aggregate_type, payload, payload_ref, created_at, partition_id)
+                SELECT gen_random_uuid()::text, id, 'EVENT', payload, payload_ref, :now, partition_id FROM claimed)
+            SELECT * FROM claimed""", nativeQuery = true)
+    List<Event> enqueueDueEvents(@Param("partitionId") int partitionId,
+                                 @Param("epoch") long epoch,
+                                 @Param("now") LocalDateTime now,
+                                 @Param("limit") int limit,
+                                 @Param("excludedNamespaces") String[] excludedNamespaces);
+
+    /**
+     * Same as {@link #enqueueDueEvents} for the events of one namespace, highest priority first.
+     */
+    @Query(value = """
+            WITH due AS MATERIALIZED (
+                SELECT id FROM events
+                WHERE partition_id = :partitionId AND status = 'PENDING' AND namespace = :namespace
+                    AND scheduled_time <= :now
+                    AND EXISTS (SELECT 1 FROM partition_epochs
+                                WHERE partition_id = :partitionId AND epoch = :epoch FOR SHARE)
+                ORDER BY priority DESC, scheduled_time
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED),
+            claimed AS (
+                UPDATE events SET status = 'PROCESSED', claim_epoch = :epoch
+                WHERE partition_id = :partitionId AND id IN (SELECT id FROM due)
+                RETURNING *),
+            enqueued AS (
+                INSERT INTO outbox (id, aggregate_id, aggregate_type, payload, payload_ref, created_at, partition_id)
+                SELECT gen_random_uuid()::text, id, 'EVENT', payload, payload_ref, :now, partition_id FROM claimed)
+            SELECT * FROM claimed""", nativeQuery = true)
+    List<Event> enqueueDueEventsInNamespace(@Param("partitionId") int partitionId,
+                                            @Param("epoch") long epoch,
+                                            @Param("namespace") String namespace,
+                                            @Param("now") LocalDateTime now,
+                                            @Param("limit") int limit);
+
+    /**
+     * Same as {@link #enqueueDueEvents} for events already known by id, e.g. fired by the timing wheel.
+     */
+    @Query(value = """
+            WITH claimed AS (
+                UPDATE events SET status = 'PROCESSED', claim_epoch = :epoch
+                WHERE partition_id = :partitionId AND id IN (
+                    SELECT id FROM events
+                    WHERE partition_id = :partitionId AND id IN (:ids) AND status = 'PENDING' AND scheduled_time <= :now
+                        AND (namespace IS NULL OR namespace <> ALL (:excludedNamespaces))
+                        AND EXISTS (SELECT 1 FROM partition_epochs
+                                    WHERE partition_id = :partitionId AND epoch = :epoch FOR SHARE)
+                    FOR UPDATE SKIP LOCKED)
+                RETURNING *),
+            enqueued AS (
+                INSERT INTO outbox (id, aggregate_id, aggregate_type, payload, payload_ref, created_at, partition_id)
+                SELECT gen_random_uuid()::text, id, 'EVENT', payload, payload_ref, :now, partition_id FROM claimed)
+            SELECT * FROM claimed""", nativeQuery = true)
+    List<Event> enqueueDueEventsById(@Param("partitionId") int partitionId,
+                                     @Param("epoch") long epoch,
+                                     @Param("ids") Collection<String> ids,
+                                     @Param("now") LocalDateTime now,
+                                     @Param("excludedNamespaces") String[] excludedNamespaces);
+
+    /**
+     * Stores the next occurrence of a recurring series unless it already exists, e.g. because the previous
+     * occurrence is dispatched a second time, or the series was removed: the series lives as long as the row of its
+     * first occurrence, whose id is the series id. That row is locked in share mode, so a concurrent
+     * {@link #deleteWithPendingOccurrences} either waits for this occurrence and deletes it too, or wins and
+     * stops the series. It is looked up by id alone, as it stays in its partition once processed.
+     *
+     * @return 1 if the occurrence was inserted, 0 if it existed or the series is gone
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO events (id, partition_id, bucket, scheduled_time, status, event_name, namespace, priority,
+                payload, payload_ref, cron_expression, interval_ms, recurrence_end, series_id, created_at, updated_at)
+            SELECT :#{#event.id}, :#{#event.partitionId}, CAST(:#{#event.bucket} AS INT),
+                :#{#event.scheduledTime}, 'PENDING', :#{#event.eventName}, :#{#event.namespace},
+                :#{#event.priority}, :#{#event.payload}, :#{#event.payloadRef}, :#{#event.cronExpression},
+                CAST(:#{#event.intervalMs} AS BIGINT),
+                CAST(:#{#event.recurrenceEnd} AS TIMESTAMP), :#{#event.seriesId}, now(), now()
+            WHERE EXISTS (SELECT 1 FROM events s WHERE s.id = :#{#event.seriesId} FOR SHARE)
+            ON CONFLICT DO NOTHING""", nativeQuery = true)
+    int insertOccurrence(@Param("event") Event event);
+
+    /**
+     * Deletes an event and, if it is the first occurrence of a recurring series, the series' pending occurrence,
+     * which cancels the series; see {@link #insertOccurrence}. An occurrence being dispatched is left alone.
+     *
+     * @return the {@code payload_ref} of each deleted event, null if it has none
+     */
+    @Query(value = """
+            DELETE FROM events
+            WHERE id = :id OR (series_id = :id AND status = 'PENDING')
+            RETURNING payload_ref""", nativeQuery = true)
+    List<String> deleteWithPendingOccurrences(@Param("id") String id);
+
+    /**
+     * Records a failed dispatch of a claimed event, fenced like {@link #completeClaim}: the event moves to
+     * {@code newStatus} at {@code scheduledTime}, i.e. PENDING to be retried after a backoff or FAILED for good,
+     * with one more attempt and the error that caused it.
+     *
+     * @return 1 if the claim still held, 0 otherwise
+     */
+    @Modifying
+    @Query("UPDATE Event e SET e.status = :newStatus, e.lockedAt = NULL, e.attempts = e.attempts + 1, " +
+            "e.scheduledTime = :scheduledTime, e.exceptionStackTrace = :exceptionStackTrace " +
+            "WHERE e.partitionId = :partitionId AND e.id = :id AND e.status = :oldStatus AND e.lockedAt = :lockedAt")
+    int failClaim(@Param("partitionId") int partitionId,
+                  @Param("id") String id,
+                  @Param("lockedAt") LocalDateTime lockedAt,
+                  @Param("oldStatus") EventStatus oldStatus,
+                  @Param("newStatus") EventStatus newStatus,
+                  @Param("scheduledTime") LocalDateTime scheduledTime,
+                  @Param("exceptionStackTrace") String exceptionStackTrace);
+
+    /**
+     * Re-drives up to {@code limit} FAILED events of a partition, optionally only those of one namespace: they
+     * become PENDING, due at {@code now}, with a fresh attempt budget.
+     *
+     * @return the number of events re-driven
+     */
+    @Modifying
+    @Query(value = """
+            WITH failed AS MATERIALIZED (
+                SELECT id FROM events
+                WHERE partition_id = :partitionId AND status = 'FAILED'
+                    AND (CAST(:namespace AS VARCHAR) IS NULL OR namespace = :namespace)
+                LIMIT :limit
+                FOR UPDATE SKIP LOCKED)
+            UPDATE events SET status = 'PENDING', attempts = 0, scheduled_time = :now
+            WHERE partition_id = :partitionId AND id IN (SELECT id FROM failed)""", nativeQuery = true)
+    int redriveFailed(@Param("partitionId") int partitionId,
+                      @Param("namespace") String namespace,
+                      @Param("now") LocalDateTime now,
+                      @Param("limit") int limit);
+
+    /**
+     * Same as {@link #redriveFailed} for events known by id; ids of events that are not FAILED are ignored.
+     *
+     * @return the partition of each event re-driven
+     */
+    @Query(value = """
+            UPDATE events SET status = 'PENDING', attempts = 0, scheduled_time = :now
+            WHERE id IN (:ids) AND status = 'FAILED'
+            RETURNING partition_id""", nativeQuery = true)
+    List<Integer> redriveFailedById(@Param("ids") Collection<String> ids, @Param("now") LocalDateTime now);
+
+    /**
+     * Locks up to {@code limit} PENDING events stored in the partition that {@code scheduler.partitions} no longer
+     * maps to it, including events that have no bucket yet.
+     */
+    @Query(value = """
+            SELECT * FROM events
+            WHERE partition_id = :partitionId AND status = 'PENDING'
+                AND (bucket IS NULL OR mod(bucket, :numPartitions) <> :partitionId)
+            LIMIT :limit
+            FOR UPDATE SKIP LOCKED""", nativeQuery = true)
+    List<Event> lockMisplacedEvents(@Param("partitionId") int partitionId,
+                                    @Param("numPartitions") int numPartitions,
+                                    @Param("limit") int limit);
+
+    @Query("SELECT new com.jinternals.scheduler.common.model.EventTrigger(e.id, e.scheduledTime) FROM Event e " +
+            "WHERE e.partitionId = :partitionId AND e.status = :status " +
+            "AND e.scheduledTime > :from AND e.scheduledTime <= :to ORDER BY e.scheduledTime")
+    List<EventTrigger> findTriggers(@Param("partitionId") int partitionId,
+                                    @Param("status") EventStatus status,
+                                    @Param("from") LocalDateTime from,
+                                    @Param("to") LocalDateTime to,
+                                    Limit limit);
+
+    @Query("SELECT MIN(e.scheduledTime) FROM Event e WHERE e.partitionId = :partitionId AND e.status = :status")
+    LocalDateTime findNextScheduledTime(@Param("partitionId") int partitionId, @Param("status") EventStatus status);
+
+    /**
+     * Extends the lease of the claims made at {@code lockedAts} that are still being dispatched.
+     */
+    @Modifying
+    @Query("UPDATE Event e SET e.leaseUntil = :leaseUntil WHERE e.partitionId = :partitionId " +
+            "AND e.status = :status AND e.lockedAt IN :lockedAts")
+    int renewLeases(@Param("partitionId") int partitionId,
+                    @Param("status") EventStatus status,
+                    @Param("lockedAts") Collection<LocalDateTime> lockedAts,
+                    @Param("leaseUntil") LocalDateTime leaseUntil);
+
+    /**
+     * Returns claimed events whose lease ran out before {@code now}, i.e. their claimer died or lost track of
+     * them, to {@code newStatus}. Clearing {@code lockedAt} fences off any late write of the old claim.
+     *
+     * @return the number of events recovered
+     */
+    @Modifying
+    @Query("UPDATE Event e SET e.status = :newStatus, e.lockedAt = NULL, e.leaseUntil = NULL " +
+            "WHERE e.partitionId = :partitionId AND e.status = :oldStatus AND e.leaseUntil < :now")
+    int releaseExpiredLeases(@Param("partitionId") int partitionId,
+                             @Param("oldStatus") EventStatus oldStatus,
+                             @Param("newStatus") EventStatus newStatus,
+                             @Param("now") LocalDateTime now);
 
+    /**
+     * Returns the events claimed under an epoch older than {@code epoch}, or before epochs existed, to
+     * {@code newStatus}: their master is gone, so a new master does not need to wait for their leases.
+     *
+     * @return the number of events recovered
+     */
     @Modifying
-    @Query("UPDATE Event e SET e.status = :newStatus, e.lockedAt = NULL WHERE e.status = :oldStatus AND e.lockedAt < :cutoff AND e.partitionId IN :partitions")
-    int resetStuckEvents(@Param("oldStatus") EventStatus oldStatus,
-                         @Param("newStatus") EventStatus newStatus,
-                         @Param("cutoff") LocalDateTime cutoff,
-                         @Param("partitions") List<Integer> partitions);
+    @Query("UPDATE Event e SET e.status = :newStatus, e.lockedAt = NULL, e.leaseUntil = NULL " +
+            "WHERE e.partitionId = :partitionId AND e.status = :oldStatus " +
+            "AND (e.claimEpoch IS NULL OR e.claimEpoch < :epoch)")
+    int releaseOrphanedClaims(@Param("partitionId") int partitionId,
+                              @Param("epoch") long epoch,
+                              @Param("oldStatus") EventStatus oldStatus,
+                              @Param("newStatus") EventStatus newStatus);
 }
@@ -0,0 +1,21 @@
+package com.jinternals.scheduler.common.repositories;
+
+import com.jinternals.scheduler.common.model.OutboxEvent;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Outbox writes of the dispatch hot path, issued as plain JDBC instead of through the persistence context: the
+ * rows are only ever written once and deleted once published, so there is nothing for Hibernate to track.
+ */
+public interface OutboxJdbcRepository {
+
+    /**
+     * Inserts the rows as one JDBC batch, which the driver rewrites into multi-row inserts when the datasource URL
+     * sets {@code reWriteBatchedInserts=true}.
+     */
+    void insertAll(List<OutboxEvent> outboxEvents);
+
+    int deleteByIds(Collection<String> ids);
+}
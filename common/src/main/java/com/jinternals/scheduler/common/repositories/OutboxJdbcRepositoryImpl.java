@@ -0,0 +1,61 @@
+package com.jinternals.scheduler.common.repositories;
+
+import com.jinternals.scheduler.common.model.OutboxEvent;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.List;
+
+public class OutboxJdbcRepositoryImpl implements OutboxJdbcRepository {
+
+    private static final String INSERT = """
+            INSERT INTO outbox (id, aggregate_id, aggregate_type, payload, payload_ref, created_at, partition_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?)""";
+
+    // A single array parameter, so the statement is the same whatever the number of ids
+    private static final String DELETE_BY_IDS = "DELETE FROM outbox WHERE id = ANY (?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OutboxJdbcRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertAll(List<OutboxEvent> outboxEvents) {
+        if (outboxEvents.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                OutboxEvent outboxEvent = outboxEvents.get(i);
+                ps.setString(1, outboxEvent.getId());
+                ps.setString(2, outboxEvent.getAggregateId());
+                ps.setString(3, outboxEvent.getAggregateType());
+                ps.setString(4, outboxEvent.getPayload());
+                ps.setString(5, outboxEvent.getPayloadRef());
+                ps.setTimestamp(6, Timestamp.valueOf(outboxEvent.getCreatedAt()));
+                ps.setObject(7, outboxEvent.getPartitionId(), Types.INTEGER);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return outboxEvents.size();
+            }
+        });
+    }
+
+    @Override
+    public int deleteByIds(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return jdbcTemplate.update(DELETE_BY_IDS, (Object) ids.toArray(String[]::new));
+    }
+}
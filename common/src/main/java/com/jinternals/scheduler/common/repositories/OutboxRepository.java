@@ -1,10 +1,29 @@
 package com.jinternals.scheduler.common.repositories;
 
 import com.jinternals.scheduler.common.model.OutboxEvent;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
-public interface OutboxRepository extends JpaRepository<OutboxEvent, String> {
-    List<OutboxEvent> findTop500ByPartitionIdOrderByCreatedAt(Integer partitionId);
+public interface OutboxRepository extends JpaRepository<OutboxEvent, String>, OutboxJdbcRepository {
+
+    @Query("SELECT o FROM OutboxEvent o WHERE o.partitionId = :partitionId ORDER BY o.createdAt, o.id")
+    List<OutboxEvent> findOldest(@Param("partitionId") Integer partitionId, Limit limit);
+
+    /**
+     * Next page of {@link #findOldest}, starting after the given row. The redundant {@code createdAt >=} bound
+     * lets the (partition_id, created_at, id) index seek straight to the cursor.
+     */
+    @Query("SELECT o FROM OutboxEvent o WHERE o.partitionId = :partitionId AND o.createdAt >= :createdAt " +
+            "AND (o.createdAt > :createdAt OR o.id > :id) ORDER BY o.createdAt, o.id")
+    List<OutboxEvent> findOldestAfter(@Param("partitionId") Integer partitionId,
+                                      @Param("createdAt") LocalDateTime createdAt,
+                                      @Param("id") String id,
+                                      Limit limit);
+
+    long countByPartitionId(Integer partitionId);
 }
@@ -0,0 +1,21 @@
+package com.jinternals.scheduler.common.repositories;
+
+import com.jinternals.scheduler.common.model.PartitionEpoch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface PartitionEpochRepository extends JpaRepository<PartitionEpoch, Integer> {
+
+    /**
+     * Makes {@code owner} the master of a partition by raising its epoch, which fences off every claim made
+     * with an older one. Waits for claims in flight under the old epoch to commit.
+     *
+     * @return the new epoch
+     */
+    @Query(value = """
+            INSERT INTO partition_epochs (partition_id, epoch, owner) VALUES (:partitionId, 1, :owner)
+            ON CONFLICT (partition_id) DO UPDATE SET epoch = partition_epochs.epoch + 1, owner = :owner
+            RETURNING epoch""", nativeQuery = true)
+    long acquire(@Param("partitionId") int partitionId, @Param("owner") String owner);
+}
@@ -1,27 +1,84 @@
 CREATE TABLE IF NOT EXISTS events (
     id VARCHAR(36) PRIMARY KEY,
     partition_id INT NOT NULL,
+    bucket INT,
     scheduled_time TIMESTAMP NOT NULL,
     status VARCHAR(20) NOT NULL,
     event_name VARCHAR(255),
+    namespace VARCHAR(255),
+    priority INT DEFAULT 0 NOT NULL,
     payload TEXT,
+    payload_ref VARCHAR(36),
     created_at TIMESTAMP,
     updated_at TIMESTAMP,
     locked_at TIMESTAMP,
-    exception_stack_trace TEXT
+    exception_stack_trace VARCHAR(4096),
+    attempts INT DEFAULT 0 NOT NULL,
+    claim_epoch BIGINT,
+    claimed_by VARCHAR(255),
+    lease_until TIMESTAMP,
+    cron_expression VARCHAR(255),
+    interval_ms BIGINT,
+    recurrence_end TIMESTAMP,
+    series_id VARCHAR(36)
 );
 
 CREATE INDEX IF NOT EXISTS idx_events_partition_status_scheduled 
 ON events(partition_id, status, scheduled_time);
 
+CREATE INDEX IF NOT EXISTS idx_events_namespace
+ON events(partition_id, status, namespace, priority DESC, scheduled_time);
+
+CREATE INDEX IF NOT EXISTS idx_events_series
+ON events(series_id);
+
+CREATE INDEX IF NOT EXISTS idx_events_scheduled_id
+ON events(scheduled_time, id);
+
+CREATE INDEX IF NOT EXISTS idx_events_namespace_scheduled_id
+ON events(namespace, scheduled_time, id);
+
 CREATE TABLE IF NOT EXISTS outbox (
     id VARCHAR(36) PRIMARY KEY,
     aggregate_id VARCHAR(36) NOT NULL,
     aggregate_type VARCHAR(50) NOT NULL,
     payload TEXT,
+    payload_ref VARCHAR(36),
     created_at TIMESTAMP NOT NULL,
     partition_id INT
 );
 
 CREATE INDEX IF NOT EXISTS idx_outbox_created_at 
 ON outbox(created_at);
+
+CREATE INDEX IF NOT EXISTS idx_outbox_partition_created
+ON outbox(partition_id, created_at, id);
+
+CREATE TABLE IF NOT EXISTS partition_epochs (
+    partition_id INT PRIMARY KEY,
+    epoch BIGINT NOT NULL,
+    owner VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS event_payloads (
+    id VARCHAR(36) PRIMARY KEY,
+    encoding VARCHAR(16) NOT NULL,
+    data BYTEA NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS bulk_jobs (
+    id VARCHAR(36) PRIMARY KEY,
+    operation VARCHAR(20) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    namespace VARCHAR(255),
+    event_name VARCHAR(255),
+    scheduled_from TIMESTAMP,
+    scheduled_to TIMESTAMP,
+    shift_ms BIGINT,
+    partitions INT NOT NULL,
+    partitions_done INT NOT NULL,
+    affected BIGINT NOT NULL,
+    error VARCHAR(1024),
+    created_at TIMESTAMP,
+    updated_at TIMESTAMP
+);
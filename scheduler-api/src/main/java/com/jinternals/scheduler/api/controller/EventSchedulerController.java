@@ -1,26 +1,155 @@
 package com.jinternals.scheduler.api.controller;
 
+import com.jinternals.scheduler.api.exceptions.InvalidSearchException;
+import com.jinternals.scheduler.api.repositories.EventFilter;
+import com.jinternals.scheduler.api.repositories.EventKey;
+import com.jinternals.scheduler.api.service.BulkOperationService;
+import com.jinternals.scheduler.api.service.EventPage;
 import com.jinternals.scheduler.api.service.EventSchedulerService;
+import com.jinternals.scheduler.api.service.ScheduleResult;
+import com.jinternals.scheduler.common.model.BulkJob;
 import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.MappingIterator;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.ObjectWriter;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/event")
 public class EventSchedulerController {
 
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final EventSchedulerService eventSchedulerService;
+    private final BulkOperationService bulkOperationService;
+    private final ObjectReader createTaskRequestReader;
+    private final ObjectWriter eventWriter;
+
+    @Value("${scheduler.batch.chunk-size:1000}")
+    private int batchChunkSize;
 
-    public EventSchedulerController(EventSchedulerService eventSchedulerService) {
+    public EventSchedulerController(EventSchedulerService eventSchedulerService,
+                                    BulkOperationService bulkOperationService,
+                                    ObjectMapper objectMapper) {
         this.eventSchedulerService = eventSchedulerService;
+        this.bulkOperationService = bulkOperationService;
+        this.createTaskRequestReader = objectMapper.readerFor(CreateTaskRequest.class);
+        this.eventWriter = objectMapper.writerFor(Event.class);
     }
 
     @PostMapping
     public Event scheduleEvent(@RequestBody CreateTaskRequest request) {
-        String eventId = request.id() != null ? request.id() : UUID.randomUUID().toString();
-        return eventSchedulerService.scheduleEvent(eventId, request.name(), request.scheduledTime(), request.payload());
+        return eventSchedulerService.scheduleEvent(toEvent(request));
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public List<ScheduleResult> scheduleEvents(@RequestBody List<CreateTaskRequest> requests) {
+        return eventSchedulerService.scheduleEvents(requests.stream().map(this::toEvent).toList());
+    }
+
+    /**
+     * Streaming variant of {@link #scheduleEvents(List)}: one request per line, written chunk by chunk while the
+     * body is still being read.
+     */
+    @PostMapping(value = "/batch", consumes = APPLICATION_NDJSON_VALUE)
+    public List<ScheduleResult> scheduleEventStream(InputStream body) {
+        List<ScheduleResult> results = new ArrayList<>();
+        List<Event> chunk = new ArrayList<>(batchChunkSize);
+        try (MappingIterator<CreateTaskRequest> requests = createTaskRequestReader.readValues(body)) {
+            while (requests.hasNext()) {
+                chunk.add(toEvent(requests.next()));
+                if (chunk.size() == batchChunkSize) {
+                    results.addAll(eventSchedulerService.scheduleEvents(chunk));
+                    chunk = new ArrayList<>(batchChunkSize);
+                }
+            }
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(eventSchedulerService.scheduleEvents(chunk));
+        }
+        return results;
+    }
+
+    /**
+     * Re-drives FAILED events, see {@link EventSchedulerService#redriveFailed(List, String)}.
+     */
+    @PostMapping("/redrive")
+    public RedriveResult redriveFailedEvents(@RequestBody RedriveRequest request) {
+        return new RedriveResult(eventSchedulerService.redriveFailed(request.ids(), request.namespace()));
+    }
+
+    /**
+     * Starts cancelling or rescheduling every PENDING event matching the request, see {@link BulkOperationService}.
+     *
+     * @return the queued job; poll {@code GET /event/bulk/{jobId}} for its progress
+     */
+    @PostMapping("/bulk")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public BulkJob submitBulkOperation(@RequestBody BulkRequest request) {
+        return bulkOperationService.submit(request.operation(),
+                new EventFilter(request.namespace(), request.name(), null, request.from(), request.to()),
+                request.shiftMs());
+    }
+
+    @GetMapping("/bulk/{jobId}")
+    public BulkJob getBulkJob(@PathVariable("jobId") String jobId) {
+        return bulkOperationService.getJob(jobId);
+    }
+
+    /**
+     * Searches events by namespace, name, status and scheduled time window, in {@code (scheduledTime, id)} order.
+     * Pass the returned {@code next} cursor to fetch the following page.
+     */
+    @GetMapping
+    public EventPage searchEvents(@RequestParam(name = "namespace", required = false) String namespace,
+                                  @RequestParam(name = "name", required = false) String name,
+                                  @RequestParam(name = "status", required = false) EventStatus status,
+                                  @RequestParam(name = "from", required = false)
+                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                  @RequestParam(name = "to", required = false)
+                                  @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                  @RequestParam(name = "cursor", required = false) String cursor,
+                                  @RequestParam(name = "limit", defaultValue = "100") int limit) {
+        return eventSchedulerService.searchEvents(new EventFilter(namespace, name, status, from, to),
+                decodeCursor(cursor), limit);
+    }
+
+    /**
+     * Exports every event matching the {@link #searchEvents search} as NDJSON, one event per line, written while
+     * the rows are still being read.
+     */
+    @GetMapping(value = "/export", produces = APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportEvents(
+            @RequestParam(name = "namespace", required = false) String namespace,
+            @RequestParam(name = "name", required = false) String name,
+            @RequestParam(name = "status", required = false) EventStatus status,
+            @RequestParam(name = "from", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(name = "to", required = false)
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(name = "cursor", required = false) String cursor) {
+        EventFilter filter = new EventFilter(namespace, name, status, from, to);
+        EventKey after = decodeCursor(cursor);
+        StreamingResponseBody body = output ->
+                eventSchedulerService.exportEvents(filter, after, event -> writeLine(output, event));
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE)).body(body);
     }
 
     @GetMapping("/{id}")
@@ -32,7 +161,65 @@ public class EventSchedulerController {
     public void removedScheduledEvent(@PathVariable String id) {
         eventSchedulerService.removeEvent(id);
     }
+
+    private void writeLine(OutputStream output, Event event) {
+        try {
+            output.write(eventWriter.writeValueAsBytes(event));
+            output.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static EventKey decodeCursor(String cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return EventKey.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidSearchException(e.getMessage());
+        }
+    }
+
+    private Event toEvent(CreateTaskRequest request) {
+        Event event = new Event();
+        event.setId(request.id() != null ? request.id() : UUID.randomUUID().toString());
+        event.setEventName(request.name());
+        event.setScheduledTime(request.scheduledTime());
+        event.setPayload(request.payload());
+        event.setNamespace(request.namespace());
+        event.setPriority(request.priority() != null ? request.priority() : 0);
+        event.setCronExpression(request.cron());
+        event.setIntervalMs(request.intervalMs());
+        event.setRecurrenceEnd(request.recurrenceEnd());
+        return event;
+    }
+}
+
+/**
+ * A one-off event, or a recurring one when {@code cron} or {@code intervalMs} is set; the first occurrence of a
+ * recurring event defaults to the first fire time from now. Within a namespace, events of higher priority are
+ * dispatched first when workers fall behind.
+ */
+record CreateTaskRequest(String id, String name, LocalDateTime scheduledTime, String payload, String namespace,
+                         Integer priority, String cron, Long intervalMs, LocalDateTime recurrenceEnd) {
+}
+
+/**
+ * Either the ids of FAILED events to re-drive, or no ids to re-drive every FAILED event, optionally only those
+ * of {@code namespace}.
+ */
+record RedriveRequest(List<String> ids, String namespace) {
+}
+
+record RedriveResult(int redriven) {
 }
 
-record CreateTaskRequest(String id, String name, LocalDateTime scheduledTime, String payload) {
+/**
+ * Cancels, or moves by {@code shiftMs}, the PENDING events matching every given criterion; at least one is
+ * required. The scheduled time window is {@code from} inclusive, {@code to} exclusive.
+ */
+record BulkRequest(BulkJob.Operation operation, String namespace, String name, LocalDateTime from,
+                   LocalDateTime to, Long shiftMs) {
 }
@@ -0,0 +1,11 @@
+package com.jinternals.scheduler.api.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class BulkJobNotFoundException extends RuntimeException {
+    public BulkJobNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.jinternals.scheduler.api.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidBulkOperationException extends RuntimeException {
+    public InvalidBulkOperationException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,120 @@
+package com.jinternals.scheduler.api.repositories;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventPayload;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.jinternals.scheduler.common.model.EventStatus.PENDING;
+
+@Repository
+public class EventBatchRepository {
+
+    // One statement per chunk: the rows travel as column arrays, so the SQL text (and its plan) never changes.
+    // No conflict target: a partitioned events table has no unique index on id alone. The conflict is still found
+    // while the API and the rows agree on scheduler.partitions, see EventTablePartitioner.
+    private static final String INSERT_EVENTS = """
+            INSERT INTO events (id, partition_id, bucket, scheduled_time, status, event_name, payload, payload_ref,
+                namespace, priority, cron_expression, interval_ms, recurrence_end, series_id, created_at, updated_at)
+            SELECT u.id, u.partition_id, u.bucket, u.scheduled_time, ?, u.event_name, u.payload, u.payload_ref,
+                u.namespace, u.priority, u.cron_expression, u.interval_ms, u.recurrence_end, u.series_id, now(), now()
+            FROM unnest(?::varchar[], ?::int[], ?::int[], ?::timestamp[], ?::varchar[], ?::text[], ?::varchar[],
+                    ?::varchar[], ?::int[], ?::varchar[], ?::bigint[], ?::timestamp[], ?::varchar[])
+                AS u(id, partition_id, bucket, scheduled_time, event_name, payload, payload_ref, namespace, priority,
+                    cron_expression, interval_ms, recurrence_end, series_id)
+            ON CONFLICT DO NOTHING
+            RETURNING id
+            """;
+
+    private static final String INSERT_PAYLOADS = """
+            INSERT INTO event_payloads (id, encoding, data) VALUES (?, ?, ?)
+            ON CONFLICT DO NOTHING
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EventBatchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Inserts the events as PENDING in a single round trip.
+     *
+     * @return the ids that were inserted; events whose id already exists are skipped
+     */
+    public Set<String> insertPending(List<Event> events) {
+        int size = events.size();
+        String[] ids = new String[size];
+        Integer[] partitionIds = new Integer[size];
+        Integer[] buckets = new Integer[size];
+        Timestamp[] scheduledTimes = new Timestamp[size];
+        String[] names = new String[size];
+        String[] payloads = new String[size];
+        String[] payloadRefs = new String[size];
+        String[] namespaces = new String[size];
+        Integer[] priorities = new Integer[size];
+        String[] cronExpressions = new String[size];
+        Long[] intervals = new Long[size];
+        Timestamp[] recurrenceEnds = new Timestamp[size];
+        String[] seriesIds = new String[size];
+        for (int i = 0; i < size; i++) {
+            Event event = events.get(i);
+            ids[i] = event.getId();
+            partitionIds[i] = event.getPartitionId();
+            buckets[i] = event.getBucket();
+            scheduledTimes[i] = Timestamp.valueOf(event.getScheduledTime());
+            names[i] = event.getEventName();
+            payloads[i] = event.getPayload();
+            payloadRefs[i] = event.getPayloadRef();
+            namespaces[i] = event.getNamespace();
+            priorities[i] = event.getPriority();
+            cronExpressions[i] = event.getCronExpression();
+            intervals[i] = event.getIntervalMs();
+            recurrenceEnds[i] = event.getRecurrenceEnd() != null ? Timestamp.valueOf(event.getRecurrenceEnd()) : null;
+            seriesIds[i] = event.getSeriesId();
+        }
+
+        Set<String> inserted = new HashSet<>(size);
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_EVENTS);
+            statement.setString(1, PENDING.name());
+            statement.setArray(2, connection.createArrayOf("varchar", ids));
+            statement.setArray(3, connection.createArrayOf("int4", partitionIds));
+            statement.setArray(4, connection.createArrayOf("int4", buckets));
+            statement.setArray(5, connection.createArrayOf("timestamp", scheduledTimes));
+            statement.setArray(6, connection.createArrayOf("varchar", names));
+            statement.setArray(7, connection.createArrayOf("text", payloads));
+            statement.setArray(8, connection.createArrayOf("varchar", payloadRefs));
+            statement.setArray(9, connection.createArrayOf("varchar", namespaces));
+            statement.setArray(10, connection.createArrayOf("int4", priorities));
+            statement.setArray(11, connection.createArrayOf("varchar", cronExpressions));
+            statement.setArray(12, connection.createArrayOf("int8", intervals));
+            statement.setArray(13, connection.createArrayOf("timestamp", recurrenceEnds));
+            statement.setArray(14, connection.createArrayOf("varchar", seriesIds));
+            return statement;
+        }, (RowCallbackHandler) rs -> inserted.add(rs.getString(1)));
+        return inserted;
+    }
+
+    /**
+     * Stores offloaded payloads, see {@link com.jinternals.scheduler.common.Payloads}. Large payloads are rare,
+     * so they are batched rather than sent as one array.
+     */
+    public void insertPayloads(List<EventPayload> payloads) {
+        if (payloads.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_PAYLOADS, payloads, payloads.size(), (statement, payload) -> {
+            statement.setString(1, payload.getId());
+            statement.setString(2, payload.getEncoding());
+            statement.setBytes(3, payload.getData());
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package com.jinternals.scheduler.api.repositories;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Set-based changes to the events matching a filter, one partition and one bounded chunk at a time. A chunk is a
+ * page of ids read without locking; its rows are then locked with SKIP LOCKED and changed by id, with the ids
+ * bound as one array, all in the caller's transaction. A chunk never waits on a claim in flight, and a claim never
+ * waits longer than one chunk. The rows of a chunk that were locked and still match are handed back, so the
+ * caller can retry them instead of silently leaving them out.
+ */
+@Repository
+public class EventBulkRepository {
+
+    // Walks the partition in id order: moved events may still match the filter and must not be moved twice
+    private static final String SELECT_IDS = """
+            SELECT id FROM events WHERE partition_id = ?%s AND id > ?
+            ORDER BY id
+            LIMIT ?""";
+
+    private static final String LOCK_CANCELLED = """
+            SELECT id, payload_ref FROM events WHERE partition_id = ? AND id = ANY (?)%s
+            FOR UPDATE SKIP LOCKED""";
+
+    private static final String LOCK_RESCHEDULED = """
+            SELECT id FROM events WHERE partition_id = ? AND id = ANY (?)%s
+            FOR UPDATE SKIP LOCKED""";
+
+    // Without locking, a row locked by a transaction in flight reads as it was before it
+    private static final String SELECT_MATCHING = """
+            SELECT id FROM events WHERE partition_id = ? AND id = ANY (?)%s""";
+
+    private static final String DELETE_EVENTS = "DELETE FROM events WHERE partition_id = ? AND id = ANY (?)";
+
+    // Same rule as EventPayloadRepository#deleteUnreferenced: pending occurrences keep their series' payload
+    private static final String DELETE_PAYLOADS = """
+            DELETE FROM event_payloads p
+            WHERE p.id = ANY (?)
+              AND NOT EXISTS (SELECT 1 FROM events e WHERE e.series_id = p.id AND e.status = 'PENDING')""";
+
+    private static final String SHIFT = """
+            UPDATE events
+            SET scheduled_time = scheduled_time + CAST(? AS BIGINT) * INTERVAL '0.001' SECOND,
+                updated_at = LOCALTIMESTAMP
+            WHERE partition_id = ? AND id = ANY (?)""";
+
+    private static final String EARLIEST = """
+            SELECT min(scheduled_time) FROM events WHERE partition_id = ? AND id = ANY (?)""";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public EventBulkRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Lists up to {@code limit} ids of the matching events of a partition, in id order after {@code afterId},
+     * without locking them.
+     */
+    public List<String> findIds(int partitionId, EventFilter filter, String afterId, int limit) {
+        List<Object> args = new ArrayList<>();
+        args.add(partitionId);
+        String sql = SELECT_IDS.formatted(filter.conditions(args));
+        args.add(afterId);
+        args.add(limit);
+        return jdbcTemplate.queryForList(sql, String.class, args.toArray());
+    }
+
+    /**
+     * Deletes the given events that still match, along with their offloaded payloads. Must run in a transaction,
+     * which holds the locked rows until they are deleted.
+     */
+    public Changed cancel(int partitionId, EventFilter filter, List<String> ids) {
+        List<Object> args = new ArrayList<>(List.of(partitionId, ids.toArray(String[]::new)));
+        String sql = LOCK_CANCELLED.formatted(filter.conditions(args));
+        List<String> locked = new ArrayList<>();
+        Set<String> payloadRefs = new HashSet<>();
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            locked.add(rs.getString("id"));
+            if (rs.getString("payload_ref") != null) {
+                payloadRefs.add(rs.getString("payload_ref"));
+            }
+        }, args.toArray());
+        int deleted = 0;
+        if (!locked.isEmpty()) {
+            deleted = jdbcTemplate.update(DELETE_EVENTS, partitionId, locked.toArray(String[]::new));
+        }
+        if (!payloadRefs.isEmpty()) {
+            jdbcTemplate.update(DELETE_PAYLOADS, (Object) payloadRefs.toArray(String[]::new));
+        }
+        return new Changed(deleted, null, skipped(partitionId, filter, ids, locked));
+    }
+
+    /**
+     * Moves the scheduled time of the given events that still match by {@code shiftMs}. Must run in a
+     * transaction, like {@link #cancel}.
+     */
+    public Changed reschedule(int partitionId, EventFilter filter, List<String> ids, long shiftMs) {
+        List<Object> args = new ArrayList<>(List.of(partitionId, ids.toArray(String[]::new)));
+        String sql = LOCK_RESCHEDULED.formatted(filter.conditions(args));
+        List<String> locked = jdbcTemplate.queryForList(sql, String.class, args.toArray());
+        if (locked.isEmpty()) {
+            return new Changed(0, null, skipped(partitionId, filter, ids, locked));
+        }
+        String[] lockedIds = locked.toArray(String[]::new);
+        jdbcTemplate.update(SHIFT, shiftMs, partitionId, lockedIds);
+        Timestamp earliest = jdbcTemplate.queryForObject(EARLIEST, Timestamp.class, partitionId, lockedIds);
+        return new Changed(locked.size(), earliest != null ? earliest.toLocalDateTime() : null,
+                skipped(partitionId, filter, ids, locked));
+    }
+
+    /**
+     * @return the given events SKIP LOCKED left out which still match, as opposed to those no longer matching
+     */
+    private List<String> skipped(int partitionId, EventFilter filter, List<String> ids, List<String> locked) {
+        Set<String> picked = new HashSet<>(locked);
+        String[] rest = ids.stream().filter(id -> !picked.contains(id)).toArray(String[]::new);
+        if (rest.length == 0) {
+            return List.of();
+        }
+        List<Object> args = new ArrayList<>(List.of(partitionId, rest));
+        String sql = SELECT_MATCHING.formatted(filter.conditions(args));
+        return jdbcTemplate.queryForList(sql, String.class, args.toArray());
+    }
+
+    /**
+     * @param count    the number of events changed
+     * @param earliest earliest new scheduled time of the moved events, null if nothing was moved
+     * @param locked   ids of matching events locked by another transaction, left unchanged
+     */
+    public record Changed(int count, LocalDateTime earliest, List<String> locked) {
+    }
+}
@@ -0,0 +1,43 @@
+package com.jinternals.scheduler.api.repositories;
+
+import com.jinternals.scheduler.common.model.EventStatus;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Criteria of an event search or bulk operation; null criteria match every event. The scheduled time window is
+ * {@code from} inclusive, {@code to} exclusive.
+ */
+public record EventFilter(String namespace, String eventName, EventStatus status, LocalDateTime from,
+                          LocalDateTime to) {
+
+    /**
+     * @return the criteria as {@code AND} conditions on the events table, their values added to {@code args}
+     */
+    String conditions(List<Object> args) {
+        StringBuilder sql = new StringBuilder();
+        if (namespace != null) {
+            sql.append(" AND namespace = ?");
+            args.add(namespace);
+        }
+        if (eventName != null) {
+            sql.append(" AND event_name = ?");
+            args.add(eventName);
+        }
+        if (status != null) {
+            sql.append(" AND status = ?");
+            args.add(status.name());
+        }
+        if (from != null) {
+            sql.append(" AND scheduled_time >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            sql.append(" AND scheduled_time < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,45 @@
+package com.jinternals.scheduler.api.repositories;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of an event in search order, {@code (scheduled_time, id)}. Searches resume after a key instead of
+ * skipping an offset, so every page costs the same however deep it is, and events scheduled or removed meanwhile
+ * neither repeat nor skip rows of the following pages.
+ */
+public record EventKey(LocalDateTime scheduledTime, String id) {
+
+    private static final char SEPARATOR = '|';
+
+    /**
+     * @return the key as an opaque cursor
+     */
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((scheduledTime.toString() + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor was not made by {@link #encode()}
+     */
+    public static EventKey decode(String cursor) {
+        String key;
+        try {
+            key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor " + cursor, e);
+        }
+        int separator = key.indexOf(SEPARATOR);
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed cursor " + cursor);
+        }
+        try {
+            return new EventKey(LocalDateTime.parse(key.substring(0, separator)), key.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Malformed cursor " + cursor, e);
+        }
+    }
+}
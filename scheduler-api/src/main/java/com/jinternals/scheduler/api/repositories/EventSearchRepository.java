@@ -0,0 +1,106 @@
+package com.jinternals.scheduler.api.repositories;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Searches events in {@code (scheduled_time, id)} order, read straight into detached {@link Event}s.
+ */
+@Repository
+public class EventSearchRepository {
+
+    private static final String COLUMNS = """
+            id, partition_id, bucket, scheduled_time, status, event_name, namespace, priority, payload, payload_ref,
+            attempts, exception_stack_trace, locked_at, claim_epoch, claimed_by, lease_until, cron_expression,
+            interval_ms, recurrence_end, series_id, created_at, updated_at""";
+
+    private static final RowMapper<Event> EVENT_MAPPER = EventSearchRepository::mapEvent;
+
+    private final JdbcTemplate jdbcTemplate;
+    // Fetches an export a batch of rows at a time through a server-side cursor
+    private final JdbcTemplate cursorJdbcTemplate;
+
+    public EventSearchRepository(JdbcTemplate jdbcTemplate,
+                                 @Value("${scheduler.search.export-fetch-size:1000}") int exportFetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cursorJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.cursorJdbcTemplate.setFetchSize(exportFetchSize);
+    }
+
+    /**
+     * @param after the key of the last event of the previous page, or null for the first page
+     */
+    public List<Event> find(EventFilter filter, EventKey after, int limit) {
+        List<Object> args = new ArrayList<>();
+        String sql = select(filter, after, args) + " LIMIT ?";
+        args.add(limit);
+        return jdbcTemplate.query(sql, EVENT_MAPPER, args.toArray());
+    }
+
+    /**
+     * Hands every matching event to {@code consumer}, one at a time, without ever holding more than a fetch of
+     * rows. The driver only fetches through a cursor inside a transaction, so this must run in one.
+     */
+    public void forEach(EventFilter filter, EventKey after, Consumer<Event> consumer) {
+        List<Object> args = new ArrayList<>();
+        String sql = select(filter, after, args);
+        cursorJdbcTemplate.query(sql, (RowCallbackHandler) rs -> consumer.accept(mapEvent(rs, rs.getRow())),
+                args.toArray());
+    }
+
+    private static String select(EventFilter filter, EventKey after, List<Object> args) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM events WHERE TRUE")
+                .append(filter.conditions(args));
+        if (after != null) {
+            // A row comparison, so the (scheduled_time, id) indexes seek straight to the key
+            sql.append(" AND (scheduled_time, id) > (?, ?)");
+            args.add(Timestamp.valueOf(after.scheduledTime()));
+            args.add(after.id());
+        }
+        return sql.append(" ORDER BY scheduled_time, id").toString();
+    }
+
+    private static Event mapEvent(ResultSet rs, int rowNum) throws SQLException {
+        Event event = new Event();
+        event.setId(rs.getString("id"));
+        event.setPartitionId(rs.getInt("partition_id"));
+        event.setBucket(rs.getObject("bucket", Integer.class));
+        event.setScheduledTime(toLocalDateTime(rs.getTimestamp("scheduled_time")));
+        event.setStatus(EventStatus.valueOf(rs.getString("status")));
+        event.setEventName(rs.getString("event_name"));
+        event.setNamespace(rs.getString("namespace"));
+        event.setPriority(rs.getInt("priority"));
+        event.setPayload(rs.getString("payload"));
+        event.setPayloadRef(rs.getString("payload_ref"));
+        event.setAttempts(rs.getInt("attempts"));
+        event.setExceptionStackTrace(rs.getString("exception_stack_trace"));
+        event.setLockedAt(toLocalDateTime(rs.getTimestamp("locked_at")));
+        event.setClaimEpoch(rs.getObject("claim_epoch", Long.class));
+        event.setClaimedBy(rs.getString("claimed_by"));
+        event.setLeaseUntil(toLocalDateTime(rs.getTimestamp("lease_until")));
+        event.setCronExpression(rs.getString("cron_expression"));
+        event.setIntervalMs(rs.getObject("interval_ms", Long.class));
+        event.setRecurrenceEnd(toLocalDateTime(rs.getTimestamp("recurrence_end")));
+        event.setSeriesId(rs.getString("series_id"));
+        event.setCreatedAt(toLocalDateTime(rs.getTimestamp("created_at")));
+        event.setUpdatedAt(toLocalDateTime(rs.getTimestamp("updated_at")));
+        return event;
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp != null ? timestamp.toLocalDateTime() : null;
+    }
+}
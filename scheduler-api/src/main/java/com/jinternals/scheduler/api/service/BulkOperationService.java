@@ -0,0 +1,212 @@
+package com.jinternals.scheduler.api.service;
+
+import com.jinternals.scheduler.api.exceptions.BulkJobNotFoundException;
+import com.jinternals.scheduler.api.exceptions.InvalidBulkOperationException;
+import com.jinternals.scheduler.api.repositories.EventBulkRepository;
+import com.jinternals.scheduler.api.repositories.EventFilter;
+import com.jinternals.scheduler.common.model.BulkJob;
+import com.jinternals.scheduler.common.repositories.BulkJobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.jinternals.scheduler.common.model.EventStatus.PENDING;
+
+/**
+ * Cancels or reschedules every PENDING event matching a filter in the background. A job walks the partitions one
+ * after the other and changes {@code scheduler.bulk.chunk-size} events per statement, each chunk in a transaction
+ * of its own, so it never holds many row locks for long. Its {@link BulkJob} row is updated after every chunk.
+ * <p>
+ * Events locked by another transaction are skipped rather than waited for, and retried a few times once the
+ * partition has been walked. A job that still finds some of them locked ends up PARTIAL, reporting how many.
+ * <p>
+ * Jobs run one at a time, in submission order. A job interrupted by a restart of the API is not resumed.
+ */
+@Service
+public class BulkOperationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkOperationService.class);
+    private static final int LOCKED_RETRIES = 3;
+    private static final long LOCKED_RETRY_DELAY_MS = 100;
+
+    private final BulkJobRepository bulkJobRepository;
+    private final EventBulkRepository eventBulkRepository;
+    private final PartitionNotifier partitionNotifier;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ExecutorService executor =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("bulk-job").factory());
+
+    @Value("${scheduler.partitions:6}")
+    private int numPartitions;
+
+    @Value("${scheduler.bulk.chunk-size:1000}")
+    private int chunkSize = 1000;
+
+    public BulkOperationService(BulkJobRepository bulkJobRepository,
+                                EventBulkRepository eventBulkRepository,
+                                PartitionNotifier partitionNotifier,
+                                PlatformTransactionManager transactionManager,
+                                MeterRegistry meterRegistry) {
+        this.bulkJobRepository = bulkJobRepository;
+        this.eventBulkRepository = eventBulkRepository;
+        this.partitionNotifier = partitionNotifier;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Queues a job over the PENDING events matching {@code filter}; its status is ignored.
+     *
+     * @param shiftMs how far RESCHEDULE moves the events, negative to bring them forward
+     * @return the queued job
+     */
+    public BulkJob submit(BulkJob.Operation operation, EventFilter filter, Long shiftMs) {
+        if (operation == null) {
+            throw new InvalidBulkOperationException("operation is required");
+        }
+        if (filter.namespace() == null && filter.eventName() == null && filter.from() == null
+                && filter.to() == null) {
+            throw new InvalidBulkOperationException("At least one of namespace, name, from and to is required");
+        }
+        if (operation == BulkJob.Operation.RESCHEDULE && (shiftMs == null || shiftMs == 0)) {
+            throw new InvalidBulkOperationException("shiftMs is required to reschedule");
+        }
+        LocalDateTime now = LocalDateTime.now();
+        BulkJob job = new BulkJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setOperation(operation);
+        job.setStatus(BulkJob.Status.QUEUED);
+        job.setNamespace(filter.namespace());
+        job.setEventName(filter.eventName());
+        job.setScheduledFrom(filter.from());
+        job.setScheduledTo(filter.to());
+        job.setShiftMs(operation == BulkJob.Operation.RESCHEDULE ? shiftMs : null);
+        job.setPartitions(numPartitions);
+        job.setCreatedAt(now);
+        job.setUpdatedAt(now);
+        BulkJob queued = bulkJobRepository.save(job);
+        executor.execute(() -> run(getJob(queued.getId())));
+        return queued;
+    }
+
+    public BulkJob getJob(String id) {
+        return bulkJobRepository.findById(id)
+                .orElseThrow(() -> new BulkJobNotFoundException("Bulk job " + id + " not found"));
+    }
+
+    private void run(BulkJob job) {
+        EventFilter filter = new EventFilter(job.getNamespace(), job.getEventName(), PENDING, job.getScheduledFrom(),
+                job.getScheduledTo());
+        update(job, BulkJob.Status.RUNNING);
+        try {
+            long locked = 0;
+            for (int partition = 0; partition < job.getPartitions(); partition++) {
+                locked += walk(job, partition, filter);
+                job.setPartitionsDone(partition + 1);
+                update(job, BulkJob.Status.RUNNING);
+            }
+            if (locked > 0) {
+                job.setError(locked + " matching events were locked by other transactions and left unchanged");
+                update(job, BulkJob.Status.PARTIAL);
+                logger.warn("Bulk job {} {} {} events, {} left locked", job.getId(), job.getOperation(),
+                        job.getAffected(), locked);
+            } else {
+                update(job, BulkJob.Status.COMPLETED);
+                logger.info("Bulk job {} {} {} events", job.getId(), job.getOperation(), job.getAffected());
+            }
+        } catch (Exception e) {
+            logger.error("Bulk job {} failed after {} events", job.getId(), job.getAffected(), e);
+            String error = String.valueOf(e.getMessage());
+            job.setError(error.length() > 1024 ? error.substring(0, 1024) : error);
+            update(job, BulkJob.Status.FAILED);
+        }
+    }
+
+    /**
+     * Changes the matching events of a partition, walking them in id order a chunk at a time, then retries the
+     * ones that were locked.
+     *
+     * @return the number of matching events still locked after the last retry
+     */
+    private int walk(BulkJob job, int partition, EventFilter filter) throws InterruptedException {
+        List<String> locked = new ArrayList<>();
+        String afterId = "";
+        List<String> ids;
+        do {
+            ids = eventBulkRepository.findIds(partition, filter, afterId, chunkSize);
+            if (!ids.isEmpty()) {
+                locked.addAll(change(job, partition, filter, ids));
+                afterId = ids.getLast();
+            }
+        } while (ids.size() == chunkSize);
+
+        for (int retry = 0; retry < LOCKED_RETRIES && !locked.isEmpty(); retry++) {
+            // Whatever holds these rows, usually a claim, only does so until its transaction commits
+            Thread.sleep(LOCKED_RETRY_DELAY_MS * (retry + 1));
+            List<String> retried = locked;
+            locked = new ArrayList<>();
+            for (int from = 0; from < retried.size(); from += chunkSize) {
+                locked.addAll(change(job, partition, filter,
+                        retried.subList(from, Math.min(retried.size(), from + chunkSize))));
+            }
+        }
+        return locked.size();
+    }
+
+    /**
+     * Changes one chunk of events in a transaction of its own.
+     *
+     * @return the ids of the events of the chunk that were locked
+     */
+    private List<String> change(BulkJob job, int partition, EventFilter filter, List<String> ids) {
+        EventBulkRepository.Changed changed = transactionTemplate.execute(status -> {
+            if (job.getOperation() == BulkJob.Operation.CANCEL) {
+                return eventBulkRepository.cancel(partition, filter, ids);
+            }
+            EventBulkRepository.Changed moved = eventBulkRepository.reschedule(partition, filter, ids,
+                    job.getShiftMs());
+            if (moved.earliest() != null) {
+                // Events brought forward may now be due before the owning worker's next poll
+                partitionNotifier.notifyScheduled(partition, moved.earliest(), null);
+            }
+            return moved;
+        });
+        recordProgress(job, changed.count());
+        return changed.locked();
+    }
+
+    private void recordProgress(BulkJob job, int count) {
+        if (count == 0) {
+            return;
+        }
+        job.setAffected(job.getAffected() + count);
+        update(job, BulkJob.Status.RUNNING);
+        meterRegistry.counter("scheduler.api.bulk.events", "operation",
+                job.getOperation().name().toLowerCase(Locale.ROOT)).increment(count);
+    }
+
+    private void update(BulkJob job, BulkJob.Status status) {
+        job.setStatus(status);
+        job.setUpdatedAt(LocalDateTime.now());
+        bulkJobRepository.save(job);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+}
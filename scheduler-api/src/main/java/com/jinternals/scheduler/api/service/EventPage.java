@@ -0,0 +1,13 @@
+package com.jinternals.scheduler.api.service;
+
+import com.jinternals.scheduler.common.model.Event;
+
+import java.util.List;
+
+/**
+ * A page of an event search, in {@code (scheduledTime, id)} order.
+ *
+ * @param next cursor of the following page, or null if this is the last one
+ */
+public record EventPage(List<Event> events, String next) {
+}
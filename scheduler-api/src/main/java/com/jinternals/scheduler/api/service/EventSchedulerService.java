@@ -1,14 +1,34 @@
 package com.jinternals.scheduler.api.service;
 
 import com.jinternals.scheduler.api.exceptions.EventNotFoundException;
+import com.jinternals.scheduler.api.exceptions.InvalidScheduleException;
+import com.jinternals.scheduler.api.exceptions.InvalidSearchException;
+import com.jinternals.scheduler.api.repositories.EventBatchRepository;
+import com.jinternals.scheduler.api.repositories.EventFilter;
+import com.jinternals.scheduler.api.repositories.EventKey;
+import com.jinternals.scheduler.api.repositories.EventSearchRepository;
+import com.jinternals.scheduler.common.Payloads;
+import com.jinternals.scheduler.common.Recurrences;
+import com.jinternals.scheduler.common.VirtualBuckets;
 import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventPayload;
+import com.jinternals.scheduler.common.repositories.EventPayloadRepository;
 import com.jinternals.scheduler.common.repositories.EventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
-import static com.jinternals.scheduler.api.utils.PartitionUtils.partitionId;
 import static com.jinternals.scheduler.common.model.EventStatus.PENDING;
 
 import org.springframework.beans.factory.annotation.Value;
@@ -16,35 +36,294 @@ import org.springframework.beans.factory.annotation.Value;
 @Service
 public class EventSchedulerService {
 
+    private static final Logger logger = LoggerFactory.getLogger(EventSchedulerService.class);
+
     private final EventRepository eventRepository;
+    private final EventBatchRepository eventBatchRepository;
+    private final EventPayloadRepository eventPayloadRepository;
+    private final EventSearchRepository eventSearchRepository;
+    private final PartitionNotifier partitionNotifier;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate exportTransactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final Timer insertLatency;
 
     @Value("${scheduler.partitions:6}")
     private int numPartitions;
 
-    public EventSchedulerService(EventRepository eventRepository) {
+    @Value("${scheduler.batch.chunk-size:1000}")
+    private int batchChunkSize;
+
+    // Payloads of at least this many bytes are compressed and stored apart from the events row
+    @Value("${scheduler.payload.offload-threshold-bytes:8192}")
+    private int payloadOffloadThreshold = 8192;
+
+    @Value("${scheduler.search.max-page-size:1000}")
+    private int maxPageSize = 1000;
+
+    public EventSchedulerService(EventRepository eventRepository,
+                                 EventBatchRepository eventBatchRepository,
+                                 EventPayloadRepository eventPayloadRepository,
+                                 EventSearchRepository eventSearchRepository,
+                                 PartitionNotifier partitionNotifier,
+                                 PlatformTransactionManager transactionManager,
+                                 MeterRegistry meterRegistry) {
         this.eventRepository = eventRepository;
+        this.eventBatchRepository = eventBatchRepository;
+        this.eventPayloadRepository = eventPayloadRepository;
+        this.eventSearchRepository = eventSearchRepository;
+        this.partitionNotifier = partitionNotifier;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.exportTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.exportTransactionTemplate.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+        this.insertLatency = Timer.builder("scheduler.api.insert.latency")
+                .description("Duration of inserting one chunk of a batch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
     @Transactional
-    public Event scheduleEvent(String id, String name, LocalDateTime time, String payload) {
-        Event event = new Event();
-        event.setId(id);
-        event.setEventName(name);
-        event.setScheduledTime(time);
-        event.setPayload(payload);
+    public Event scheduleEvent(Event event) {
+        String error = prepareRecurrence(event);
+        if (error != null) {
+            countScheduled(ScheduleResult.Status.REJECTED, 1);
+            throw new InvalidScheduleException(error);
+        }
         event.setStatus(PENDING);
-        event.setPartitionId(partitionId(id, numPartitions));
-        return eventRepository.save(event);
+        event.setBucket(VirtualBuckets.bucket(event.getId()));
+        event.setPartitionId(VirtualBuckets.partition(event.getBucket(), numPartitions));
+        EventPayload payload = Payloads.offload(event, payloadOffloadThreshold);
+        Event saved = eventRepository.save(event);
+        if (payload != null) {
+            eventPayloadRepository.save(payload);
+        }
+        partitionNotifier.notifyScheduled(saved.getPartitionId(), saved.getScheduledTime(), saved.getId());
+        countScheduled(ScheduleResult.Status.SCHEDULED, 1);
+        return saved;
+    }
+
+    /**
+     * Schedules a batch of events. Rows are grouped by partition and written in chunks of
+     * {@code scheduler.batch.chunk-size}, one statement and one transaction per chunk.
+     *
+     * @return one result per event, in the order of the given events
+     */
+    public List<ScheduleResult> scheduleEvents(List<Event> events) {
+        ScheduleResult[] results = new ScheduleResult[events.size()];
+        EventPayload[] payloads = new EventPayload[events.size()];
+        Map<Integer, List<Integer>> indexesByPartition = new TreeMap<>();
+        Set<String> seenIds = new HashSet<>();
+
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            String error = prepareRecurrence(event);
+            if (error != null) {
+                results[i] = ScheduleResult.rejected(event.getId(), error);
+                continue;
+            }
+            if (event.getScheduledTime() == null) {
+                results[i] = ScheduleResult.rejected(event.getId(), "scheduledTime is required");
+                continue;
+            }
+            event.setStatus(PENDING);
+            event.setBucket(VirtualBuckets.bucket(event.getId()));
+            event.setPartitionId(VirtualBuckets.partition(event.getBucket(), numPartitions));
+            if (!seenIds.add(event.getId())) {
+                results[i] = ScheduleResult.duplicate(event.getId(), event.getPartitionId());
+                continue;
+            }
+            payloads[i] = Payloads.offload(event, payloadOffloadThreshold);
+            indexesByPartition.computeIfAbsent(event.getPartitionId(), p -> new ArrayList<>()).add(i);
+        }
+
+        List<Integer> ordered = indexesByPartition.values().stream().flatMap(List::stream).toList();
+        for (int from = 0; from < ordered.size(); from += batchChunkSize) {
+            List<Integer> chunk = ordered.subList(from, Math.min(ordered.size(), from + batchChunkSize));
+            insertChunk(events, payloads, chunk, results);
+        }
+        Arrays.stream(results).collect(Collectors.groupingBy(ScheduleResult::status, Collectors.counting()))
+                .forEach(this::countScheduled);
+        return Arrays.asList(results);
+    }
+
+    private void countScheduled(ScheduleResult.Status status, long count) {
+        Counter.builder("scheduler.api.events")
+                .description("Events submitted for scheduling, by outcome")
+                .tag("status", status.name().toLowerCase(Locale.ROOT))
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    private void insertChunk(List<Event> events, EventPayload[] payloads, List<Integer> chunk,
+                             ScheduleResult[] results) {
+        List<Event> rows = chunk.stream().map(events::get).toList();
+        try {
+            Set<String> inserted = insertLatency.record(() -> transactionTemplate.execute(status -> {
+                Set<String> ids = eventBatchRepository.insertPending(rows);
+                // Only the payloads of new events; a duplicate keeps the payload it was scheduled with
+                eventBatchRepository.insertPayloads(chunk.stream().map(index -> payloads[index])
+                        .filter(payload -> payload != null && ids.contains(payload.getId())).toList());
+                notifyEarliestPerPartition(rows, ids);
+                return ids;
+            }));
+            for (Integer index : chunk) {
+                Event event = events.get(index);
+                results[index] = inserted.contains(event.getId())
+                        ? ScheduleResult.scheduled(event.getId(), event.getPartitionId())
+                        : ScheduleResult.duplicate(event.getId(), event.getPartitionId());
+            }
+        } catch (Exception e) {
+            logger.error("Failed to insert chunk of {} events", rows.size(), e);
+            for (Integer index : chunk) {
+                Event event = events.get(index);
+                results[index] = ScheduleResult.failed(event.getId(), event.getPartitionId(), e.getMessage());
+            }
+        }
+    }
+
+    private void notifyEarliestPerPartition(List<Event> rows, Set<String> inserted) {
+        Map<Integer, LocalDateTime> earliest = new HashMap<>();
+        for (Event event : rows) {
+            if (inserted.contains(event.getId())) {
+                earliest.merge(event.getPartitionId(), event.getScheduledTime(),
+                        (a, b) -> a.isBefore(b) ? a : b);
+            }
+        }
+        earliest.forEach((partition, time) -> partitionNotifier.notifyScheduled(partition, time, null));
+    }
+
+    /**
+     * Validates the recurrence of a recurring event and makes the event the first occurrence of its series.
+     * Without a scheduled time, it is scheduled at the series' first fire time from now.
+     *
+     * @return why the event cannot be scheduled, or null
+     */
+    private static String prepareRecurrence(Event event) {
+        if (event.getCronExpression() == null && event.getIntervalMs() == null) {
+            return null;
+        }
+        try {
+            Recurrences.validate(event.getCronExpression(), event.getIntervalMs());
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+        if (event.getScheduledTime() == null) {
+            event.setScheduledTime(Recurrences.firstFireTime(event.getCronExpression(), event.getIntervalMs(),
+                    LocalDateTime.now()));
+        }
+        if (event.getScheduledTime() == null || (event.getRecurrenceEnd() != null
+                && event.getRecurrenceEnd().isBefore(event.getScheduledTime()))) {
+            return "recurrenceEnd is before the first occurrence";
+        }
+        event.setSeriesId(event.getId());
+        return null;
     }
 
+    /**
+     * Removes an event; removing the first occurrence of a recurring series cancels the series. An occurrence
+     * already being dispatched is not recalled, but no further one follows it. Offloaded payloads go with the events.
+     */
     @Transactional
     public void removeEvent(String id) {
-        eventRepository.deleteById(id);
+        List<String> payloadRefs = eventRepository.deleteWithPendingOccurrences(id).stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        if (!payloadRefs.isEmpty()) {
+            eventPayloadRepository.deleteUnreferenced(payloadRefs);
+        }
+    }
+
+    /**
+     * Re-drives FAILED events with a fresh attempt budget: the given ids, or else every FAILED event, optionally
+     * only those of one namespace. They are due right away; the workers owning them are notified on commit.
+     * Events are updated {@code scheduler.batch.chunk-size} at a time, one transaction per chunk.
+     *
+     * @return the number of events re-driven
+     */
+    public int redriveFailed(List<String> ids, String namespace) {
+        int redriven = ids != null && !ids.isEmpty() ? redriveFailedById(ids) : redriveFailedByPartition(namespace);
+        logger.info("Re-drove {} failed events", redriven);
+        meterRegistry.counter("scheduler.api.redriven").increment(redriven);
+        return redriven;
+    }
+
+    private int redriveFailedById(List<String> ids) {
+        int redriven = 0;
+        for (int from = 0; from < ids.size(); from += batchChunkSize) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + batchChunkSize));
+            redriven += transactionTemplate.execute(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                List<Integer> partitions = eventRepository.redriveFailedById(chunk, now);
+                new HashSet<>(partitions).forEach(partition ->
+                        partitionNotifier.notifyScheduled(partition, now, null));
+                return partitions.size();
+            });
+        }
+        return redriven;
     }
 
+    private int redriveFailedByPartition(String namespace) {
+        int redriven = 0;
+        for (int partition = 0; partition < numPartitions; partition++) {
+            int count;
+            do {
+                int partitionId = partition;
+                count = transactionTemplate.execute(status -> {
+                    LocalDateTime now = LocalDateTime.now();
+                    int updated = eventRepository.redriveFailed(partitionId, namespace, now, batchChunkSize);
+                    if (updated > 0) {
+                        partitionNotifier.notifyScheduled(partitionId, now, null);
+                    }
+                    return updated;
+                });
+                redriven += count;
+            } while (count == batchChunkSize);
+        }
+        return redriven;
+    }
+
+    /**
+     * @return the event, with its payload decompressed if it was offloaded
+     */
     public Event getEvent(String id) {
-        return eventRepository
+        Event event = eventRepository
                 .findById(id)
                 .orElseThrow(() -> new EventNotFoundException(id + " not found"));
+        if (event.getPayloadRef() != null) {
+            eventPayloadRepository.findById(event.getPayloadRef())
+                    .ifPresent(payload -> event.setPayload(Payloads.decompress(payload)));
+        }
+        return event;
+    }
+
+    /**
+     * Lists the events matching {@code filter} a page at a time. Offloaded payloads are left out; {@link #getEvent}
+     * returns them.
+     *
+     * @param after the key the previous page's cursor encodes, or null for the first page
+     * @param limit page size, at most {@code scheduler.search.max-page-size}
+     */
+    public EventPage searchEvents(EventFilter filter, EventKey after, int limit) {
+        if (limit < 1 || limit > maxPageSize) {
+            throw new InvalidSearchException("limit must be between 1 and " + maxPageSize);
+        }
+        // One extra row tells whether another page follows
+        List<Event> events = eventSearchRepository.find(filter, after, limit + 1);
+        if (events.size() <= limit) {
+            return new EventPage(events, null);
+        }
+        Event last = events.get(limit - 1);
+        return new EventPage(events.subList(0, limit), new EventKey(last.getScheduledTime(), last.getId()).encode());
+    }
+
+    /**
+     * Streams every event matching {@code filter} to {@code consumer}, in the order of {@link #searchEvents}, in a
+     * single read-only transaction reading through a server-side cursor.
+     */
+    public void exportEvents(EventFilter filter, EventKey after, Consumer<Event> consumer) {
+        exportTransactionTemplate.executeWithoutResult(status ->
+                eventSearchRepository.forEach(filter, after, consumer));
     }
 }
@@ -0,0 +1,40 @@
+package com.jinternals.scheduler.api.service;
+
+import com.jinternals.scheduler.common.PartitionNotifications;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Wakes the worker owning a partition when an event is scheduled inside its prefetch window, which it would
+ * otherwise only see on its next poll. NOTIFY is transactional: it is delivered on commit and dropped on rollback.
+ */
+@Component
+public class PartitionNotifier {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${scheduler.notify.enabled:true}")
+    private boolean enabled;
+
+    @Value("${scheduler.notify.lookahead-ms:60000}")
+    private long lookaheadMs;
+
+    public PartitionNotifier(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @param eventId the event id, or null when notifying the earliest of several new events
+     */
+    public void notifyScheduled(int partitionId, LocalDateTime scheduledTime, String eventId) {
+        if (!enabled || scheduledTime == null || scheduledTime.isAfter(LocalDateTime.now().plusNanos(lookaheadMs * 1_000_000))) {
+            return;
+        }
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class,
+                PartitionNotifications.channel(partitionId),
+                PartitionNotifications.payload(scheduledTime, eventId));
+    }
+}
@@ -0,0 +1,27 @@
+package com.jinternals.scheduler.api.service;
+
+/**
+ * Outcome of a single item of a batch scheduling request.
+ */
+public record ScheduleResult(String id, Status status, Integer partitionId, String error) {
+
+    public enum Status {
+        SCHEDULED, DUPLICATE, REJECTED, FAILED
+    }
+
+    static ScheduleResult scheduled(String id, int partitionId) {
+        return new ScheduleResult(id, Status.SCHEDULED, partitionId, null);
+    }
+
+    static ScheduleResult duplicate(String id, int partitionId) {
+        return new ScheduleResult(id, Status.DUPLICATE, partitionId, null);
+    }
+
+    static ScheduleResult rejected(String id, String error) {
+        return new ScheduleResult(id, Status.REJECTED, null, error);
+    }
+
+    static ScheduleResult failed(String id, int partitionId, String error) {
+        return new ScheduleResult(id, Status.FAILED, partitionId, error);
+    }
+}
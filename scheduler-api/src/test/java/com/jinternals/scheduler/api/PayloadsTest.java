@@ -0,0 +1,63 @@
+package com.jinternals.scheduler.api;
+
+import com.jinternals.scheduler.common.Payloads;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventPayload;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayloadsTest {
+
+    @Test
+    void offloadsAndDecompressesBackToTheSamePayload() {
+        String payload = "{\"greeting\":\"grüß dich\",\"padding\":\"" + "x".repeat(10_000) + "\"}";
+        Event event = event("e1", payload);
+
+        EventPayload offloaded = Payloads.offload(event, 8192);
+
+        assertNotNull(offloaded);
+        assertNull(event.getPayload());
+        assertEquals("e1", event.getPayloadRef());
+        assertEquals("e1", offloaded.getId());
+        assertEquals(Payloads.ZSTD, offloaded.getEncoding());
+        assertTrue(offloaded.getData().length < payload.length());
+        assertEquals(payload, Payloads.decompress(offloaded));
+    }
+
+    @Test
+    void offloadsFromTheThresholdInUtf8Bytes() {
+        // Two bytes per char in UTF-8: 50 chars are 100 bytes
+        Event atThreshold = event("at", "é".repeat(50));
+        Event belowThreshold = event("below", "é".repeat(49) + "e");
+
+        assertNotNull(Payloads.offload(atThreshold, 100));
+        assertNull(Payloads.offload(belowThreshold, 100));
+        assertEquals(99, ("é".repeat(49) + "e").getBytes(StandardCharsets.UTF_8).length);
+        assertEquals("é".repeat(49) + "e", belowThreshold.getPayload());
+        assertNull(belowThreshold.getPayloadRef());
+    }
+
+    @Test
+    void leavesMissingPayloadsInline() {
+        Event event = event("e1", null);
+
+        assertNull(Payloads.offload(event, 0));
+        assertNull(event.getPayloadRef());
+    }
+
+    @Test
+    void refusesUnknownEncodings() {
+        assertThrows(IllegalArgumentException.class,
+                () -> Payloads.decompress(new EventPayload("e1", "gzip", new byte[]{1})));
+    }
+
+    private static Event event(String id, String payload) {
+        Event event = new Event();
+        event.setId(id);
+        event.setPayload(payload);
+        return event;
+    }
+}
@@ -0,0 +1,117 @@
+package com.jinternals.scheduler.api.controller;
+
+import com.jinternals.scheduler.api.repositories.EventBatchRepository;
+import com.jinternals.scheduler.api.repositories.EventKey;
+import com.jinternals.scheduler.api.repositories.EventSearchRepository;
+import com.jinternals.scheduler.api.service.BulkOperationService;
+import com.jinternals.scheduler.api.service.EventSchedulerService;
+import com.jinternals.scheduler.api.service.PartitionNotifier;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventPayloadRepository;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Streams {@code GET /event/export} out of an H2 database, through the service and the search repository.
+ */
+@DataJpaTest
+@Import(EventSearchRepository.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EventExportTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private EventSearchRepository eventSearchRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        EventSchedulerService service = new EventSchedulerService(eventRepository, mock(EventBatchRepository.class),
+                mock(EventPayloadRepository.class), eventSearchRepository, mock(PartitionNotifier.class),
+                transactionManager, new SimpleMeterRegistry());
+        mockMvc = MockMvcBuilders.standaloneSetup(new EventSchedulerController(service,
+                mock(BulkOperationService.class), jsonMapper)).build();
+        eventRepository.saveAll(List.of(event("a", AT, "billing"), event("b", AT, "mail"),
+                event("c", AT, "billing"), event("d", AT.plusSeconds(1), "billing")));
+    }
+
+    @AfterEach
+    void cleanup() {
+        eventRepository.deleteAll();
+    }
+
+    @Test
+    void exportsEveryMatchingEventOnItsOwnLine() throws Exception {
+        List<Event> events = export("/event/export?namespace=billing");
+
+        assertThat(events).extracting(Event::getId).containsExactly("a", "c", "d");
+        assertThat(events.getLast().getScheduledTime()).isEqualTo(AT.plusSeconds(1));
+        assertThat(events.getLast().getPayload()).isEqualTo("payload-d");
+    }
+
+    @Test
+    void exportsFromACursor() throws Exception {
+        String cursor = new EventKey(AT, "a").encode();
+
+        assertThat(export("/event/export?cursor=" + cursor)).extracting(Event::getId)
+                .containsExactly("b", "c", "d");
+    }
+
+    private List<Event> export(String url) throws Exception {
+        MvcResult started = mockMvc.perform(get(url))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+        assertThat(body).endsWith("\n");
+        return body.lines().map(line -> jsonMapper.readValue(line, Event.class)).toList();
+    }
+
+    private static Event event(String id, LocalDateTime scheduledTime, String namespace) {
+        Event event = new Event();
+        event.setId(id);
+        event.setEventName("reminder");
+        event.setNamespace(namespace);
+        event.setPartitionId(1);
+        event.setStatus(EventStatus.PENDING);
+        event.setScheduledTime(scheduledTime);
+        event.setPayload("payload-" + id);
+        return event;
+    }
+}
@@ -0,0 +1,135 @@
+package com.jinternals.scheduler.api.controller;
+
+import com.jinternals.scheduler.api.exceptions.BulkJobNotFoundException;
+import com.jinternals.scheduler.api.repositories.EventKey;
+import com.jinternals.scheduler.api.service.BulkOperationService;
+import com.jinternals.scheduler.api.service.EventPage;
+import com.jinternals.scheduler.api.service.EventSchedulerService;
+import com.jinternals.scheduler.api.service.ScheduleResult;
+import com.jinternals.scheduler.common.model.Event;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class EventSchedulerControllerTest {
+
+    private final EventSchedulerService eventSchedulerService = mock(EventSchedulerService.class);
+    private final BulkOperationService bulkOperationService = mock(BulkOperationService.class);
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        EventSchedulerController controller = new EventSchedulerController(eventSchedulerService,
+                bulkOperationService, JsonMapper.builder().build());
+        ReflectionTestUtils.setField(controller, "batchChunkSize", 2);
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+        when(eventSchedulerService.scheduleEvents(anyList())).thenAnswer(invocation -> invocation.<List<Event>>getArgument(0)
+                .stream().map(event -> new ScheduleResult(event.getId(), ScheduleResult.Status.SCHEDULED, 1, null))
+                .toList());
+    }
+
+    @Test
+    void schedulesAnNdjsonStreamChunkByChunk() throws Exception {
+        String body = IntStream.rangeClosed(1, 5)
+                .mapToObj(i -> "{\"id\":\"e" + i + "\",\"name\":\"reminder\",\"scheduledTime\":\"2030-01-01T00:00:00\"}")
+                .collect(Collectors.joining("\n", "", "\n"));
+
+        mockMvc.perform(post("/event/batch").contentType("application/x-ndjson").content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(5))
+                .andExpect(jsonPath("$[4].id").value("e5"))
+                .andExpect(jsonPath("$[4].status").value("SCHEDULED"));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Event>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(eventSchedulerService, times(3)).scheduleEvents(chunks.capture());
+        assertEquals(List.of(2, 2, 1), chunks.getAllValues().stream().map(List::size).toList());
+    }
+
+    @Test
+    void redrivesTheGivenFailedEvents() throws Exception {
+        when(eventSchedulerService.redriveFailed(List.of("a", "b"), null)).thenReturn(1);
+
+        mockMvc.perform(post("/event/redrive").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"ids\":[\"a\",\"b\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.redriven").value(1));
+    }
+
+    @Test
+    void redrivesEveryFailedEventOfANamespace() throws Exception {
+        when(eventSchedulerService.redriveFailed(null, "billing")).thenReturn(42);
+
+        mockMvc.perform(post("/event/redrive").contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"namespace\":\"billing\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.redriven").value(42));
+    }
+
+    @Test
+    void schedulesAJsonArrayAtOnce() throws Exception {
+        mockMvc.perform(post("/event/batch").contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"id\":\"a\",\"scheduledTime\":\"2030-01-01T00:00:00\"},"
+                                + "{\"scheduledTime\":\"2030-01-01T00:00:00\",\"priority\":3}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Event>> events = ArgumentCaptor.forClass(List.class);
+        verify(eventSchedulerService).scheduleEvents(events.capture());
+        assertEquals("a", events.getValue().getFirst().getId());
+        // Events without an id get a generated one
+        assertEquals(36, events.getValue().get(1).getId().length());
+        assertEquals(3, events.getValue().get(1).getPriority());
+    }
+
+    @Test
+    void searchesFromTheDecodedCursor() throws Exception {
+        EventKey after = new EventKey(LocalDateTime.of(2030, 1, 1, 0, 0), "e1");
+        when(eventSchedulerService.searchEvents(any(), eq(after), eq(2)))
+                .thenReturn(new EventPage(List.of(), null));
+
+        mockMvc.perform(get("/event").param("cursor", after.encode()).param("limit", "2"))
+                .andExpect(status().isOk());
+
+        verify(eventSchedulerService).searchEvents(any(), eq(after), eq(2));
+    }
+
+    @Test
+    void rejectsMalformedCursors() throws Exception {
+        mockMvc.perform(get("/event").param("cursor", "not a cursor"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/event/export").param("cursor", "bm8tc2VwYXJhdG9y"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(eventSchedulerService);
+    }
+
+    @Test
+    void answersNotFoundForAnUnknownBulkJob() throws Exception {
+        when(bulkOperationService.getJob("missing")).thenThrow(new BulkJobNotFoundException("Bulk job missing not found"));
+
+        mockMvc.perform(get("/event/bulk/missing"))
+                .andExpect(status().isNotFound());
+    }
+}
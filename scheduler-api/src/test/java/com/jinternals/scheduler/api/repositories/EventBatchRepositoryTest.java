@@ -0,0 +1,71 @@
+package com.jinternals.scheduler.api.repositories;
+
+import com.jinternals.scheduler.common.model.Event;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EventBatchRepositoryTest {
+
+    @Test
+    void insertsTheChunkAsOneStatementOfColumnArraysAndReturnsTheInsertedIds() throws Exception {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        EventBatchRepository repository = new EventBatchRepository(jdbcTemplate);
+        LocalDateTime scheduledTime = LocalDateTime.of(2030, 1, 1, 0, 0);
+        Event once = event("once", 2, scheduledTime);
+        Event hourly = event("hourly", 5, scheduledTime.plusMinutes(1));
+        hourly.setIntervalMs(3_600_000L);
+        hourly.setSeriesId("hourly");
+        ResultSet returned = mock(ResultSet.class);
+        when(returned.getString(1)).thenReturn("hourly");
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(returned);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        Set<String> inserted = repository.insertPending(List.of(once, hourly));
+
+        // "once" already existed: ON CONFLICT DO NOTHING returns no row for it
+        assertEquals(Set.of("hourly"), inserted);
+        ArgumentCaptor<PreparedStatementCreator> creator = ArgumentCaptor.forClass(PreparedStatementCreator.class);
+        verify(jdbcTemplate).query(creator.capture(), any(RowCallbackHandler.class));
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement(anyString())).thenReturn(mock(PreparedStatement.class));
+        when(connection.createArrayOf(anyString(), any())).thenReturn(mock(Array.class));
+        creator.getValue().createPreparedStatement(connection);
+        ArgumentCaptor<Object[]> columns = ArgumentCaptor.forClass(Object[].class);
+        verify(connection, times(13)).createArrayOf(anyString(), columns.capture());
+        List<Object[]> values = columns.getAllValues();
+        assertArrayEquals(new Object[]{"once", "hourly"}, values.get(0));
+        assertArrayEquals(new Object[]{2, 5}, values.get(1));
+        assertArrayEquals(new Object[]{Timestamp.valueOf(scheduledTime), Timestamp.valueOf(scheduledTime.plusMinutes(1))},
+                values.get(3));
+        assertArrayEquals(new Object[]{null, 3_600_000L}, values.get(10));
+        assertArrayEquals(new Object[]{null, "hourly"}, values.get(12));
+    }
+
+    private static Event event(String id, int partitionId, LocalDateTime scheduledTime) {
+        Event event = new Event();
+        event.setId(id);
+        event.setPartitionId(partitionId);
+        event.setBucket(partitionId);
+        event.setScheduledTime(scheduledTime);
+        event.setEventName("reminder");
+        return event;
+    }
+}
@@ -0,0 +1,192 @@
+package com.jinternals.scheduler.api.repositories;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventPayload;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventPayloadRepository;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(EventBulkRepository.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EventBulkRepositoryTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final EventFilter PENDING_BILLING = new EventFilter("billing", null, EventStatus.PENDING, null,
+            null);
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private EventPayloadRepository eventPayloadRepository;
+
+    @Autowired
+    private EventBulkRepository eventBulkRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void cleanup() {
+        eventRepository.deleteAll();
+        eventPayloadRepository.deleteAll();
+    }
+
+    @Test
+    void pagesThroughTheMatchingIdsOfThePartitionInIdOrder() {
+        eventRepository.saveAll(List.of(event("c", 1, "billing", EventStatus.PENDING),
+                event("a", 1, "billing", EventStatus.PENDING), event("b", 1, "billing", EventStatus.PENDING),
+                event("in-progress", 1, "billing", EventStatus.IN_PROGRESS), event("mail", 1, "mail",
+                        EventStatus.PENDING), event("other-partition", 2, "billing", EventStatus.PENDING)));
+
+        assertThat(eventBulkRepository.findIds(1, PENDING_BILLING, "", 2)).containsExactly("a", "b");
+        assertThat(eventBulkRepository.findIds(1, PENDING_BILLING, "b", 2)).containsExactly("c");
+        assertThat(eventBulkRepository.findIds(1, PENDING_BILLING, "c", 2)).isEmpty();
+    }
+
+    @Test
+    void cancelsTheGivenEventsThatStillMatch() {
+        eventRepository.saveAll(List.of(event("a", 1, "billing", EventStatus.PENDING),
+                event("b", 1, "billing", EventStatus.PENDING), event("in-progress", 1, "billing",
+                        EventStatus.IN_PROGRESS), event("c", 1, "billing", EventStatus.PENDING)));
+
+        EventBulkRepository.Changed cancelled = cancel(List.of("a", "b", "in-progress", "gone"));
+
+        assertThat(cancelled).isEqualTo(new EventBulkRepository.Changed(2, null, List.of()));
+        assertThat(eventRepository.findAll()).extracting(Event::getId).containsExactlyInAnyOrder("in-progress", "c");
+    }
+
+    @Test
+    void deletesThePayloadsOfCancelledEventsNoPendingOccurrenceRefersTo() {
+        Event offloaded = event("offloaded", 1, "billing", EventStatus.PENDING);
+        offloaded.setPayloadRef("offloaded");
+        // An occurrence of the "nightly" series, whose next occurrence is left pending in another namespace
+        Event occurrence = event("nightly-1", 1, "billing", EventStatus.PENDING);
+        occurrence.setSeriesId("nightly");
+        occurrence.setPayloadRef("nightly");
+        Event nextOccurrence = event("nightly-2", 1, "mail", EventStatus.PENDING);
+        nextOccurrence.setSeriesId("nightly");
+        nextOccurrence.setPayloadRef("nightly");
+        eventRepository.saveAll(List.of(offloaded, occurrence, nextOccurrence));
+        eventPayloadRepository.saveAll(List.of(payload("offloaded"), payload("nightly"), payload("unrelated")));
+
+        assertThat(cancel(eventBulkRepository.findIds(1, PENDING_BILLING, "", 10)).count()).isEqualTo(2);
+
+        assertThat(eventPayloadRepository.findAll()).extracting(EventPayload::getId)
+                .containsExactlyInAnyOrder("nightly", "unrelated");
+    }
+
+    @Test
+    void movesEveryMatchingEventOnceWhileWalkingThePartitionInIdOrder() {
+        // Moved forward, every event still matches the filter after its chunk
+        eventRepository.saveAll(List.of(event("e", 1, "billing", EventStatus.PENDING),
+                event("c", 1, "billing", EventStatus.PENDING), event("a", 1, "billing", EventStatus.PENDING),
+                event("d", 1, "billing", EventStatus.PENDING), event("b", 1, "billing", EventStatus.PENDING),
+                event("mail", 1, "mail", EventStatus.PENDING)));
+
+        List<Integer> counts = new ArrayList<>();
+        List<String> ids = eventBulkRepository.findIds(1, PENDING_BILLING, "", 2);
+        while (!ids.isEmpty()) {
+            EventBulkRepository.Changed moved = reschedule(ids, 60_000);
+            assertThat(moved.earliest()).isEqualTo(AT.plusMinutes(1));
+            counts.add(moved.count());
+            ids = eventBulkRepository.findIds(1, PENDING_BILLING, ids.getLast(), 2);
+        }
+
+        assertThat(counts).containsExactly(2, 2, 1);
+        Map<String, LocalDateTime> scheduled = new HashMap<>();
+        eventRepository.findAll().forEach(event -> scheduled.put(event.getId(), event.getScheduledTime()));
+        assertThat(scheduled).containsEntry("a", AT.plusMinutes(1)).containsEntry("e", AT.plusMinutes(1))
+                .containsEntry("mail", AT);
+    }
+
+    @Test
+    void bringsEventsForwardByANegativeShift() {
+        eventRepository.save(event("a", 1, "billing", EventStatus.PENDING));
+
+        EventBulkRepository.Changed shifted = reschedule(List.of("a"), -1_500);
+
+        assertThat(shifted.earliest()).isEqualTo(AT.minusNanos(1_500_000_000));
+        assertThat(eventRepository.findById("a").orElseThrow().getScheduledTime()).isEqualTo(shifted.earliest());
+    }
+
+    @Test
+    void handsBackTheMatchingEventsLockedByAnotherTransaction() throws Exception {
+        eventRepository.saveAll(List.of(event("a", 1, "billing", EventStatus.PENDING),
+                event("b", 1, "billing", EventStatus.PENDING), event("c", 1, "billing", EventStatus.PENDING)));
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> lock = CompletableFuture.runAsync(() ->
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    jdbcTemplate.queryForList("SELECT id FROM events WHERE id = 'b' FOR UPDATE");
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        assertThat(locked.await(5, TimeUnit.SECONDS)).isTrue();
+
+        EventBulkRepository.Changed moved = reschedule(List.of("a", "b"), 60_000);
+        EventBulkRepository.Changed cancelled = cancel(List.of("b", "c"));
+        release.countDown();
+        lock.get(5, TimeUnit.SECONDS);
+
+        assertThat(moved).isEqualTo(new EventBulkRepository.Changed(1, AT.plusMinutes(1), List.of("b")));
+        assertThat(cancelled).isEqualTo(new EventBulkRepository.Changed(1, null, List.of("b")));
+        // Once the lock is gone, the retry goes through
+        assertThat(cancel(moved.locked())).isEqualTo(new EventBulkRepository.Changed(1, null, List.of()));
+        assertThat(eventRepository.findAll()).extracting(Event::getId).containsExactly("a");
+    }
+
+    private EventBulkRepository.Changed cancel(List<String> ids) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                eventBulkRepository.cancel(1, PENDING_BILLING, ids));
+    }
+
+    private EventBulkRepository.Changed reschedule(List<String> ids, long shiftMs) {
+        return new TransactionTemplate(transactionManager).execute(status ->
+                eventBulkRepository.reschedule(1, PENDING_BILLING, ids, shiftMs));
+    }
+
+    private static Event event(String id, int partition, String namespace, EventStatus status) {
+        Event event = new Event();
+        event.setId(id);
+        event.setEventName("reminder");
+        event.setNamespace(namespace);
+        event.setPartitionId(partition);
+        event.setStatus(status);
+        event.setScheduledTime(AT);
+        return event;
+    }
+
+    private static EventPayload payload(String id) {
+        return new EventPayload(id, "zstd", new byte[]{1});
+    }
+}
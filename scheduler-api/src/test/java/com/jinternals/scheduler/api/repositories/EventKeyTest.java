@@ -0,0 +1,31 @@
+package com.jinternals.scheduler.api.repositories;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventKeyTest {
+
+    @Test
+    void decodesWhatItEncodes() {
+        EventKey key = new EventKey(LocalDateTime.of(2030, 1, 1, 12, 30, 15, 123_456_000), "tenant|event-1");
+
+        assertEquals(key, EventKey.decode(key.encode()));
+    }
+
+    @Test
+    void rejectsCursorsItDidNotMake() {
+        assertThrows(IllegalArgumentException.class, () -> EventKey.decode("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> EventKey.decode(encode("2030-01-01T00:00")));
+        assertThrows(IllegalArgumentException.class, () -> EventKey.decode(encode("yesterday|event-1")));
+    }
+
+    private static String encode(String key) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
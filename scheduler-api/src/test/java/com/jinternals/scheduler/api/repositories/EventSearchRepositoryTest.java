@@ -0,0 +1,101 @@
+package com.jinternals.scheduler.api.repositories;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@Import(EventSearchRepository.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class EventSearchRepositoryTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final EventFilter ALL = new EventFilter(null, null, null, null, null);
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private EventSearchRepository eventSearchRepository;
+
+    @BeforeEach
+    void setUp() {
+        // b, c and d are scheduled at the same time, so the id breaks the tie
+        eventRepository.saveAll(List.of(event("a", AT.minusSeconds(1), "billing", EventStatus.PENDING),
+                event("d", AT, "billing", EventStatus.PENDING),
+                event("b", AT, "billing", EventStatus.FAILED),
+                event("c", AT, "mail", EventStatus.PENDING),
+                event("0", AT.plusSeconds(1), "billing", EventStatus.PENDING)));
+    }
+
+    @AfterEach
+    void cleanup() {
+        eventRepository.deleteAll();
+    }
+
+    @Test
+    void ordersByScheduledTimeThenId() {
+        assertThat(eventSearchRepository.find(ALL, null, 10)).extracting(Event::getId)
+                .containsExactly("a", "b", "c", "d", "0");
+        assertThat(eventSearchRepository.find(ALL, null, 2)).extracting(Event::getId).containsExactly("a", "b");
+    }
+
+    @Test
+    void resumesAfterAKeyAmongTiedScheduledTimes() {
+        assertThat(eventSearchRepository.find(ALL, new EventKey(AT, "b"), 10)).extracting(Event::getId)
+                .containsExactly("c", "d", "0");
+        assertThat(eventSearchRepository.find(ALL, new EventKey(AT, "d"), 10)).extracting(Event::getId)
+                .containsExactly("0");
+        // The key of a removed event still resumes at the right place
+        assertThat(eventSearchRepository.find(ALL, new EventKey(AT, "bb"), 10)).extracting(Event::getId)
+                .containsExactly("c", "d", "0");
+    }
+
+    @Test
+    void appliesTheFilterBeforeTheKey() {
+        EventFilter pendingBilling = new EventFilter("billing", null, EventStatus.PENDING, AT, AT.plusSeconds(1));
+
+        assertThat(eventSearchRepository.find(pendingBilling, null, 10)).extracting(Event::getId)
+                .containsExactly("d");
+        assertThat(eventSearchRepository.find(pendingBilling, new EventKey(AT, "d"), 10)).isEmpty();
+    }
+
+    @Test
+    void handsEveryMatchingEventToTheConsumerInOrder() {
+        List<Event> events = new ArrayList<>();
+
+        eventSearchRepository.forEach(new EventFilter("billing", null, null, null, null), new EventKey(AT, "b"),
+                events::add);
+
+        assertThat(events).extracting(Event::getId).containsExactly("d", "0");
+        assertThat(events.getFirst().getScheduledTime()).isEqualTo(AT);
+        assertThat(events.getFirst().getNamespace()).isEqualTo("billing");
+        assertThat(events.getFirst().getPayload()).isEqualTo("payload-d");
+    }
+
+    static Event event(String id, LocalDateTime scheduledTime, String namespace, EventStatus status) {
+        Event event = new Event();
+        event.setId(id);
+        event.setEventName("reminder");
+        event.setNamespace(namespace);
+        event.setPartitionId(1);
+        event.setStatus(status);
+        event.setScheduledTime(scheduledTime);
+        event.setPayload("payload-" + id);
+        return event;
+    }
+}
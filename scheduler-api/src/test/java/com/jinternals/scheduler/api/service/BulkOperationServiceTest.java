@@ -0,0 +1,197 @@
+package com.jinternals.scheduler.api.service;
+
+import com.jinternals.scheduler.api.exceptions.BulkJobNotFoundException;
+import com.jinternals.scheduler.api.exceptions.InvalidBulkOperationException;
+import com.jinternals.scheduler.api.repositories.EventBulkRepository;
+import com.jinternals.scheduler.api.repositories.EventFilter;
+import com.jinternals.scheduler.common.model.BulkJob;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.BulkJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BulkOperationServiceTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final EventFilter BILLING = new EventFilter("billing", null, null, null, null);
+    private static final EventFilter PENDING_BILLING = new EventFilter("billing", null, EventStatus.PENDING, null,
+            null);
+
+    private final BulkJobRepository bulkJobRepository = mock(BulkJobRepository.class);
+    private final EventBulkRepository eventBulkRepository = mock(EventBulkRepository.class);
+    private final PartitionNotifier partitionNotifier = mock(PartitionNotifier.class);
+    // Status of the job at every save, as the row would have recorded it
+    private final List<BulkJob.Status> saved = new CopyOnWriteArrayList<>();
+    private final Map<String, BulkJob> jobs = new ConcurrentHashMap<>();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private BulkOperationService service;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+        when(bulkJobRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(jobs.get(invocation.<String>getArgument(0))));
+        when(bulkJobRepository.save(any())).thenAnswer(invocation -> {
+            BulkJob job = invocation.getArgument(0);
+            saved.add(job.getStatus());
+            jobs.put(job.getId(), job);
+            if (job.getStatus() == BulkJob.Status.COMPLETED || job.getStatus() == BulkJob.Status.PARTIAL
+                    || job.getStatus() == BulkJob.Status.FAILED) {
+                finished.countDown();
+            }
+            return job;
+        });
+        service = new BulkOperationService(bulkJobRepository, eventBulkRepository, partitionNotifier,
+                transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "numPartitions", 2);
+        ReflectionTestUtils.setField(service, "chunkSize", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.stop();
+    }
+
+    @Test
+    void cancelsChunksUntilAPartitionReturnsLessThanAChunk() throws Exception {
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "", 2)).thenReturn(List.of("a", "b"));
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "b", 2)).thenReturn(List.of("c", "d"));
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "d", 2)).thenReturn(List.of("e"));
+        when(eventBulkRepository.findIds(1, PENDING_BILLING, "", 2)).thenReturn(List.of());
+        when(eventBulkRepository.cancel(eq(0), eq(PENDING_BILLING), anyList()))
+                .thenAnswer(invocation -> changed(invocation.<List<String>>getArgument(2).size()));
+
+        BulkJob job = awaitJob(service.submit(BulkJob.Operation.CANCEL, BILLING, null));
+
+        verify(eventBulkRepository).cancel(0, PENDING_BILLING, List.of("e"));
+        verify(eventBulkRepository, never()).findIds(eq(0), any(), eq("e"), anyInt());
+        verify(eventBulkRepository, never()).cancel(eq(1), any(), anyList());
+        assertEquals(BulkJob.Status.COMPLETED, job.getStatus());
+        assertEquals(5, job.getAffected());
+        assertEquals(2, job.getPartitionsDone());
+        assertEquals(BulkJob.Status.QUEUED, saved.getFirst());
+        assertEquals(BulkJob.Status.COMPLETED, saved.getLast());
+        assertTrue(saved.subList(1, saved.size() - 1).stream().allMatch(status -> status == BulkJob.Status.RUNNING));
+    }
+
+    @Test
+    void reschedulesEachChunkAfterTheLastIdMoved() throws Exception {
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "", 2)).thenReturn(List.of("a", "b"));
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "b", 2)).thenReturn(List.of("c"));
+        when(eventBulkRepository.findIds(1, PENDING_BILLING, "", 2)).thenReturn(List.of());
+        when(eventBulkRepository.reschedule(0, PENDING_BILLING, List.of("a", "b"), -1000L))
+                .thenReturn(new EventBulkRepository.Changed(2, AT, List.of()));
+        when(eventBulkRepository.reschedule(0, PENDING_BILLING, List.of("c"), -1000L))
+                .thenReturn(new EventBulkRepository.Changed(1, AT.plusSeconds(1), List.of()));
+
+        BulkJob job = awaitJob(service.submit(BulkJob.Operation.RESCHEDULE, BILLING, -1000L));
+
+        verify(partitionNotifier).notifyScheduled(0, AT, null);
+        verify(partitionNotifier).notifyScheduled(0, AT.plusSeconds(1), null);
+        verify(partitionNotifier, never()).notifyScheduled(eq(1), any(), any());
+        assertEquals(BulkJob.Status.COMPLETED, job.getStatus());
+        assertEquals(3, job.getAffected());
+    }
+
+    @Test
+    void retriesTheEventsThatWereLockedOnceThePartitionIsWalked() throws Exception {
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "", 2)).thenReturn(List.of("a", "b"));
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "b", 2)).thenReturn(List.of("c"));
+        when(eventBulkRepository.findIds(1, PENDING_BILLING, "", 2)).thenReturn(List.of());
+        // b is being claimed, and stays locked until the second retry
+        when(eventBulkRepository.reschedule(0, PENDING_BILLING, List.of("a", "b"), 1000L))
+                .thenReturn(new EventBulkRepository.Changed(1, AT, List.of("b")));
+        when(eventBulkRepository.reschedule(0, PENDING_BILLING, List.of("c"), 1000L))
+                .thenReturn(new EventBulkRepository.Changed(1, AT, List.of()));
+        when(eventBulkRepository.reschedule(0, PENDING_BILLING, List.of("b"), 1000L))
+                .thenReturn(new EventBulkRepository.Changed(0, null, List.of("b")),
+                        new EventBulkRepository.Changed(1, AT, List.of()));
+
+        BulkJob job = awaitJob(service.submit(BulkJob.Operation.RESCHEDULE, BILLING, 1000L));
+
+        // Moved once each, however often they were retried
+        verify(eventBulkRepository, times(2)).reschedule(0, PENDING_BILLING, List.of("b"), 1000L);
+        assertEquals(BulkJob.Status.COMPLETED, job.getStatus());
+        assertEquals(3, job.getAffected());
+        assertNull(job.getError());
+    }
+
+    @Test
+    void endsPartialWhenEventsStayLocked() throws Exception {
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "", 2)).thenReturn(List.of("a", "b"));
+        when(eventBulkRepository.findIds(1, PENDING_BILLING, "", 2)).thenReturn(List.of());
+        when(eventBulkRepository.cancel(0, PENDING_BILLING, List.of("a", "b")))
+                .thenReturn(new EventBulkRepository.Changed(1, null, List.of("b")));
+        when(eventBulkRepository.cancel(0, PENDING_BILLING, List.of("b")))
+                .thenReturn(new EventBulkRepository.Changed(0, null, List.of("b")));
+
+        BulkJob job = awaitJob(service.submit(BulkJob.Operation.CANCEL, BILLING, null));
+
+        verify(eventBulkRepository, times(3)).cancel(0, PENDING_BILLING, List.of("b"));
+        assertEquals(BulkJob.Status.PARTIAL, job.getStatus());
+        assertEquals("1 matching events were locked by other transactions and left unchanged", job.getError());
+        assertEquals(1, job.getAffected());
+        assertEquals(2, job.getPartitionsDone());
+    }
+
+    @Test
+    void failsTheJobKeepingTheProgressMadeSoFar() throws Exception {
+        when(eventBulkRepository.findIds(0, PENDING_BILLING, "", 2)).thenReturn(List.of("a"));
+        when(eventBulkRepository.findIds(1, PENDING_BILLING, "", 2)).thenReturn(List.of("b"));
+        when(eventBulkRepository.cancel(0, PENDING_BILLING, List.of("a"))).thenReturn(changed(1));
+        when(eventBulkRepository.cancel(1, PENDING_BILLING, List.of("b")))
+                .thenThrow(new IllegalStateException("deadlock"));
+
+        BulkJob job = awaitJob(service.submit(BulkJob.Operation.CANCEL, BILLING, null));
+
+        assertEquals(BulkJob.Status.FAILED, job.getStatus());
+        assertEquals("deadlock", job.getError());
+        assertEquals(1, job.getAffected());
+        assertEquals(1, job.getPartitionsDone());
+        assertEquals(List.of(BulkJob.Status.QUEUED, BulkJob.Status.RUNNING), saved.subList(0, 2));
+    }
+
+    @Test
+    void rejectsJobsWithoutCriteriaOrShift() {
+        assertThrows(InvalidBulkOperationException.class, () -> service.submit(BulkJob.Operation.CANCEL,
+                new EventFilter(null, null, EventStatus.PENDING, null, null), null));
+        assertThrows(InvalidBulkOperationException.class,
+                () -> service.submit(BulkJob.Operation.RESCHEDULE, BILLING, 0L));
+        verify(bulkJobRepository, never()).save(any());
+    }
+
+    @Test
+    void reportsAnUnknownJob() {
+        BulkJobNotFoundException notFound = assertThrows(BulkJobNotFoundException.class,
+                () -> service.getJob("missing"));
+        assertEquals("Bulk job missing not found", notFound.getMessage());
+    }
+
+    private static EventBulkRepository.Changed changed(int count) {
+        return new EventBulkRepository.Changed(count, null, List.of());
+    }
+
+    private BulkJob awaitJob(BulkJob queued) throws InterruptedException {
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        return service.getJob(queued.getId());
+    }
+}
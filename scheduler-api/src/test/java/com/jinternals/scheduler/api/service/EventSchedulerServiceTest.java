@@ -0,0 +1,275 @@
+package com.jinternals.scheduler.api.service;
+
+import com.jinternals.scheduler.api.exceptions.InvalidSearchException;
+import com.jinternals.scheduler.api.repositories.EventBatchRepository;
+import com.jinternals.scheduler.api.repositories.EventFilter;
+import com.jinternals.scheduler.api.repositories.EventKey;
+import com.jinternals.scheduler.api.repositories.EventSearchRepository;
+import com.jinternals.scheduler.common.Payloads;
+import com.jinternals.scheduler.common.VirtualBuckets;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventPayload;
+import com.jinternals.scheduler.common.repositories.EventPayloadRepository;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EventSchedulerServiceTest {
+
+    private static final LocalDateTime LATER = LocalDateTime.now().plusHours(1);
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+    private final EventBatchRepository eventBatchRepository = mock(EventBatchRepository.class);
+    private final EventPayloadRepository eventPayloadRepository = mock(EventPayloadRepository.class);
+    private final EventSearchRepository eventSearchRepository = mock(EventSearchRepository.class);
+    private final PartitionNotifier partitionNotifier = mock(PartitionNotifier.class);
+    private EventSchedulerService service;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+        service = new EventSchedulerService(eventRepository, eventBatchRepository, eventPayloadRepository,
+                eventSearchRepository, partitionNotifier, transactionManager, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "numPartitions", 6);
+        ReflectionTestUtils.setField(service, "batchChunkSize", 1000);
+        ReflectionTestUtils.setField(service, "maxPageSize", 1000);
+    }
+
+    @Test
+    void reportsOneResultPerEventInRequestOrder() {
+        // "stored" already exists in the database, so the insert skips it
+        when(eventBatchRepository.insertPending(anyList())).thenAnswer(invocation -> invocation.<List<Event>>getArgument(0)
+                .stream().map(Event::getId).filter(id -> !id.equals("stored")).collect(Collectors.toSet()));
+
+        List<ScheduleResult> results = service.scheduleEvents(List.of(event("new", LATER), event("stored", LATER),
+                event("new", LATER), event("unscheduled", null), recurring("bad-cron", "not a cron")));
+
+        assertEquals(List.of("new", "stored", "new", "unscheduled", "bad-cron"),
+                results.stream().map(ScheduleResult::id).toList());
+        assertEquals(List.of(ScheduleResult.Status.SCHEDULED, ScheduleResult.Status.DUPLICATE,
+                        ScheduleResult.Status.DUPLICATE, ScheduleResult.Status.REJECTED,
+                        ScheduleResult.Status.REJECTED),
+                results.stream().map(ScheduleResult::status).toList());
+        assertEquals(VirtualBuckets.partition(VirtualBuckets.bucket("new"), 6), results.getFirst().partitionId());
+        assertEquals("scheduledTime is required", results.get(3).error());
+        assertNull(results.get(4).partitionId());
+        // Neither the repeated id nor the rejected events reach the database
+        verify(eventBatchRepository).insertPending(argThat(rows -> rows.size() == 2));
+    }
+
+    @Test
+    void insertsChunksOfAtMostTheChunkSizeGroupedByPartition() {
+        ReflectionTestUtils.setField(service, "batchChunkSize", 2);
+        when(eventBatchRepository.insertPending(anyList())).thenAnswer(invocation -> invocation.<List<Event>>getArgument(0)
+                .stream().map(Event::getId).collect(Collectors.toSet()));
+        List<Event> events = List.of(event("e1", LATER), event("e2", LATER), event("e3", LATER),
+                event("e4", LATER), event("e5", LATER));
+
+        List<ScheduleResult> results = service.scheduleEvents(events);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Event>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(eventBatchRepository, times(3)).insertPending(chunks.capture());
+        assertEquals(List.of(2, 2, 1), chunks.getAllValues().stream().map(List::size).toList());
+        List<Integer> partitions = chunks.getAllValues().stream().flatMap(List::stream)
+                .map(Event::getPartitionId).toList();
+        assertEquals(partitions.stream().sorted().toList(), partitions);
+        assertTrue(results.stream().allMatch(result -> result.status() == ScheduleResult.Status.SCHEDULED));
+    }
+
+    @Test
+    void failsOnlyTheEventsOfAFailedChunk() {
+        ReflectionTestUtils.setField(service, "batchChunkSize", 1);
+        when(eventBatchRepository.insertPending(anyList()))
+                .thenThrow(new IllegalStateException("connection reset"))
+                .thenAnswer(invocation -> Set.of(invocation.<List<Event>>getArgument(0).getFirst().getId()));
+        Event first = event("a", LATER);
+        Event second = event("b", LATER);
+        boolean aFirst = VirtualBuckets.partition(VirtualBuckets.bucket("a"), 6)
+                <= VirtualBuckets.partition(VirtualBuckets.bucket("b"), 6);
+
+        List<ScheduleResult> results = service.scheduleEvents(List.of(first, second));
+
+        ScheduleResult failed = results.get(aFirst ? 0 : 1);
+        ScheduleResult scheduled = results.get(aFirst ? 1 : 0);
+        assertEquals(ScheduleResult.Status.FAILED, failed.status());
+        assertEquals("connection reset", failed.error());
+        assertEquals(ScheduleResult.Status.SCHEDULED, scheduled.status());
+    }
+
+    @Test
+    void offloadsTheLargePayloadOfAScheduledEvent() {
+        ReflectionTestUtils.setField(service, "payloadOffloadThreshold", 64);
+        when(eventRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        String payload = "x".repeat(64);
+
+        Event saved = service.scheduleEvent(withPayload(event("big", LATER), payload));
+
+        ArgumentCaptor<EventPayload> stored = ArgumentCaptor.forClass(EventPayload.class);
+        verify(eventPayloadRepository).save(stored.capture());
+        assertNull(saved.getPayload());
+        assertEquals("big", saved.getPayloadRef());
+        assertEquals(payload, Payloads.decompress(stored.getValue()));
+    }
+
+    @Test
+    void keepsASmallPayloadInline() {
+        ReflectionTestUtils.setField(service, "payloadOffloadThreshold", 64);
+        when(eventRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Event saved = service.scheduleEvent(withPayload(event("small", LATER), "x".repeat(63)));
+
+        assertEquals("x".repeat(63), saved.getPayload());
+        assertNull(saved.getPayloadRef());
+        verify(eventPayloadRepository, never()).save(any());
+    }
+
+    @Test
+    void insertsOnlyThePayloadsOfNewlyScheduledEvents() {
+        ReflectionTestUtils.setField(service, "payloadOffloadThreshold", 64);
+        // "stored" already exists and keeps the payload it was scheduled with
+        when(eventBatchRepository.insertPending(anyList())).thenAnswer(invocation -> invocation.<List<Event>>getArgument(0)
+                .stream().map(Event::getId).filter(id -> !id.equals("stored")).collect(Collectors.toSet()));
+        Event big = withPayload(event("big", LATER), "y".repeat(100));
+
+        service.scheduleEvents(List.of(big, withPayload(event("stored", LATER), "z".repeat(100)),
+                withPayload(event("small", LATER), "small")));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EventPayload>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(eventBatchRepository).insertPayloads(inserted.capture());
+        assertEquals(List.of("big"), inserted.getValue().stream().map(EventPayload::getId).toList());
+        assertEquals("y".repeat(100), Payloads.decompress(inserted.getValue().getFirst()));
+        assertEquals("big", big.getPayloadRef());
+        assertNull(big.getPayload());
+    }
+
+    @Test
+    void returnsAnOffloadedPayloadDecompressed() {
+        Event event = withPayload(event("big", LATER), "w".repeat(100));
+        EventPayload payload = Payloads.offload(event, 64);
+        when(eventRepository.findById("big")).thenReturn(Optional.of(event));
+        when(eventPayloadRepository.findById("big")).thenReturn(Optional.of(payload));
+
+        assertEquals("w".repeat(100), service.getEvent("big").getPayload());
+    }
+
+    @Test
+    void removesThePayloadsOfTheDeletedEvents() {
+        // The series' first occurrence and its pending occurrence share the series' payload
+        when(eventRepository.deleteWithPendingOccurrences("nightly"))
+                .thenReturn(Arrays.asList("nightly", "nightly", null));
+
+        service.removeEvent("nightly");
+
+        verify(eventPayloadRepository).deleteUnreferenced(List.of("nightly"));
+    }
+
+    @Test
+    void removingAnEventWithoutPayloadLeavesThePayloadsAlone() {
+        when(eventRepository.deleteWithPendingOccurrences("once")).thenReturn(Arrays.asList((String) null));
+
+        service.removeEvent("once");
+
+        verify(eventPayloadRepository, never()).deleteUnreferenced(anyCollection());
+    }
+
+    @Test
+    void redrivesFailedEventsByIdChunkByChunkAndNotifiesTheirPartitions() {
+        ReflectionTestUtils.setField(service, "batchChunkSize", 2);
+        when(eventRepository.redriveFailedById(eq(List.of("a", "b")), any())).thenReturn(List.of(3, 3));
+        // c is no longer FAILED
+        when(eventRepository.redriveFailedById(eq(List.of("c")), any())).thenReturn(List.of());
+
+        assertEquals(2, service.redriveFailed(List.of("a", "b", "c"), "ignored"));
+
+        verify(partitionNotifier).notifyScheduled(eq(3), any(), isNull());
+        verify(eventRepository, never()).redriveFailed(anyInt(), any(), any(), anyInt());
+    }
+
+    @Test
+    void redrivesEveryFailedEventOfANamespacePartitionByPartition() {
+        ReflectionTestUtils.setField(service, "numPartitions", 2);
+        ReflectionTestUtils.setField(service, "batchChunkSize", 2);
+        // Partition 0 holds three failed events, partition 1 none
+        when(eventRepository.redriveFailed(eq(0), eq("billing"), any(), eq(2))).thenReturn(2, 1);
+        when(eventRepository.redriveFailed(eq(1), eq("billing"), any(), eq(2))).thenReturn(0);
+
+        assertEquals(3, service.redriveFailed(null, "billing"));
+
+        verify(eventRepository, times(2)).redriveFailed(eq(0), eq("billing"), any(), eq(2));
+        verify(eventRepository).redriveFailed(eq(1), eq("billing"), any(), eq(2));
+        verify(partitionNotifier, times(2)).notifyScheduled(eq(0), any(), isNull());
+        verify(partitionNotifier, never()).notifyScheduled(eq(1), any(), any());
+    }
+
+    @Test
+    void fetchesOneExtraRowToTellWhetherAnotherPageFollows() {
+        EventFilter filter = new EventFilter("billing", null, null, null, null);
+        when(eventSearchRepository.find(filter, null, 3))
+                .thenReturn(List.of(event("a", LATER), event("b", LATER), event("c", LATER)));
+
+        EventPage page = service.searchEvents(filter, null, 2);
+
+        assertEquals(List.of("a", "b"), page.events().stream().map(Event::getId).toList());
+        // Resumes after the last event returned, not after the extra one
+        assertEquals(new EventKey(LATER, "b"), EventKey.decode(page.next()));
+    }
+
+    @Test
+    void endsOnAPageWithoutTheExtraRow() {
+        EventFilter filter = new EventFilter(null, null, null, null, null);
+        EventKey after = new EventKey(LATER, "b");
+        when(eventSearchRepository.find(filter, after, 3)).thenReturn(List.of(event("c", LATER), event("d", LATER)));
+
+        EventPage page = service.searchEvents(filter, after, 2);
+
+        assertEquals(List.of("c", "d"), page.events().stream().map(Event::getId).toList());
+        assertNull(page.next());
+    }
+
+    @Test
+    void rejectsPageSizesOutOfBounds() {
+        EventFilter filter = new EventFilter(null, null, null, null, null);
+
+        assertThrows(InvalidSearchException.class, () -> service.searchEvents(filter, null, 0));
+        assertThrows(InvalidSearchException.class, () -> service.searchEvents(filter, null, 1001));
+        verifyNoInteractions(eventSearchRepository);
+    }
+
+    static Event event(String id, LocalDateTime scheduledTime) {
+        Event event = new Event();
+        event.setId(id);
+        event.setEventName("reminder");
+        event.setScheduledTime(scheduledTime);
+        return event;
+    }
+
+    static Event withPayload(Event event, String payload) {
+        event.setPayload(payload);
+        return event;
+    }
+
+    static Event recurring(String id, String cron) {
+        Event event = event(id, null);
+        event.setCronExpression(cron);
+        return event;
+    }
+}
@@ -13,9 +13,10 @@ public class KafkaConfig {
     public static final String SCHEDULER_EVENTS_TOPIC = "scheduler-events";
 
     @Bean
-    public NewTopic topic() {
+    public NewTopic topic(KafkaPartitionMapping partitionMapping) {
+        // Validated against scheduler.partitions by the mapping; an existing topic is grown to this count
         return TopicBuilder.name(SCHEDULER_EVENTS_TOPIC)
-                .partitions(12)
+                .partitions(partitionMapping.getTopicPartitions())
                 .replicas(1)
                 .build();
     }
@@ -0,0 +1,50 @@
+package com.jinternals.scheduler.workernode.config;
+
+import com.jinternals.scheduler.common.VirtualBuckets;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Pins every scheduler partition to its own contiguous range of {@code scheduler-events} partitions: with 6
+ * scheduler partitions and 12 topic partitions, scheduler partition {@code p} produces to {@code 2p} and
+ * {@code 2p + 1}. A worker thus only ever sends to the few topic partitions of the scheduler partitions it owns,
+ * which keeps producer batches large, and an event id always lands on the same topic partition.
+ * <p>
+ * The topic partition count must be a multiple of {@code scheduler.partitions}; raise both together.
+ */
+@Component
+@Profile("!init & !controller")
+public class KafkaPartitionMapping {
+
+    private final int numPartitions;
+    private final int topicPartitions;
+
+    public KafkaPartitionMapping(@Value("${scheduler.partitions:6}") int numPartitions,
+                                 @Value("${scheduler.kafka.topic-partitions:12}") int topicPartitions) {
+        if (numPartitions < 1 || topicPartitions < numPartitions || topicPartitions % numPartitions != 0) {
+            throw new IllegalStateException("scheduler.kafka.topic-partitions (" + topicPartitions
+                    + ") must be a multiple of scheduler.partitions (" + numPartitions + ")");
+        }
+        this.numPartitions = numPartitions;
+        this.topicPartitions = topicPartitions;
+    }
+
+    public int getTopicPartitions() {
+        return topicPartitions;
+    }
+
+    /**
+     * @return the topic partition for an event of a scheduler partition, spread over the partition's range by
+     * the event's bucket
+     */
+    public int kafkaPartition(int partition, String eventId) {
+        if (partition < 0 || partition >= numPartitions) {
+            throw new IllegalArgumentException("Unknown scheduler partition " + partition);
+        }
+        int perPartition = topicPartitions / numPartitions;
+        // Buckets of one scheduler partition are congruent modulo numPartitions, so spread by the quotient
+        int offset = (VirtualBuckets.bucket(eventId) / numPartitions) % perPartition;
+        return partition * perPartition + offset;
+    }
+}
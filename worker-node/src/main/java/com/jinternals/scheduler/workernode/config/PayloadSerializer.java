@@ -0,0 +1,47 @@
+package com.jinternals.scheduler.workernode.config;
+
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.kafka.support.serializer.JacksonJsonSerializer;
+import tools.jackson.databind.JavaType;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Map;
+
+/**
+ * Record value serializer of the workers' producers. Payloads are serialized as JSON, except offloaded payloads,
+ * which are already encoded bytes and are published exactly as they are stored, see {@code Payloads}. Those are
+ * the compressed JSON of the payload string, so they get the same type header an inline payload gets.
+ */
+public class PayloadSerializer implements Serializer<Object> {
+
+    private static final JavaType OFFLOADED_TYPE = JsonMapper.shared().constructType(String.class);
+
+    private final JacksonJsonSerializer<Object> json = new JacksonJsonSerializer<>();
+
+    @Override
+    public void configure(Map<String, ?> configs, boolean isKey) {
+        json.configure(configs, isKey);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Object data) {
+        return data instanceof byte[] bytes ? bytes : json.serialize(topic, data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, Object data) {
+        if (data instanceof byte[] bytes) {
+            if (headers != null && json.isAddTypeInfo()) {
+                json.getTypeMapper().fromJavaType(OFFLOADED_TYPE, headers);
+            }
+            return bytes;
+        }
+        return json.serialize(topic, headers, data);
+    }
+
+    @Override
+    public void close() {
+        json.close();
+    }
+}
@@ -5,6 +5,7 @@ import org.apache.helix.ConfigAccessor;
 import org.apache.helix.manager.zk.ZKHelixAdmin;
 import org.apache.helix.model.BuiltInStateModelDefinitions;
 import org.apache.helix.model.ClusterConfig;
+import org.apache.helix.model.IdealState;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Profile;
@@ -51,7 +52,7 @@ public class ClusterInitializer implements CommandLineRunner {
                 admin.rebalance(clusterName, resourceName, 2); // 2 replicas
                 log.info("Resource rebalanced.");
             } else {
-                log.info("Resource already exists.");
+                growResource(admin, resourceName);
             }
 
             log.info("Initialization complete. Enabling allowParticipantAutoJoin.");
@@ -84,4 +85,24 @@ public class ClusterInitializer implements CommandLineRunner {
             System.exit(0);
         }
     }
+
+    /**
+     * Raises the partition count of an existing resource. Events keep firing from their old partition until
+     * PartitionMigrator has moved them; see VirtualBuckets for how buckets map onto the new partitions.
+     */
+    private void growResource(ZKHelixAdmin admin, String resourceName) {
+        IdealState idealState = admin.getResourceIdealState(clusterName, resourceName);
+        int current = idealState.getNumPartitions();
+        if (numPartitions > current) {
+            idealState.setNumPartitions(numPartitions);
+            admin.setResourceIdealState(clusterName, resourceName, idealState);
+            admin.rebalance(clusterName, resourceName, 2);
+            log.info("Resource {} grown from {} to {} partitions.", resourceName, current, numPartitions);
+        } else if (numPartitions < current) {
+            log.warn("Resource {} has {} partitions; shrinking to {} is not supported.", resourceName, current,
+                    numPartitions);
+        } else {
+            log.info("Resource already exists.");
+        }
+    }
 }
@@ -0,0 +1,170 @@
+package com.jinternals.scheduler.workernode.configuration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Turns {@code events} into a Postgres table LIST-partitioned by {@code partition_id}, one table per
+ * {@code scheduler-resource} partition, each with partial indexes on its PENDING and IN_PROGRESS rows only. A
+ * worker's claims then only touch its own small heap and indexes, and PROCESSED rows never enter them.
+ * <p>
+ * An existing unpartitioned table is migrated in one transaction: it is renamed to {@code events_unpartitioned},
+ * its rows are copied into the new table, and it is kept for the operator to drop. Running again only adds the
+ * partitions missing after {@code scheduler.partitions} was raised. Runs with the {@code init} profile, before
+ * the Helix cluster is set up, while no worker is claiming. Columns added to {@code Event} later must be added to
+ * the partitioned table here as well.
+ * <p>
+ * Postgres only allows a primary key that includes the partition key, so it becomes {@code (id, partition_id)}.
+ * Ids stay unique because every writer derives {@code partition_id} from the id, but only while all writers agree
+ * on {@code scheduler.partitions}: once the count is raised, an id re-submitted before the repartitioning has
+ * moved its row lands in the new partition next to the old row, and the API's {@code ON CONFLICT DO NOTHING}
+ * cannot see the conflict. Reads and deletes by id alone still find the row in whichever partition it is, at the
+ * cost of one primary key probe per partition.
+ */
+@Component
+@Profile("init")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "scheduler.events.partitioned", havingValue = "true")
+@Slf4j
+public class EventTablePartitioner implements CommandLineRunner {
+
+    private static final String LEGACY_TABLE = "events_unpartitioned";
+
+    private static final String CREATE_EVENTS = """
+            CREATE TABLE events (
+                id VARCHAR(255) NOT NULL,
+                partition_id INT NOT NULL,
+                bucket INT,
+                scheduled_time TIMESTAMP(6) NOT NULL,
+                status VARCHAR(255) NOT NULL,
+                event_name VARCHAR(255),
+                namespace VARCHAR(255),
+                priority INT DEFAULT 0 NOT NULL,
+                payload TEXT,
+                payload_ref VARCHAR(36),
+                created_at TIMESTAMP(6),
+                updated_at TIMESTAMP(6),
+                locked_at TIMESTAMP(6),
+                exception_stack_trace VARCHAR(4096),
+                attempts INT DEFAULT 0 NOT NULL,
+                claim_epoch BIGINT,
+                claimed_by VARCHAR(255),
+                lease_until TIMESTAMP(6),
+                cron_expression VARCHAR(255),
+                interval_ms BIGINT,
+                recurrence_end TIMESTAMP(6),
+                series_id VARCHAR(36)
+            ) PARTITION BY LIST (partition_id)""";
+
+    private static final List<String> CREATE_INDEXES = List.of(
+            // Claims, prefetch and next-due probes only ever look at PENDING rows
+            "CREATE INDEX IF NOT EXISTS idx_events_pending_scheduled ON events (scheduled_time) "
+                    + "WHERE status = 'PENDING'",
+            // Lease renewal and recovery only look at IN_PROGRESS rows
+            "CREATE INDEX IF NOT EXISTS idx_events_in_progress_locked ON events (locked_at) "
+                    + "WHERE status = 'IN_PROGRESS'",
+            // Namespace-fair claims read one namespace at a time
+            "CREATE INDEX IF NOT EXISTS idx_events_pending_namespace ON events (namespace, priority DESC, "
+                    + "scheduled_time) WHERE status = 'PENDING'",
+            // Cancelling a series looks up its pending occurrence
+            "CREATE INDEX IF NOT EXISTS idx_events_series ON events (series_id) WHERE series_id IS NOT NULL",
+            // The API's event search pages through (scheduled_time, id), within a namespace or across all of them
+            "CREATE INDEX IF NOT EXISTS idx_events_scheduled_id ON events (scheduled_time, id)",
+            "CREATE INDEX IF NOT EXISTS idx_events_namespace_scheduled_id ON events (namespace, scheduled_time, id)");
+
+    private static final List<String> ADD_COLUMNS = List.of(
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS bucket INT",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS priority INT DEFAULT 0 NOT NULL",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS attempts INT DEFAULT 0 NOT NULL",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS claim_epoch BIGINT",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS claimed_by VARCHAR(255)",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS lease_until TIMESTAMP(6)",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS cron_expression VARCHAR(255)",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS interval_ms BIGINT",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS recurrence_end TIMESTAMP(6)",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS series_id VARCHAR(36)",
+            "ALTER TABLE events ADD COLUMN IF NOT EXISTS payload_ref VARCHAR(36)");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${scheduler.partitions:6}")
+    private int numPartitions;
+
+    public EventTablePartitioner(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void run(String... args) {
+        transactionTemplate.executeWithoutResult(status -> {
+            String kind = jdbcTemplate.queryForObject(
+                    "SELECT coalesce((SELECT relkind::text FROM pg_class WHERE oid = to_regclass('events')), '')",
+                    String.class);
+            switch (kind) {
+                case "p" -> {
+                    // Hibernate's ddl-auto does not see partitioned tables, so columns and indexes added later
+                    // are added here
+                    ADD_COLUMNS.forEach(jdbcTemplate::execute);
+                    CREATE_INDEXES.forEach(jdbcTemplate::execute);
+                    log.info("events is already partitioned");
+                }
+                case "" -> {
+                    createPartitionedTable(CREATE_EVENTS);
+                    log.info("Created partitioned events table");
+                }
+                case "r" -> migrate();
+                default -> throw new IllegalStateException("events is neither a table nor a partitioned table");
+            }
+            SortedSet<Integer> partitions = new TreeSet<>();
+            for (int partition = 0; partition < numPartitions; partition++) {
+                partitions.add(partition);
+            }
+            createPartitions(partitions);
+        });
+    }
+
+    private void createPartitionedTable(String createTable) {
+        jdbcTemplate.execute(createTable);
+        // Unique constraints must include the partition key; see the class comment for what that means for ids
+        jdbcTemplate.execute("ALTER TABLE events ADD CONSTRAINT events_partitioned_pkey PRIMARY KEY (id, partition_id)");
+        CREATE_INDEXES.forEach(jdbcTemplate::execute);
+    }
+
+    private void migrate() {
+        jdbcTemplate.execute("LOCK TABLE events IN ACCESS EXCLUSIVE MODE");
+        jdbcTemplate.execute("ALTER TABLE events RENAME TO " + LEGACY_TABLE);
+        // Keep the column definitions of the existing table, whoever created it
+        createPartitionedTable("CREATE TABLE events (LIKE " + LEGACY_TABLE
+                + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS) PARTITION BY LIST (partition_id)");
+
+        // Rows of partitions beyond scheduler.partitions still need a home
+        createPartitions(new TreeSet<>(jdbcTemplate.queryForList(
+                "SELECT DISTINCT partition_id FROM " + LEGACY_TABLE, Integer.class)));
+        int copied = jdbcTemplate.update("INSERT INTO events SELECT * FROM " + LEGACY_TABLE);
+        log.info("Migrated {} events into the partitioned events table; drop {} once verified",
+                copied, LEGACY_TABLE);
+    }
+
+    private void createPartitions(SortedSet<Integer> partitions) {
+        for (Integer partition : partitions) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS events_p" + partition
+                    + " PARTITION OF events FOR VALUES IN (" + partition + ")");
+        }
+        log.info("events partitions present for {}", partitions);
+    }
+}
@@ -2,6 +2,7 @@ package com.jinternals.scheduler.workernode.configuration;
 
 import com.jinternals.scheduler.workernode.helix.SchedulerStateModelFactory;
 import com.jinternals.scheduler.workernode.service.PartitionManager;
+import com.jinternals.scheduler.workernode.service.PartitionOwnership;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import org.apache.helix.HelixManager;
@@ -33,9 +34,11 @@ public class HelixConfiguration {
     private HelixManager helixManager;
 
     private final PartitionManager partitionManager;
+    private final PartitionOwnership partitionOwnership;
 
-    public HelixConfiguration(PartitionManager partitionManager) {
+    public HelixConfiguration(PartitionManager partitionManager, PartitionOwnership partitionOwnership) {
         this.partitionManager = partitionManager;
+        this.partitionOwnership = partitionOwnership;
     }
 
     @PostConstruct
@@ -50,7 +53,7 @@ public class HelixConfiguration {
 
             helixManager.getStateMachineEngine().registerStateModelFactory(
                     BuiltInStateModelDefinitions.MasterSlave.name(),
-                    new SchedulerStateModelFactory(partitionManager));
+                    new SchedulerStateModelFactory(partitionManager, partitionOwnership));
 
             helixManager.connect();
             logger.info("Helix Participant connected successfully.");
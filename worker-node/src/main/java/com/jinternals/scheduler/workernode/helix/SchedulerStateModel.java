@@ -1,6 +1,7 @@
 package com.jinternals.scheduler.workernode.helix;
 
 import com.jinternals.scheduler.workernode.service.PartitionManager;
+import com.jinternals.scheduler.workernode.service.PartitionOwnership;
 import org.apache.helix.NotificationContext;
 import org.apache.helix.model.Message;
 import org.apache.helix.participant.statemachine.StateModel;
@@ -15,11 +16,14 @@ public class SchedulerStateModel extends StateModel {
     private final String partitionName;
     private final int partitionId;
     private final PartitionManager partitionManager;
+    private final PartitionOwnership partitionOwnership;
 
     public SchedulerStateModel(String partitionName,
-            PartitionManager partitionManager) {
+            PartitionManager partitionManager,
+            PartitionOwnership partitionOwnership) {
         this.partitionName = partitionName;
         this.partitionManager = partitionManager;
+        this.partitionOwnership = partitionOwnership;
         // partitionName format is usually ResourceName_PartitionId
         String[] parts = partitionName.split("_");
         this.partitionId = Integer.parseInt(parts[parts.length - 1]);
@@ -28,31 +32,37 @@ public class SchedulerStateModel extends StateModel {
     @Transition(from = "OFFLINE", to = "SLAVE")
     public void onBecomeSlaveFromOffline(Message message, NotificationContext context) {
         logger.info("Transitioning from OFFLINE to SLAVE for partition: {}", partitionName);
+        partitionManager.addStandbyPartition(partitionId);
     }
 
     @Transition(from = "SLAVE", to = "MASTER")
     public void onBecomeMasterFromSlave(Message message, NotificationContext context) {
         logger.info("Transitioning from SLAVE to MASTER for partition: {}", partitionName);
-        logger.info("Starting scheduler for partition {}", partitionId);
-        partitionManager.addPartition(partitionId);
+        long epoch = partitionOwnership.acquire(partitionId);
+        logger.info("Starting scheduler for partition {} at epoch {}", partitionId, epoch);
+        partitionManager.addPartition(partitionId, epoch);
     }
 
     @Transition(from = "MASTER", to = "SLAVE")
     public void onBecomeSlaveFromMaster(Message message, NotificationContext context) {
         logger.info("Transitioning from MASTER to SLAVE for partition: {}", partitionName);
         logger.info("Stopping scheduler for partition {}", partitionId);
+        // Returns once the work in flight finished, so Helix only promotes the next master after that
         partitionManager.removePartition(partitionId);
+        partitionManager.addStandbyPartition(partitionId);
     }
 
     @Transition(from = "SLAVE", to = "OFFLINE")
     public void onBecomeOfflineFromSlave(Message message, NotificationContext context) {
         logger.info("Transitioning from SLAVE to OFFLINE for partition: {}", partitionName);
+        partitionManager.removeStandbyPartition(partitionId);
         partitionManager.removePartition(partitionId);
     }
 
     @Transition(from = "OFFLINE", to = "DROPPED")
     public void onBecomeDroppedFromOffline(Message message, NotificationContext context) {
         logger.info("Transitioning from OFFLINE to DROPPED for partition: {}", partitionName);
+        partitionManager.removeStandbyPartition(partitionId);
         partitionManager.removePartition(partitionId);
     }
 }
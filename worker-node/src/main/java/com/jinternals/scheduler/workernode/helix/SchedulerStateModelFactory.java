@@ -1,18 +1,21 @@
 package com.jinternals.scheduler.workernode.helix;
 
 import com.jinternals.scheduler.workernode.service.PartitionManager;
+import com.jinternals.scheduler.workernode.service.PartitionOwnership;
 import org.apache.helix.participant.statemachine.StateModel;
 import org.apache.helix.participant.statemachine.StateModelFactory;
 
 public class SchedulerStateModelFactory extends StateModelFactory<StateModel> {
     private final PartitionManager partitionManager;
+    private final PartitionOwnership partitionOwnership;
 
-    public SchedulerStateModelFactory(PartitionManager partitionManager) {
+    public SchedulerStateModelFactory(PartitionManager partitionManager, PartitionOwnership partitionOwnership) {
         this.partitionManager = partitionManager;
+        this.partitionOwnership = partitionOwnership;
     }
 
     @Override
     public StateModel createNewStateModel(String resourceName, String partitionName) {
-        return new SchedulerStateModel(partitionName, partitionManager);
+        return new SchedulerStateModel(partitionName, partitionManager, partitionOwnership);
     }
 }
@@ -0,0 +1,55 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Leases of the claims this worker is dispatching. A claim holds for {@code scheduler.lease.duration-ms}; the
+ * {@link StuckEventReaper} renews the claims still held here, so a claim that is no longer being dispatched,
+ * whether its worker died or lost track of it, runs out within seconds and is handed out again.
+ */
+@Component
+@Profile("!init & !controller")
+public class ClaimLeases {
+
+    private final Duration duration;
+    // Claims are identified by their lockedAt; two claims of a partition may share one
+    private final Map<Integer, Map<LocalDateTime, Integer>> held = new ConcurrentHashMap<>();
+
+    public ClaimLeases(@Value("${scheduler.lease.duration-ms:10000}") long durationMs) {
+        this.duration = Duration.ofMillis(durationMs);
+    }
+
+    /**
+     * @return the end of the lease of a claim made or renewed at {@code now}
+     */
+    public LocalDateTime leaseUntil(LocalDateTime now) {
+        return now.plus(duration);
+    }
+
+    public void hold(int partition, LocalDateTime lockedAt) {
+        held.computeIfAbsent(partition, p -> new ConcurrentHashMap<>()).merge(lockedAt, 1, Integer::sum);
+    }
+
+    public void release(int partition, LocalDateTime lockedAt) {
+        held.computeIfPresent(partition, (p, claims) -> {
+            claims.computeIfPresent(lockedAt, (claim, count) -> count == 1 ? null : count - 1);
+            return claims.isEmpty() ? null : claims;
+        });
+    }
+
+    /**
+     * @return the lockedAt of the partition's claims being dispatched right now
+     */
+    public Set<LocalDateTime> held(int partition) {
+        Map<LocalDateTime, Integer> claims = held.get(partition);
+        return claims == null ? Set.of() : Set.copyOf(claims.keySet());
+    }
+}
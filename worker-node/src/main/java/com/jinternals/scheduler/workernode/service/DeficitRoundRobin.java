@@ -0,0 +1,75 @@
+package com.jinternals.scheduler.workernode.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deficit round robin over the namespaces with due events in a partition. Every round credits each namespace
+ * with {@code quantum * weight} events and claims up to its credit, so a namespace with a huge backlog gets its
+ * weighted share instead of starving the others. A namespace leaves the rotation once it has nothing left.
+ * Namespaces without a configured weight weigh 1.
+ */
+public class DeficitRoundRobin {
+
+    @FunctionalInterface
+    public interface Lane {
+        /**
+         * Claims up to {@code limit} due events of a namespace.
+         *
+         * @return the number of events claimed; less than {@code limit} means the namespace has run dry
+         */
+        int claim(String namespace, int limit);
+    }
+
+    private final Map<String, Integer> weights;
+    private final int quantum;
+    private final int batchSize;
+
+    public DeficitRoundRobin(Map<String, Integer> weights, int quantum, int batchSize) {
+        this.weights = Map.copyOf(weights);
+        this.quantum = quantum;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Claims up to {@code budget} events from the given namespaces, in order.
+     *
+     * @return the number of events claimed
+     */
+    public int drain(List<String> namespaces, int budget, Lane lane) {
+        Map<String, Integer> deficits = new LinkedHashMap<>();
+        namespaces.forEach(namespace -> deficits.put(namespace, 0));
+        int claimed = 0;
+        while (!deficits.isEmpty() && claimed < budget) {
+            Iterator<Map.Entry<String, Integer>> rotation = deficits.entrySet().iterator();
+            while (rotation.hasNext() && claimed < budget) {
+                Map.Entry<String, Integer> entry = rotation.next();
+                int deficit = entry.getValue() + quantum * weight(entry.getKey());
+                boolean dry = false;
+                while (deficit > 0 && claimed < budget) {
+                    int limit = Math.min(Math.min(deficit, batchSize), budget - claimed);
+                    int count = lane.claim(entry.getKey(), limit);
+                    claimed += count;
+                    deficit -= count;
+                    if (count < limit) {
+                        dry = true;
+                        break;
+                    }
+                }
+                if (dry) {
+                    rotation.remove();
+                } else {
+                    entry.setValue(deficit);
+                }
+            }
+        }
+        return claimed;
+    }
+
+    private int weight(String namespace) {
+        Integer weight = namespace != null ? weights.get(namespace) : null;
+        return weight != null ? Math.max(1, weight) : 1;
+    }
+}
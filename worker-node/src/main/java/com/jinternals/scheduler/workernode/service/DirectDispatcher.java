@@ -0,0 +1,226 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventPayload;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import com.jinternals.scheduler.workernode.config.KafkaPartitionMapping;
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.kafka.autoconfigure.KafkaProperties;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static com.jinternals.scheduler.common.model.EventStatus.*;
+import static com.jinternals.scheduler.workernode.config.KafkaConfig.SCHEDULER_EVENTS_TOPIC;
+
+/**
+ * {@link DispatchMode#DIRECT}: produces claimed events straight to Kafka instead of going through the outbox.
+ * <p>
+ * Each batch is fenced on its claim: the events are moved to PROCESSED only if they are still IN_PROGRESS with
+ * the batch's {@code locked_at}, and that update is committed only after the Kafka transaction carrying the
+ * records has committed. A batch whose claim was lost is never produced. A crash between the Kafka and the
+ * database commit leaves the events IN_PROGRESS, so the stuck event reaper hands them out again. A batch failing
+ * on the broker or the database is postponed as a whole, without counting an attempt against its events. A batch
+ * failing because of one of its events, e.g. one that cannot be serialized, is produced again one event at a
+ * time, and an event failing on its own is handed to the {@link RetryPolicy}. Once one of them fails on the
+ * broker, the rest are postponed without trying each of them.
+ * <p>
+ * Uses its own transactional producer, so the shared {@link KafkaTemplate} used by {@link OutboxPublisher} stays
+ * non-transactional.
+ */
+@Service
+@Profile("!init & !controller")
+@ConditionalOnProperty(name = "scheduler.dispatch.mode", havingValue = "DIRECT")
+public class DirectDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectDispatcher.class);
+
+    private final EventRepository eventRepository;
+    private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final KafkaPartitionMapping partitionMapping;
+    private final OffloadedPayloads offloadedPayloads;
+    private final RecurrenceMaterializer recurrenceMaterializer;
+    private final RetryPolicy retryPolicy;
+    private final SchedulerMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+
+    @Autowired
+    public DirectDispatcher(EventRepository eventRepository,
+                            KafkaProperties kafkaProperties,
+                            KafkaPartitionMapping partitionMapping,
+                            OffloadedPayloads offloadedPayloads,
+                            RecurrenceMaterializer recurrenceMaterializer,
+                            RetryPolicy retryPolicy,
+                            SchedulerMetrics metrics,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${scheduler.dispatch.transaction-id-prefix:${helix.instance.name}-}")
+                            String transactionIdPrefix) {
+        this(eventRepository, transactionalTemplate(kafkaProperties, transactionIdPrefix), partitionMapping,
+                offloadedPayloads, recurrenceMaterializer, retryPolicy, metrics, transactionManager);
+    }
+
+    DirectDispatcher(EventRepository eventRepository,
+                     KafkaTemplate<String, Object> kafkaTemplate,
+                     KafkaPartitionMapping partitionMapping,
+                     OffloadedPayloads offloadedPayloads,
+                     RecurrenceMaterializer recurrenceMaterializer,
+                     RetryPolicy retryPolicy,
+                     SchedulerMetrics metrics,
+                     PlatformTransactionManager transactionManager) {
+        this.eventRepository = eventRepository;
+        this.kafkaTemplate = kafkaTemplate;
+        this.partitionMapping = partitionMapping;
+        this.offloadedPayloads = offloadedPayloads;
+        this.recurrenceMaterializer = recurrenceMaterializer;
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (kafkaTemplate.getProducerFactory() instanceof DefaultKafkaProducerFactory<String, Object> factory) {
+            factory.destroy();
+        }
+    }
+
+    /**
+     * Produces one claimed batch of a partition. If the claim was lost, what is left of it is released.
+     *
+     * @param events events claimed together, all carrying the same {@code lockedAt}
+     * @return the number of events produced
+     */
+    public int dispatch(int partition, List<Event> events) {
+        try {
+            produce(partition, events);
+            return events.size();
+        } catch (ClaimLostException e) {
+            release(partition, events, e);
+            return 0;
+        } catch (Exception e) {
+            if (!isEventFailure(e)) {
+                retryPolicy.postpone(partition, events, e);
+                return 0;
+            }
+            if (events.size() == 1) {
+                retryPolicy.recordFailure(partition, events.getFirst(), e);
+                return 0;
+            }
+            logger.error("Failed to produce batch of {} events for partition {}, producing them one by one",
+                    events.size(), partition, e);
+            return produceEach(partition, events);
+        }
+    }
+
+    private int produceEach(int partition, List<Event> events) {
+        int produced = 0;
+        for (int i = 0; i < events.size(); i++) {
+            Event event = events.get(i);
+            try {
+                produce(partition, List.of(event));
+                produced++;
+            } catch (ClaimLostException e) {
+                release(partition, List.of(event), e);
+            } catch (Exception e) {
+                if (!isEventFailure(e)) {
+                    // The broker went away meanwhile; don't wait for it once per event
+                    retryPolicy.postpone(partition, events.subList(i, events.size()), e);
+                    break;
+                }
+                retryPolicy.recordFailure(partition, event, e);
+            }
+        }
+        return produced;
+    }
+
+    private void produce(int partition, List<Event> events) {
+        LocalDateTime claimedAt = events.getFirst().getLockedAt();
+        List<String> ids = events.stream().map(Event::getId).toList();
+        transactionTemplate.executeWithoutResult(status -> {
+            int owned = eventRepository.completeClaim(partition, ids, claimedAt, IN_PROGRESS, PROCESSED);
+            if (owned != ids.size()) {
+                // Rolls back the status change before anything was produced
+                throw new ClaimLostException("Claim lost for " + (ids.size() - owned) + " of " + ids.size()
+                        + " events of partition " + partition);
+            }
+            recurrenceMaterializer.materializeNext(events);
+            Map<String, EventPayload> payloads = offloadedPayloads.findAll(
+                    events.stream().map(Event::getPayloadRef).toList());
+            // Commits only once every record is acknowledged; a failure aborts it and rolls back the update
+            kafkaTemplate.executeInTransaction(operations -> {
+                for (Event event : events) {
+                    int kafkaPartition = partitionMapping.kafkaPartition(partition, event.getId());
+                    if (OffloadedPayloads.isRemoved(event.getId(), event.getPayloadRef(), payloads)) {
+                        continue;
+                    }
+                    if (event.getPayloadRef() == null) {
+                        operations.send(SCHEDULER_EVENTS_TOPIC, kafkaPartition, event.getId(),
+                                event.getPayload());
+                    } else {
+                        operations.send(OffloadedPayloads.record(SCHEDULER_EVENTS_TOPIC, kafkaPartition,
+                                event.getId(), payloads.get(event.getPayloadRef())));
+                    }
+                }
+                return null;
+            });
+        });
+        logger.info("Produced batch of {} events for partition {}", events.size(), partition);
+        metrics.recordDispatched(events);
+    }
+
+    private void release(int partition, List<Event> events, ClaimLostException cause) {
+        logger.error("Failed to produce batch of {} events for partition {}", events.size(), partition, cause);
+        List<String> ids = events.stream().map(Event::getId).toList();
+        transactionTemplate.executeWithoutResult(status -> eventRepository.releaseClaim(partition, ids,
+                events.getFirst().getLockedAt(), IN_PROGRESS, PENDING));
+    }
+
+    /**
+     * @return whether a failure is down to the events themselves, e.g. a record that cannot be serialized or is too
+     * large, rather than to the broker or the database
+     */
+    static boolean isEventFailure(Throwable failure) {
+        boolean infrastructure = false;
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SerializationException || cause instanceof RecordTooLargeException) {
+                return true;
+            }
+            infrastructure |= cause instanceof KafkaException
+                    || cause instanceof org.springframework.kafka.KafkaException
+                    || cause instanceof DataAccessException
+                    || cause instanceof TransactionException;
+        }
+        return !infrastructure;
+    }
+
+    private static class ClaimLostException extends IllegalStateException {
+        ClaimLostException(String message) {
+            super(message);
+        }
+    }
+
+    private static KafkaTemplate<String, Object> transactionalTemplate(KafkaProperties kafkaProperties,
+                                                                       String transactionIdPrefix) {
+        DefaultKafkaProducerFactory<String, Object> producerFactory =
+                new DefaultKafkaProducerFactory<>(kafkaProperties.buildProducerProperties());
+        producerFactory.setTransactionIdPrefix(transactionIdPrefix);
+        return new KafkaTemplate<>(producerFactory);
+    }
+}
@@ -0,0 +1,22 @@
+package com.jinternals.scheduler.workernode.service;
+
+/**
+ * How due events leave the worker, set per deployment with {@code scheduler.dispatch.mode}.
+ */
+public enum DispatchMode {
+
+    /**
+     * Claim (IN_PROGRESS), then write the outbox row and mark PROCESSED; {@link OutboxPublisher} sends it.
+     */
+    OUTBOX,
+
+    /**
+     * Claim, outbox insert and PROCESSED in one statement instead of two transactions via IN_PROGRESS.
+     */
+    FUSED,
+
+    /**
+     * Claim, then produce straight to Kafka in a Kafka transaction; see {@link DirectDispatcher}. No outbox rows.
+     */
+    DIRECT
+}
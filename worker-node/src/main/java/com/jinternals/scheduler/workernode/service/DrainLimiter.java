@@ -0,0 +1,121 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps how many partition drains, i.e. polls and outbox drains, run at once across the cluster, so they cannot
+ * take more database connections than the pools have. Timing wheel dispatches have a cap of their own, so a
+ * backlog being drained never holds back the events that are due right now.
+ * <p>
+ * Like {@link NamespaceRateLimiter}, a worker runs its share of each cap by the partitions it owns. The cap is
+ * spread over the partitions, the first {@code cap % scheduler.partitions} partitions getting one permit more
+ * than the others, so the shares of all workers add up to the cap without any further coordination. A worker
+ * whose partitions carry no permit, because the cap is below the partition count, still gets one.
+ */
+@Component
+@Profile("!init & !controller")
+public class DrainLimiter {
+
+    // Shares change as partitions move between workers
+    private static final long RECHECK_MS = 100;
+
+    private final PartitionManager partitionManager;
+    private final int numPartitions;
+    private final Pool drains;
+    private final Pool dispatches;
+
+    /**
+     * @param maxConcurrency drains running at once across the cluster, or 0 for no limit
+     * @param maxDispatchConcurrency timing wheel dispatches running at once across the cluster, or 0 for no limit
+     */
+    public DrainLimiter(PartitionManager partitionManager,
+                        @Value("${scheduler.drain.max-concurrency:8}") int maxConcurrency,
+                        @Value("${scheduler.wheel.max-concurrency:8}") int maxDispatchConcurrency,
+                        @Value("${scheduler.partitions:6}") int numPartitions) {
+        this.partitionManager = partitionManager;
+        this.numPartitions = numPartitions;
+        this.drains = new Pool(maxConcurrency);
+        this.dispatches = new Pool(maxDispatchConcurrency);
+    }
+
+    /**
+     * Waits for a drain permit; every call must be paired with {@link #release}.
+     */
+    public void acquire() throws InterruptedException {
+        drains.acquire();
+    }
+
+    public void release() {
+        drains.release();
+    }
+
+    /**
+     * Waits for a timing wheel dispatch permit; every call must be paired with {@link #releaseDispatch}.
+     */
+    public void acquireDispatch() throws InterruptedException {
+        dispatches.acquire();
+    }
+
+    public void releaseDispatch() {
+        dispatches.release();
+    }
+
+    int permits() {
+        return drains.permits();
+    }
+
+    int dispatchPermits() {
+        return dispatches.permits();
+    }
+
+    private final class Pool {
+
+        private final int cap;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        private int running;
+
+        private Pool(int cap) {
+            this.cap = cap;
+        }
+
+        private void acquire() throws InterruptedException {
+            lock.lock();
+            try {
+                while (running >= permits()) {
+                    released.await(RECHECK_MS, TimeUnit.MILLISECONDS);
+                }
+                running++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void release() {
+            lock.lock();
+            try {
+                running--;
+                released.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int permits() {
+            if (cap <= 0) {
+                return Integer.MAX_VALUE;
+            }
+            int share = 0;
+            for (int partition : partitionManager.getActivePartitions()) {
+                share += cap / numPartitions + (partition < cap % numPartitions ? 1 : 0);
+            }
+            return Math.max(1, share);
+        }
+    }
+}
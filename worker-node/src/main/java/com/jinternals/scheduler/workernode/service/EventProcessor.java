@@ -3,24 +3,31 @@ package com.jinternals.scheduler.workernode.service;
 import com.jinternals.scheduler.common.model.*;
 import com.jinternals.scheduler.common.repositories.EventRepository;
 import com.jinternals.scheduler.common.repositories.OutboxRepository;
+import com.jinternals.scheduler.workernode.wheel.EventTimer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import static com.jinternals.scheduler.common.model.EventStatus.*;
 
 @Service
 @Profile("!init & !controller")
-public class EventProcessor {
+public class EventProcessor implements PartitionManager.Listener {
 
     private static final Logger logger = LoggerFactory.getLogger(EventProcessor.class);
     private final PartitionManager partitionManager;
@@ -29,107 +36,516 @@ public class EventProcessor {
     private final TransactionTemplate transactionTemplate;
     private final Executor eventTaskExecutor;
     private final ClockService clockService;
+    private final OutboxPublisher outboxPublisher;
+    private final RecurrenceMaterializer recurrenceMaterializer;
+    private final NamespaceRateLimiter rateLimiter;
+    private final RetryPolicy retryPolicy;
+    private final SchedulerMetrics metrics;
+    private final ClaimLeases claimLeases;
+    private final DirectDispatcher directDispatcher;
+    private final EventTimer eventTimer;
+    private final PartitionPollSchedule pollSchedule;
+    private final DrainLimiter drainLimiter;
+    private final PartitionDrainLoops drainLoops;
+    private final Map<Integer, LocalDateTime> prefetchHorizons = new ConcurrentHashMap<>();
+    // Partitions whose window was cut short by the prefetch limit
+    private final Set<Integer> truncatedWindows = ConcurrentHashMap.newKeySet();
 
-    private static final int POLL_INTERVAL_MS = 1000; // Increased poll frequency since we lost wheel precision
+    // Polling only catches overdue events and refills the timing wheels; due events are fired by the wheel.
+    // Each partition's drain loop polls it when its PartitionPollSchedule deadline has passed or it was woken up.
+    private static final int BATCH_SIZE = 50;
+    // Drain up to 20 batches (1000 events) per poll cycle to prevent starvation of other partitions
+    // or holding resources too long.
+    private static final int MAX_BATCHES_PER_POLL = 20;
+    // Rate limited namespaces earn new tokens continuously
+    private static final long THROTTLED_RETRY_MS = 100;
+    // Without notifications, events scheduled into an already prefetched window, or onto a partition backing off,
+    // are only found by polling; poll at least as often as the fixed one second poll the wheel replaced.
+    private static final long UNNOTIFIED_MAX_POLL_INTERVAL_MS = 1000;
+    private static final long WHEEL_TICK_MS = 1;
+    private static final int WHEEL_SIZE = 512;
+    // A truncated window is refilled this long before the wheel runs out of what was loaded
+    private static final long TRUNCATED_REFILL_LEAD_MS = 250;
+
+    @Value("${scheduler.wheel.lookahead-ms:60000}")
+    private long lookaheadMs = 60000;
+
+    @Value("${scheduler.wheel.prefetch-limit:5000}")
+    private int prefetchLimit = 5000;
+
+    @Value("${scheduler.dispatch.mode:OUTBOX}")
+    private DispatchMode dispatchMode = DispatchMode.OUTBOX;
+
+    @Value("${scheduler.fairness.enabled:false}")
+    private boolean fairnessEnabled = false;
+
+    private DeficitRoundRobin fairClaims = new DeficitRoundRobin(Map.of(), BATCH_SIZE, BATCH_SIZE);
 
     public EventProcessor(PartitionManager partitionManager,
                           EventRepository eventRepository,
             OutboxRepository outboxRepository,
             PlatformTransactionManager transactionManager,
             ClockService clockService,
-            @Qualifier("eventTaskExecutor") Executor eventTaskExecutor) {
+            OutboxPublisher outboxPublisher,
+            RecurrenceMaterializer recurrenceMaterializer,
+            NamespaceRateLimiter rateLimiter,
+            RetryPolicy retryPolicy,
+            SchedulerMetrics metrics,
+            ClaimLeases claimLeases,
+            DrainLimiter drainLimiter,
+            Optional<DirectDispatcher> directDispatcher,
+            @Qualifier("eventTaskExecutor") Executor eventTaskExecutor,
+            @Value("${scheduler.poll.min-interval-ms:500}") long minPollIntervalMs,
+            @Value("${scheduler.poll.max-interval-ms:5000}") long maxPollIntervalMs,
+            @Value("${scheduler.notify.enabled:true}") boolean notifyEnabled) {
         this.partitionManager = partitionManager;
         this.eventRepository = eventRepository;
         this.outboxRepository = outboxRepository;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.eventTaskExecutor = eventTaskExecutor;
         this.clockService = clockService;
+        this.outboxPublisher = outboxPublisher;
+        this.recurrenceMaterializer = recurrenceMaterializer;
+        this.rateLimiter = rateLimiter;
+        this.retryPolicy = retryPolicy;
+        this.metrics = metrics;
+        this.claimLeases = claimLeases;
+        this.directDispatcher = directDispatcher.orElse(null);
+        this.eventTimer = new EventTimer(WHEEL_TICK_MS, WHEEL_SIZE, this::onEventsDue);
+        this.pollSchedule = new PartitionPollSchedule(minPollIntervalMs,
+                notifyEnabled ? maxPollIntervalMs : Math.min(maxPollIntervalMs, UNNOTIFIED_MAX_POLL_INTERVAL_MS));
+        this.drainLimiter = drainLimiter;
+        this.drainLoops = new PartitionDrainLoops("event-drain", pollSchedule, drainLimiter, this::drainIfDue,
+                () -> EventTimer.toEpochMillis(clockService.getCurrentDateTime()));
+    }
+
+    /**
+     * @param namespaceWeights relative share of each namespace's overdue events, e.g. {@code {'tenant-a': 4}}
+     */
+    @Value("#{${scheduler.fairness.weights:{:}}}")
+    void setNamespaceWeights(Map<String, Integer> namespaceWeights) {
+        this.fairClaims = new DeficitRoundRobin(namespaceWeights, BATCH_SIZE, BATCH_SIZE);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (dispatchMode == DispatchMode.DIRECT && directDispatcher == null) {
+            throw new IllegalStateException("scheduler.dispatch.mode is DIRECT but no DirectDispatcher is configured");
+        }
+        partitionManager.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        drainLoops.stopAll();
+        eventTimer.close();
     }
 
-    @Scheduled(fixedDelay = POLL_INTERVAL_MS)
-    public void execute() {
+    @Override
+    public void onPartitionAdded(int partition) {
+        drainLoops.start(partition);
+    }
 
+    @Override
+    public void onPartitionRemoved(int partition) {
+        drainLoops.stop(partition);
         Set<Integer> partitions = partitionManager.getActivePartitions();
-        if (partitions.isEmpty()) {
-            logger.info("Polling: No active partitions assigned.");
+        eventTimer.retainPartitions(partitions);
+        prefetchHorizons.keySet().retainAll(partitions);
+        truncatedWindows.retainAll(partitions);
+        pollSchedule.retain(partitions);
+    }
+
+    /**
+     * Polls the partition if its {@link PartitionPollSchedule} deadline has passed; run by its drain loop.
+     */
+    void drainIfDue(int partition) {
+        LocalDateTime now = clockService.getCurrentDateTime();
+        long nowMs = EventTimer.toEpochMillis(now);
+        if (!pollSchedule.tryStart(partition, nowMs)) {
             return;
         }
+        if (!partitionManager.startWork(partition)) {
+            pollSchedule.backOff(partition, nowMs);
+            return;
+        }
+        try {
+            pollPartition(partition, now);
+        } catch (Exception e) {
+            logger.error("Error polling partition {}", partition, e);
+            pollSchedule.backOff(partition, nowMs);
+        } finally {
+            partitionManager.finishWork(partition);
+        }
+    }
 
-        List<Integer> activePartitions = new LinkedList<>(partitions);
-        Collections.shuffle(activePartitions);
+    private void pollPartition(Integer partition, LocalDateTime now) {
+        long nowMs = EventTimer.toEpochMillis(now);
+        refillWheel(partition, now);
 
-        for (Integer partition : activePartitions) {
-            handlePartitionBatch(partition, clockService.getCurrentDateTime());
+        // Index-only probe; only claim (a write) when something is actually due
+        LocalDateTime nextDue = eventRepository.findNextScheduledTime(partition, PENDING);
+        if (nextDue == null) {
+            pollSchedule.backOff(partition, nowMs);
+            return;
+        }
+        if (nextDue.isAfter(now)) {
+            // Whatever falls inside the prefetched window is fired by the wheel; poll again to refill it
+            LocalDateTime horizon = prefetchHorizons.get(partition);
+            LocalDateTime wakeAt = horizon != null && !nextDue.isAfter(horizon)
+                    ? nextRefill(partition, horizon)
+                    : nextDue;
+            pollSchedule.pollAt(partition, nowMs, EventTimer.toEpochMillis(wakeAt));
+            return;
         }
-    }
 
-    private void handlePartitionBatch(Integer partition, LocalDateTime now) {
-        // Offload partition draining to a virtual thread
-        eventTaskExecutor.execute(() -> {
-            int batchCount = 0;
-            // Drain up to 20 batches (1000 events) per poll cycle to prevent starvation of
-            // other partitions
-            // or holding resources too long.
-            while (batchCount < 20) {
-                List<Event> eventsToProcess = fetchPendingEventsForPartition(partition, now);
-
-                if (eventsToProcess.isEmpty()) {
+        int dispatched = 0;
+        if (fairnessEnabled || rateLimiter.isEnabled()) {
+            dispatched = drainFairly(partition, now);
+        } else {
+            for (int batch = 0; batch < MAX_BATCHES_PER_POLL; batch++) {
+                int count = dispatchDueBatch(partition, null, rateLimiter.limitedNamespaces(), now, BATCH_SIZE);
+                if (count == 0) {
                     break;
                 }
+                dispatched += count;
+            }
+        }
+
+        if (dispatched > 0) {
+            pollSchedule.pollAgain(partition);
+        } else if (rateLimiter.isEnabled()) {
+            // Due rows may be waiting for rate limit tokens
+            pollSchedule.pollAt(partition, nowMs, nowMs + THROTTLED_RETRY_MS);
+        } else {
+            // Due rows exist but are locked by a concurrent claim
+            pollSchedule.backOff(partition, nowMs);
+        }
+    }
 
-                processBatch(eventsToProcess);
-                batchCount++;
+    /**
+     * Reacts to a NOTIFY from scheduler-api about an event scheduled after this partition's window was prefetched.
+     * A single event inside the window goes straight into the wheel; anything else makes the partition poll now.
+     *
+     * @param eventId the new event, or null if the notification stands for a batch starting at scheduledTime
+     */
+    public void onEventsScheduled(int partition, LocalDateTime scheduledTime, String eventId) {
+        if (!partitionManager.getActivePartitions().contains(partition)) {
+            return;
+        }
+        LocalDateTime now = clockService.getCurrentDateTime();
+        LocalDateTime horizon = prefetchHorizons.get(partition);
+        if (scheduledTime.isAfter(now) && horizon != null) {
+            if (scheduledTime.isAfter(horizon)) {
+                // The next refill will load it
+                return;
+            }
+            if (eventId != null) {
+                eventTimer.schedule(partition, eventId, scheduledTime);
+                return;
+            }
+            // Reload the window from the earliest new event onwards
+            LocalDateTime reloadFrom = scheduledTime.minusNanos(1_000);
+            prefetchHorizons.computeIfPresent(partition, (p, h) -> reloadFrom.isBefore(h) ? reloadFrom : h);
+        }
+        pollNow(partition);
+    }
+
+    /**
+     * Forgets the prefetched window and polls the partition now, e.g. after notifications may have been missed.
+     */
+    public void resync(int partition) {
+        prefetchHorizons.remove(partition);
+        truncatedWindows.remove(partition);
+        pollNow(partition);
+    }
+
+    /**
+     * Starts dispatching a partition this worker just became master of, without waiting for its poll deadline. The
+     * window prefetched while it was a standby replica goes straight into the wheel; its ids may be stale, but they
+     * are only claims by id of events still PENDING and due, so anything the previous master dispatched is skipped.
+     *
+     * @param triggers events prefetched up to horizon, empty if there was no warm window
+     */
+    public void warmStart(int partition, List<EventTrigger> triggers, LocalDateTime horizon) {
+        if (!partitionManager.getActivePartitions().contains(partition)) {
+            return;
+        }
+        if (horizon != null && horizon.isAfter(clockService.getCurrentDateTime())) {
+            triggers.forEach(trigger -> eventTimer.schedule(partition, trigger.id(), trigger.scheduledTime()));
+            prefetchHorizons.put(partition, horizon);
+            truncatedWindows.remove(partition);
+        }
+        pollNow(partition);
+    }
+
+    private void pollNow(int partition) {
+        drainLoops.wakeUp(partition);
+    }
+
+    /**
+     * Prefetches the ids of events due within the lookahead window into the partition's timing wheel. The window
+     * is only extended once half of it has elapsed, so an idle partition costs one query per half window. A window
+     * truncated by the prefetch limit is extended once the wheel has nearly caught up with what was loaded, so a
+     * dense window costs one query per prefetch limit events rather than a query per poll.
+     */
+    private void refillWheel(Integer partition, LocalDateTime now) {
+        LocalDateTime horizon = prefetchHorizons.getOrDefault(partition, now);
+        if (horizon.isBefore(now)) {
+            // Anything due before now is picked up by the overdue drain
+            horizon = now;
+        }
+        if (now.isBefore(nextRefill(partition, horizon))) {
+            return;
+        }
+
+        LocalDateTime until = now.plus(Duration.ofMillis(lookaheadMs));
+        List<EventTrigger> triggers = eventRepository.findTriggers(partition, PENDING, horizon, until,
+                Limit.of(prefetchLimit));
+        triggers.forEach(trigger -> eventTimer.schedule(partition, trigger.id(), trigger.scheduledTime()));
+
+        // A truncated window only advances as far as what was actually loaded
+        if (triggers.size() < prefetchLimit) {
+            truncatedWindows.remove(partition);
+            prefetchHorizons.put(partition, until);
+        } else {
+            truncatedWindows.add(partition);
+            prefetchHorizons.put(partition, triggers.getLast().scheduledTime());
+        }
+    }
+
+    private LocalDateTime nextRefill(int partition, LocalDateTime horizon) {
+        return horizon.minus(Duration.ofMillis(truncatedWindows.contains(partition)
+                ? Math.min(TRUNCATED_REFILL_LEAD_MS, lookaheadMs / 2)
+                : lookaheadMs / 2));
+    }
+
+    private void onEventsDue(int partition, List<String> ids) {
+        if (!partitionManager.getActivePartitions().contains(partition)) {
+            return;
+        }
+        eventTaskExecutor.execute(() -> {
+            try {
+                drainLimiter.acquireDispatch();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                if (!partitionManager.startWork(partition)) {
+                    return;
+                }
+                try {
+                    for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+                        dispatchById(partition, ids.subList(from, Math.min(ids.size(), from + BATCH_SIZE)));
+                    }
+                } finally {
+                    partitionManager.finishWork(partition);
+                }
+            } finally {
+                drainLimiter.releaseDispatch();
             }
         });
     }
 
-    private List<Event> fetchPendingEventsForPartition(Integer partition, LocalDateTime now) {
-        return transactionTemplate.execute(status -> {
-            List<Event> events = eventRepository
-                    .findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(
-                            partition, PENDING, now);
+    /**
+     * Drains overdue events namespace by namespace with deficit round robin, weighted by
+     * {@code scheduler.fairness.weights}, so a namespace with a large backlog cannot hold back the others. One
+     * more lane claims from all other namespaces in time order, which also covers events without a namespace; it
+     * leaves the namespaces with a lane of their own alone, or an old backlog would get their share twice.
+     * Rate limited namespaces always get a lane of their own, throttled by {@link NamespaceRateLimiter}.
+     *
+     * @return the number of events dispatched
+     */
+    private int drainFairly(Integer partition, LocalDateTime now) {
+        List<String> namespaces = new ArrayList<>(eventRepository.findPendingNamespaces(partition));
+        if (!fairnessEnabled) {
+            namespaces.removeIf(namespace -> !rateLimiter.isLimited(namespace));
+        }
+        Set<String> laned = new HashSet<>(namespaces);
+        laned.addAll(Arrays.asList(rateLimiter.limitedNamespaces()));
+        String[] excludedNamespaces = laned.toArray(new String[0]);
+        Collections.shuffle(namespaces);
+        namespaces.add(null);
+        return fairClaims.drain(namespaces, MAX_BATCHES_PER_POLL * BATCH_SIZE,
+                (namespace, limit) -> dispatchThrottled(partition, namespace, excludedNamespaces, now, limit));
+    }
+
+    /**
+     * Claims a batch of a namespace, shrunk to the rate limit tokens it has left.
+     */
+    private int dispatchThrottled(Integer partition, String namespace, String[] excludedNamespaces,
+                                  LocalDateTime now, int limit) {
+        int granted = rateLimiter.acquire(namespace, limit);
+        if (granted == 0) {
+            return 0;
+        }
+        int dispatched = dispatchDueBatch(partition, namespace, excludedNamespaces, now, granted);
+        rateLimiter.release(namespace, granted - dispatched);
+        return dispatched;
+    }
 
-            if (events.isEmpty()) {
-                return Collections.emptyList();
+    /**
+     * Claims and enqueues one batch of due events of the partition.
+     *
+     * @param namespace the namespace to claim from, or null for any
+     * @param excludedNamespaces the namespaces a claim from any namespace leaves alone
+     * @return the number of events dispatched
+     */
+    private int dispatchDueBatch(Integer partition, String namespace, String[] excludedNamespaces,
+                                 LocalDateTime now, int limit) {
+        if (dispatchMode == DispatchMode.FUSED) {
+            long epoch = partitionManager.getEpoch(partition);
+            int enqueued = enqueue(SchedulerMetrics.SOURCE_POLL, () -> namespace == null
+                    ? eventRepository.enqueueDueEvents(partition, epoch, now, limit, excludedNamespaces)
+                    : eventRepository.enqueueDueEventsInNamespace(partition, epoch, namespace, now, limit));
+            if (enqueued > 0) {
+                logger.info("Enqueued batch of {} events for partition {}", enqueued, partition);
+                outboxPublisher.wakeUp(partition);
             }
+            return enqueued;
+        }
 
-            events.forEach(event -> {
-                event.setStatus(IN_PROGRESS);
-                event.setLockedAt(clockService.getCurrentDateTime());
-            });
-            return eventRepository.saveAll(events);
+        List<Event> events = fetchPendingEventsForPartition(partition, namespace, excludedNamespaces, now, limit);
+        if (!events.isEmpty()) {
+            handOff(partition, events);
+        }
+        return events.size();
+    }
+
+    private void dispatchById(int partition, List<String> ids) {
+        LocalDateTime now = clockService.getCurrentDateTime();
+        String[] limited = rateLimiter.limitedNamespaces();
+        long epoch = partitionManager.getEpoch(partition);
+        int dispatched;
+        if (dispatchMode == DispatchMode.FUSED) {
+            dispatched = enqueue(SchedulerMetrics.SOURCE_WHEEL,
+                    () -> eventRepository.enqueueDueEventsById(partition, epoch, ids, now, limited));
+            if (dispatched > 0) {
+                logger.info("Enqueued batch of {} events for partition {}", dispatched, partition);
+                outboxPublisher.wakeUp(partition);
+            }
+        } else {
+            List<Event> events = claimEvents(SchedulerMetrics.SOURCE_WHEEL, () ->
+                    eventRepository.claimDueEventsById(partition, epoch, ids, now, now,
+                    claimLeases.leaseUntil(now), limited));
+            if (!events.isEmpty()) {
+                handOff(partition, events);
+            }
+            dispatched = events.size();
+        }
+        if (dispatched < ids.size() && rateLimiter.isEnabled()) {
+            // Events of rate limited namespaces are left to the throttled drain
+            pollNow(partition);
+        }
+    }
+
+    /**
+     * Runs a fused enqueue statement and materializes the next occurrences of the recurring events it enqueued.
+     *
+     * @return the number of events enqueued
+     */
+    private int enqueue(String source, Supplier<List<Event>> enqueue) {
+        List<Event> events = transactionTemplate.execute(status -> {
+            List<Event> enqueued = metrics.timeClaim(source, enqueue);
+            recurrenceMaterializer.materializeNext(enqueued);
+            return enqueued;
         });
+        metrics.recordDispatched(events);
+        return events.size();
     }
 
-    private void processBatch(List<Event> events) {
-        transactionTemplate.execute(status -> {
-            try {
+    /**
+     * Passes claimed (IN_PROGRESS) events on according to the dispatch mode. The lease of their claim is renewed
+     * until they are.
+     */
+    private void handOff(int partition, List<Event> events) {
+        LocalDateTime lockedAt = events.getFirst().getLockedAt();
+        claimLeases.hold(partition, lockedAt);
+        try {
+            if (dispatchMode == DispatchMode.DIRECT) {
+                directDispatcher.dispatch(partition, events);
+                return;
+            }
+            processBatch(partition, events);
+            outboxPublisher.wakeUp(partition);
+        } finally {
+            claimLeases.release(partition, lockedAt);
+        }
+    }
+
+    private List<Event> fetchPendingEventsForPartition(Integer partition, String namespace,
+                                                       String[] excludedNamespaces, LocalDateTime now, int limit) {
+        LocalDateTime lockedAt = clockService.getCurrentDateTime();
+        LocalDateTime leaseUntil = claimLeases.leaseUntil(lockedAt);
+        long epoch = partitionManager.getEpoch(partition);
+        return claimEvents(SchedulerMetrics.SOURCE_POLL, () -> namespace == null
+                ? eventRepository.claimDueEvents(partition, epoch, now, lockedAt, leaseUntil, limit,
+                excludedNamespaces)
+                : eventRepository.claimDueEventsInNamespace(partition, epoch, namespace, now, lockedAt, leaseUntil,
+                limit));
+    }
+
+    /**
+     * Runs a claim statement; the returned events are already IN_PROGRESS in the database.
+     */
+    private List<Event> claimEvents(String source, Supplier<List<Event>> claim) {
+        return transactionTemplate.execute(status -> metrics.timeClaim(source, claim));
+    }
+
+    /**
+     * Writes a claimed batch to the outbox and marks it PROCESSED. If the batch fails, its events are retried one
+     * at a time, so a poison event does not take the healthy ones down with it; an event failing on its own is
+     * handed to the {@link RetryPolicy}.
+     * <p>
+     * The batch only becomes PROCESSED while its claim still holds; if any of its events were claimed again in
+     * the meantime, e.g. by the next master after a handoff, the outbox rows are rolled back with it.
+     */
+    private void processBatch(int partition, List<Event> events) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
                 List<OutboxEvent> outboxEvents = events.stream()
-                        .map(event -> OutboxEvent.builder()
-                                .id(UUID.randomUUID().toString())
-                                .aggregateId(event.getId())
-                                .aggregateType("EVENT")
-                                .payload(event.getPayload())
-                                .partitionId(event.getPartitionId())
-                                .createdAt(clockService.getCurrentDateTime())
-                                .build())
+                        .map(event -> toOutboxEvent(event, clockService.getCurrentDateTime()))
                         .toList();
 
-                outboxRepository.saveAll(outboxEvents);
+                outboxRepository.insertAll(outboxEvents);
 
+                List<String> ids = events.stream().map(Event::getId).toList();
+                int completed = eventRepository.completeClaim(partition, ids, events.getFirst().getLockedAt(),
+                        IN_PROGRESS, PROCESSED);
+                if (completed < events.size()) {
+                    throw new IllegalStateException("Claim of " + (events.size() - completed) + " of "
+                            + events.size() + " events was lost");
+                }
                 events.forEach(event -> event.setStatus(PROCESSED));
 
-                eventRepository.saveAll(events);
-
-                logger.info("Processed batch of {} events for partition {}", events.size(),
-                        events.stream().findFirst().map(Event::getPartitionId).orElse(-1));
+                recurrenceMaterializer.materializeNext(events);
 
-            } catch (Exception e) {
-                logger.error("Error processing batch", e);
-                status.setRollbackOnly();
+                logger.info("Processed batch of {} events for partition {}", events.size(), partition);
+            });
+            metrics.recordDispatched(events);
+        } catch (Exception e) {
+            events.forEach(event -> event.setStatus(IN_PROGRESS));
+            if (events.size() == 1) {
+                retryPolicy.recordFailure(partition, events.getFirst(), e);
+                return;
             }
-            return null;
-        });
+            logger.error("Error processing batch of {} events for partition {}, retrying them one by one",
+                    events.size(), partition, e);
+            events.forEach(event -> processBatch(partition, List.of(event)));
+        }
+    }
+
+    static OutboxEvent toOutboxEvent(Event event, LocalDateTime createdAt) {
+        return OutboxEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .aggregateId(event.getId())
+                .aggregateType("EVENT")
+                .payload(event.getPayload())
+                .payloadRef(event.getPayloadRef())
+                .partitionId(event.getPartitionId())
+                .createdAt(createdAt)
+                .build();
     }
 
 }
@@ -0,0 +1,104 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Caps how many events per second each rate limited namespace dispatches across the cluster. Every partition
+ * has exactly one owner, so a worker's share of a namespace's quota is the fraction of partitions it owns, and
+ * the shares add up to the quota without any further coordination. Each share is a token bucket holding at most
+ * one second worth of events.
+ * <p>
+ * Claims are sized by the tokens granted, so a namespace running out of tokens claims smaller batches rather
+ * than claiming events it cannot dispatch yet.
+ */
+@Component
+@Profile("!init & !controller")
+public class NamespaceRateLimiter {
+
+    private final PartitionManager partitionManager;
+    private final int numPartitions;
+    private final Map<String, Integer> quotas;
+    private final Map<String, TokenBucket> buckets = new HashMap<>();
+    private final String[] limitedNamespaces;
+
+    /**
+     * @param quotas events per second for each rate limited namespace, across the cluster
+     */
+    public NamespaceRateLimiter(PartitionManager partitionManager,
+                                @Value("#{${scheduler.ratelimit.quotas:{:}}}") Map<String, Integer> quotas,
+                                @Value("${scheduler.partitions:6}") int numPartitions) {
+        this.partitionManager = partitionManager;
+        this.numPartitions = numPartitions;
+        this.quotas = Map.copyOf(quotas);
+        this.quotas.keySet().forEach(namespace -> buckets.put(namespace, new TokenBucket()));
+        this.limitedNamespaces = this.quotas.keySet().toArray(new String[0]);
+    }
+
+    public boolean isEnabled() {
+        return limitedNamespaces.length > 0;
+    }
+
+    public boolean isLimited(String namespace) {
+        return namespace != null && quotas.containsKey(namespace);
+    }
+
+    /**
+     * @return the rate limited namespaces, which plain claims must leave alone
+     */
+    public String[] limitedNamespaces() {
+        return limitedNamespaces;
+    }
+
+    /**
+     * @return how many of {@code wanted} events of the namespace may be claimed now, at most {@code wanted}
+     */
+    public int acquire(String namespace, int wanted) {
+        TokenBucket bucket = namespace != null ? buckets.get(namespace) : null;
+        if (bucket == null) {
+            return wanted;
+        }
+        return bucket.acquire(wanted, share(namespace), System.nanoTime());
+    }
+
+    /**
+     * Gives back tokens acquired for events that could not be claimed after all.
+     */
+    public void release(String namespace, int unused) {
+        TokenBucket bucket = namespace != null ? buckets.get(namespace) : null;
+        if (bucket != null && unused > 0) {
+            bucket.release(unused);
+        }
+    }
+
+    private double share(String namespace) {
+        int owned = partitionManager.getActivePartitions().size();
+        return (double) quotas.get(namespace) * owned / numPartitions;
+    }
+
+    static final class TokenBucket {
+        private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+        private double tokens;
+        private long refilledAt = -1;
+
+        synchronized int acquire(int wanted, double ratePerSecond, long nowNanos) {
+            if (refilledAt >= 0) {
+                double refill = ratePerSecond * (nowNanos - refilledAt) / NANOS_PER_SECOND;
+                tokens = Math.min(Math.max(ratePerSecond, 1), tokens + refill);
+            }
+            refilledAt = nowNanos;
+            int granted = (int) Math.min(wanted, Math.floor(tokens));
+            tokens -= granted;
+            return granted;
+        }
+
+        synchronized void release(int unused) {
+            tokens += unused;
+        }
+    }
+}
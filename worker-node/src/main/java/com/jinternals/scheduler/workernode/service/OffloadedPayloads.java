@@ -0,0 +1,70 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.Payloads;
+import com.jinternals.scheduler.common.model.EventPayload;
+import com.jinternals.scheduler.common.repositories.EventPayloadRepository;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Payloads moved out of the events rows, see {@link Payloads}. They are loaded once per dispatched batch and
+ * published as the compressed bytes they are stored as.
+ */
+@Component
+@Profile("!init & !controller")
+public class OffloadedPayloads {
+
+    private static final Logger logger = LoggerFactory.getLogger(OffloadedPayloads.class);
+
+    private final EventPayloadRepository eventPayloadRepository;
+
+    public OffloadedPayloads(EventPayloadRepository eventPayloadRepository) {
+        this.eventPayloadRepository = eventPayloadRepository;
+    }
+
+    /**
+     * @param payloadRefs payload references of a batch, null for the payloads stored inline
+     * @return the referenced payloads by id; nothing is queried if the whole batch is inline
+     */
+    public Map<String, EventPayload> findAll(Collection<String> payloadRefs) {
+        Set<String> ids = payloadRefs.stream().filter(Objects::nonNull).collect(Collectors.toSet());
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return eventPayloadRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(EventPayload::getId, Function.identity()));
+    }
+
+    /**
+     * Tells whether an event's offloaded payload is gone, which only happens once the event was removed after
+     * it was claimed. Such an event must not be published: a record without a value is a tombstone.
+     *
+     * @param payloads the offloaded payloads of the event's batch, see {@link #findAll}
+     */
+    public static boolean isRemoved(String key, String payloadRef, Map<String, EventPayload> payloads) {
+        if (payloadRef == null || payloads.containsKey(payloadRef)) {
+            return false;
+        }
+        logger.warn("Payload of event {} no longer exists, the event was removed; skipping it", key);
+        return true;
+    }
+
+    public static ProducerRecord<String, Object> record(String topic, int kafkaPartition, String key,
+                                                        EventPayload payload) {
+        ProducerRecord<String, Object> record = new ProducerRecord<>(topic, kafkaPartition, key, payload.getData());
+        record.headers().add(Payloads.CONTENT_ENCODING_HEADER,
+                payload.getEncoding().getBytes(StandardCharsets.UTF_8));
+        return record;
+    }
+}
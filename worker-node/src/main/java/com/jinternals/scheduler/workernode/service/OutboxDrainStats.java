@@ -0,0 +1,82 @@
+package com.jinternals.scheduler.workernode.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the outbox drain: records acknowledged by Kafka, records whose send failed and will be retried, and
+ * the last known backlog of each owned partition. Once bound, the backlog is a gauge per owned partition, removed
+ * again when the partition moves to another worker.
+ */
+public class OutboxDrainStats implements MeterBinder {
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Map<Integer, Long> backlog = new ConcurrentHashMap<>();
+    private final Map<Integer, Gauge> backlogGauges = new ConcurrentHashMap<>();
+    private volatile MeterRegistry registry;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("scheduler.outbox.published", published, LongAdder::sum)
+                .description("Outbox records acknowledged by Kafka")
+                .register(registry);
+        FunctionCounter.builder("scheduler.outbox.failed", failed, LongAdder::sum)
+                .description("Outbox records whose send failed and will be retried")
+                .register(registry);
+        this.registry = registry;
+    }
+
+    void recordPublished(int count) {
+        published.add(count);
+    }
+
+    void recordFailed(int count) {
+        failed.add(count);
+    }
+
+    void recordBacklog(int partition, long count) {
+        backlog.put(partition, count);
+        MeterRegistry meters = registry;
+        if (meters != null) {
+            backlogGauges.computeIfAbsent(partition, p -> Gauge.builder("scheduler.outbox.backlog", backlog,
+                            rows -> rows.getOrDefault(p, 0L))
+                    .description("Outbox records left in the partition after its last drain")
+                    .tag("partition", String.valueOf(p))
+                    .register(meters));
+        }
+    }
+
+    void retain(Set<Integer> partitions) {
+        backlog.keySet().retainAll(partitions);
+        backlogGauges.entrySet().removeIf(entry -> {
+            if (partitions.contains(entry.getKey())) {
+                return false;
+            }
+            registry.remove(entry.getValue());
+            return true;
+        });
+    }
+
+    public long publishedTotal() {
+        return published.sum();
+    }
+
+    public long failedTotal() {
+        return failed.sum();
+    }
+
+    /**
+     * @return the number of outbox rows left per partition after its last drain
+     */
+    public Map<Integer, Long> backlog() {
+        return Map.copyOf(backlog);
+    }
+}
@@ -1,126 +1,259 @@
 package com.jinternals.scheduler.workernode.service;
 
+import com.jinternals.scheduler.common.model.EventPayload;
 import com.jinternals.scheduler.common.model.OutboxEvent;
 import com.jinternals.scheduler.common.repositories.OutboxRepository;
+import com.jinternals.scheduler.workernode.config.KafkaPartitionMapping;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
 
+import static com.jinternals.scheduler.workernode.config.KafkaConfig.SCHEDULER_EVENTS_TOPIC;
+
+/**
+ * Publishes each owned partition's outbox rows to Kafka in order, deleting them once acknowledged. Delivery is
+ * at-least-once, and neither the sends nor the deletes are fenced on the partition's epoch: a master still
+ * draining after {@code scheduler.handoff.timeout-ms} can repeat records the next master sends too, and deleting
+ * a row both of them sent loses nothing. Fencing the delete would only leave more rows to be sent twice.
+ */
 @Service
 @Profile("!init & !controller")
-public class OutboxPublisher {
+public class OutboxPublisher implements PartitionManager.Listener {
 
     private static final Logger logger = LoggerFactory.getLogger(OutboxPublisher.class);
-    private static final int POLL_INTERVAL_MS = 1000;
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_BATCHES_PER_DRAIN = 10;
 
     private final PartitionManager partitionManager;
     private final OutboxRepository outboxRepository;
     private final KafkaTemplate<String, Object> kafkaTemplate;
-    private final Executor eventTaskExecutor;
+    private final KafkaPartitionMapping partitionMapping;
+    private final OffloadedPayloads offloadedPayloads;
     private final TransactionTemplate transactionTemplate;
+    private final PartitionPollSchedule pollSchedule;
+    // Partitions are only drained when their PartitionPollSchedule deadline has passed or they were woken up
+    private final PartitionDrainLoops drainLoops;
+    private final OutboxDrainStats stats = new OutboxDrainStats();
+
+    private long lastPublished;
+    private long lastFailed;
+    private long lastStatsAt = System.currentTimeMillis();
 
     public OutboxPublisher(PartitionManager partitionManager,
             OutboxRepository outboxRepository,
             KafkaTemplate<String, Object> kafkaTemplate,
-            @Qualifier("eventTaskExecutor") Executor eventTaskExecutor,
-            PlatformTransactionManager transactionManager) {
+            KafkaPartitionMapping partitionMapping,
+            OffloadedPayloads offloadedPayloads,
+            PlatformTransactionManager transactionManager,
+            SchedulerMetrics metrics,
+            DrainLimiter drainLimiter,
+            @Value("${scheduler.outbox.min-interval-ms:100}") long minPollIntervalMs,
+            @Value("${scheduler.outbox.max-interval-ms:30000}") long maxPollIntervalMs) {
         this.partitionManager = partitionManager;
         this.outboxRepository = outboxRepository;
         this.kafkaTemplate = kafkaTemplate;
-        this.eventTaskExecutor = eventTaskExecutor;
+        this.partitionMapping = partitionMapping;
+        this.offloadedPayloads = offloadedPayloads;
         this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pollSchedule = new PartitionPollSchedule(minPollIntervalMs, maxPollIntervalMs);
+        this.drainLoops = new PartitionDrainLoops("outbox-drain", pollSchedule, drainLimiter, this::drainIfDue,
+                System::currentTimeMillis);
+        metrics.bind(stats);
+    }
+
+    @PostConstruct
+    public void start() {
+        partitionManager.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        drainLoops.stopAll();
     }
 
-    @Scheduled(fixedDelay = POLL_INTERVAL_MS)
-    public void execute() {
+    /**
+     * Called when new outbox rows were written for the partition, so it is drained right away instead of at the
+     * end of its backoff.
+     */
+    public void wakeUp(int partition) {
+        drainLoops.wakeUp(partition);
+    }
+
+    @Override
+    public void onPartitionAdded(int partition) {
+        drainLoops.start(partition);
+    }
+
+    @Override
+    public void onPartitionRemoved(int partition) {
+        drainLoops.stop(partition);
         Set<Integer> partitions = partitionManager.getActivePartitions();
-        if (partitions.isEmpty()) {
-            return;
+        pollSchedule.retain(partitions);
+        stats.retain(partitions);
+    }
+
+    @Scheduled(fixedDelayString = "${scheduler.outbox.stats-interval-ms:60000}")
+    public void logStats() {
+        long published = stats.publishedTotal();
+        long failed = stats.failedTotal();
+        long now = System.currentTimeMillis();
+        if (published != lastPublished || failed != lastFailed) {
+            double seconds = Math.max(1, now - lastStatsAt) / 1000.0;
+            logger.info("Outbox drain: {} events/s published, {} failed sends, backlog {}",
+                    String.format("%.1f", (published - lastPublished) / seconds), failed - lastFailed,
+                    stats.backlog());
         }
+        lastPublished = published;
+        lastFailed = failed;
+        lastStatsAt = now;
+    }
 
-        List<Integer> activePartitions = new LinkedList<>(partitions);
-        Collections.shuffle(activePartitions);
+    public OutboxDrainStats getStats() {
+        return stats;
+    }
 
-        for (Integer partition : activePartitions) {
-            publishPartitionBatch(partition);
+    /**
+     * Drains the partition's outbox if its {@link PartitionPollSchedule} deadline has passed; run by its drain
+     * loop.
+     */
+    void drainIfDue(int partition) {
+        if (!pollSchedule.tryStart(partition, System.currentTimeMillis())) {
+            return;
+        }
+        // A partition being handed off is left to the next master once the sends in flight completed
+        if (!partitionManager.startWork(partition)) {
+            pollSchedule.backOff(partition, System.currentTimeMillis());
+            return;
+        }
+        DrainOutcome outcome = DrainOutcome.FAILED;
+        try {
+            outcome = drain(partition);
+            if (outcome != DrainOutcome.DRAINED) {
+                stats.recordBacklog(partition, outboxRepository.countByPartitionId(partition));
+            }
+        } catch (Exception e) {
+            logger.error("Error draining outbox of partition {}", partition, e);
+        } finally {
+            partitionManager.finishWork(partition);
+            if (outcome == DrainOutcome.MORE) {
+                pollSchedule.pollAgain(partition);
+            } else {
+                // Drained or failing: back off instead of hammering the database or the broker
+                pollSchedule.backOff(partition, System.currentTimeMillis());
+            }
         }
     }
 
-    private void publishPartitionBatch(Integer partition) {
-        eventTaskExecutor.execute(() -> {
-            int batchCount = 0;
-            // Limit batches to avoid starving others, similar to EventProcessor
-            while (batchCount < 10) {
-                boolean processed = processBatch(partition);
-                if (!processed) {
-                    break;
-                }
-                batchCount++;
+    /**
+     * Publishes up to {@link #MAX_BATCHES_PER_DRAIN} batches of the partition, oldest first. Batches are
+     * pipelined: while one batch is in flight the next one is fetched and the previous one is deleted. A batch is
+     * only sent once the previous one was fully acknowledged, so the partition's records reach Kafka in order.
+     * <p>
+     * Only acknowledged records are deleted, with one statement per batch. After a failed send the rest of the
+     * batch is kept even if acknowledged, so a retry cannot overtake the records that followed it.
+     */
+    private DrainOutcome drain(int partition) {
+        List<OutboxEvent> batch = outboxRepository.findOldest(partition, Limit.of(BATCH_SIZE));
+        List<OutboxEvent> acknowledged = List.of();
+        for (int round = 1; ; round++) {
+            Map<String, EventPayload> payloads = offloadedPayloads.findAll(
+                    batch.stream().map(OutboxEvent::getPayloadRef).toList());
+            List<CompletableFuture<Boolean>> sends = batch.stream().map(event -> send(event, payloads)).toList();
+            delete(acknowledged);
+            if (batch.isEmpty()) {
+                stats.recordBacklog(partition, 0);
+                return DrainOutcome.DRAINED;
             }
-        });
-    }
 
-    private boolean processBatch(Integer partition) {
-        // Fetch batch
-        List<OutboxEvent> events = outboxRepository.findTop500ByPartitionIdOrderByCreatedAt(partition);
-        if (events.isEmpty()) {
-            return false;
-        }
+            boolean more = batch.size() == BATCH_SIZE;
+            List<OutboxEvent> next = more && round < MAX_BATCHES_PER_DRAIN
+                    ? outboxRepository.findOldestAfter(partition, batch.getLast().getCreatedAt(),
+                    batch.getLast().getId(), Limit.of(BATCH_SIZE))
+                    : List.of();
 
-        // Send to Kafka Async
-        List<CompletableFuture<Void>> futures = events.stream()
-                .map(this::sendToKafka)
-                .toList();
+            int sent = acknowledgedPrefix(sends);
+            acknowledged = batch.subList(0, sent);
+            stats.recordPublished(sent);
+            if (sent < batch.size()) {
+                stats.recordFailed(batch.size() - sent);
+                delete(acknowledged);
+                logger.warn("Published {} of {} outbox events for partition {}; retrying the rest",
+                        sent, batch.size(), partition);
+                return DrainOutcome.FAILED;
+            }
+            logger.debug("Published {} outbox events for partition {}", sent, partition);
+            if (more && round == MAX_BATCHES_PER_DRAIN) {
+                // Limit batches to avoid starving others, similar to EventProcessor
+                delete(acknowledged);
+                return DrainOutcome.MORE;
+            }
+            batch = next;
+        }
+    }
 
+    /**
+     * @param payloads the offloaded payloads of the batch, passed on without decompressing them. A row whose
+     *                 payload is gone belongs to a removed event and is dropped unsent.
+     */
+    private CompletableFuture<Boolean> send(OutboxEvent event, Map<String, EventPayload> payloads) {
+        if (OffloadedPayloads.isRemoved(event.getAggregateId(), event.getPayloadRef(), payloads)) {
+            // Nothing left to publish; counting it as acknowledged deletes the row
+            return CompletableFuture.completedFuture(true);
+        }
         try {
-            // Wait for all to complete
-            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-
-            // Delete successful events
-            // In a real system, you might want to handle partial failures more gracefully,
-            // but for now, we assume if sendToKafka doesn't throw, it succeeded.
-            // (The sendToKafka below handles exceptions by logging and not throwing to
-            // allow the join to complete)
-            // However, we should only delete what succeeded.
-            // For simplicity in this phase: Delete all if simple join succeeds.
-            // If join throws (one failed), the transaction rollback (if wrapped) or we
-            // retry all.
-            // But we are not in a transaction here (intentionally, to keep DB locks short).
-            // So we can assume manual cleanup.
-
-            outboxRepository.deleteAllById(events.stream().map(OutboxEvent::getId).collect(Collectors.toList()));
-
-            logger.info("Published and deleted {} outbox events for partition {}", events.size(), partition);
-            return true;
-
+            int kafkaPartition = partitionMapping.kafkaPartition(event.getPartitionId(), event.getAggregateId());
+            CompletableFuture<SendResult<String, Object>> sent = event.getPayloadRef() == null
+                    ? kafkaTemplate.send(SCHEDULER_EVENTS_TOPIC, kafkaPartition, event.getAggregateId(),
+                    event.getPayload())
+                    : kafkaTemplate.send(OffloadedPayloads.record(SCHEDULER_EVENTS_TOPIC, kafkaPartition,
+                    event.getAggregateId(), payloads.get(event.getPayloadRef())));
+            return sent.handle((result, ex) -> {
+                if (ex != null) {
+                    logger.error("Failed to publish event {}", event.getId(), ex);
+                }
+                return ex == null;
+            });
         } catch (Exception e) {
-            logger.error("Error publishing batch for partition " + partition, e);
-            return false;
+            logger.error("Failed to publish event {}", event.getId(), e);
+            return CompletableFuture.completedFuture(false);
         }
     }
 
-    private CompletableFuture<Void> sendToKafka(OutboxEvent event) {
-        return kafkaTemplate.send("scheduler-events", event.getAggregateId(), event.getPayload())
-                .thenAccept(result -> {
-                    // Success callback if needed
-                })
-                .exceptionally(ex -> {
-                    logger.error("Failed to publish event {}", event.getId(), ex);
-                    throw new RuntimeException(ex);
-                });
+    /**
+     * Waits for all sends and returns how many of them, counted from the first, were acknowledged.
+     */
+    private static int acknowledgedPrefix(List<CompletableFuture<Boolean>> sends) {
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).join();
+        int acknowledged = 0;
+        while (acknowledged < sends.size() && sends.get(acknowledged).join()) {
+            acknowledged++;
+        }
+        return acknowledged;
+    }
+
+    private void delete(List<OutboxEvent> events) {
+        if (!events.isEmpty()) {
+            List<String> ids = events.stream().map(OutboxEvent::getId).toList();
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.deleteByIds(ids));
+        }
+    }
+
+    private enum DrainOutcome {
+        DRAINED, MORE, FAILED
     }
 }
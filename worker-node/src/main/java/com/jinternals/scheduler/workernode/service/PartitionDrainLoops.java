@@ -0,0 +1,141 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * One long-lived drain loop per owned partition, each on a virtual thread of its own. A loop sleeps until the
+ * partition's {@link PartitionPollSchedule} deadline or until it is woken up, then runs one drain while holding a
+ * permit of the {@link DrainLimiter}. A partition is therefore never drained twice at a time, however long a
+ * drain takes, and a woken loop does not wait for any tick.
+ */
+public class PartitionDrainLoops {
+
+    private static final Logger logger = LoggerFactory.getLogger(PartitionDrainLoops.class);
+
+    private final String name;
+    private final PartitionPollSchedule schedule;
+    private final DrainLimiter limiter;
+    private final IntConsumer drain;
+    private final LongSupplier clock;
+    private final Map<Integer, Loop> loops = new ConcurrentHashMap<>();
+
+    /**
+     * @param drain drains a partition if it is due, and reports the outcome to the schedule
+     * @param clock the time in epoch millis the schedule's deadlines are kept in
+     */
+    public PartitionDrainLoops(String name, PartitionPollSchedule schedule, DrainLimiter limiter,
+                               IntConsumer drain, LongSupplier clock) {
+        this.name = name;
+        this.schedule = schedule;
+        this.limiter = limiter;
+        this.drain = drain;
+        this.clock = clock;
+    }
+
+    public void start(int partition) {
+        loops.computeIfAbsent(partition, p -> {
+            Loop loop = new Loop(p);
+            Thread.ofVirtual().name(name + "-" + p).start(loop::run);
+            return loop;
+        });
+    }
+
+    /**
+     * Lets the partition's loop exit once its running drain, if any, completed.
+     */
+    public void stop(int partition) {
+        Loop loop = loops.remove(partition);
+        if (loop != null) {
+            loop.stop();
+        }
+    }
+
+    public void stopAll() {
+        loops.keySet().forEach(this::stop);
+    }
+
+    /**
+     * Makes the partition due right away and wakes its loop up.
+     */
+    public void wakeUp(int partition) {
+        schedule.wakeUp(partition);
+        Loop loop = loops.get(partition);
+        if (loop != null) {
+            loop.signal();
+        }
+    }
+
+    private final class Loop {
+
+        private final int partition;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition wakeup = lock.newCondition();
+        private boolean signalled;
+        private volatile boolean running = true;
+
+        private Loop(int partition) {
+            this.partition = partition;
+        }
+
+        private void run() {
+            try {
+                while (running) {
+                    long waitMs = schedule.nextPollAt(partition) - clock.getAsLong();
+                    if (waitMs > 0) {
+                        await(waitMs);
+                        continue;
+                    }
+                    limiter.acquire();
+                    try {
+                        drain.accept(partition);
+                    } catch (Throwable e) {
+                        // Whatever went wrong, the partition must keep being drained
+                        logger.error("{}: Drain of partition {} failed", name, partition, e);
+                        schedule.backOff(partition, clock.getAsLong());
+                    } finally {
+                        limiter.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            logger.debug("{}: Stopped draining partition {}", name, partition);
+        }
+
+        private void await(long millis) throws InterruptedException {
+            lock.lock();
+            try {
+                if (!signalled && running) {
+                    wakeup.await(millis, TimeUnit.MILLISECONDS);
+                }
+                signalled = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void signal() {
+            lock.lock();
+            try {
+                signalled = true;
+                wakeup.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void stop() {
+            running = false;
+            signal();
+        }
+    }
+}
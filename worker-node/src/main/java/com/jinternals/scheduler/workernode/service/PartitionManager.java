@@ -1,26 +1,151 @@
 package com.jinternals.scheduler.workernode.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 @Service
 @Slf4j
 public class PartitionManager {
     private final Set<Integer> activePartitions = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> standbyPartitions = ConcurrentHashMap.newKeySet();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Integer, Long> epochs = new ConcurrentHashMap<>();
+    // Claims, dispatches and outbox drains running per partition; guarded by itself
+    private final Map<Integer, Integer> inFlight = new HashMap<>();
+
+    @Value("${scheduler.handoff.timeout-ms:10000}")
+    private long handoffTimeoutMs = 10000;
 
-    public void addPartition(int partitionId) {
+    /**
+     * @param epoch the ownership epoch acquired for the partition, see {@code PartitionEpochRepository#acquire}
+     */
+    public void addPartition(int partitionId, long epoch) {
+        standbyPartitions.remove(partitionId);
+        epochs.put(partitionId, epoch);
         activePartitions.add(partitionId);
-        log.info("PartitionManager: Added partition {}" , partitionId);
+        log.info("PartitionManager: Added partition {} at epoch {}" , partitionId, epoch);
+        notifyListeners(listener -> listener.onPartitionAdded(partitionId));
     }
 
+    /**
+     * Stops new work on the partition, then waits up to {@code scheduler.handoff.timeout-ms} for the work in
+     * flight, so the next master does not start while this one is still dispatching. Claims and their completion
+     * still running after that are fenced off by the next master's epoch. Outbox sends are not: the outbox is
+     * at-least-once, so a late send or delete only repeats a record the next master may send as well.
+     */
     public void removePartition(int partitionId) {
         activePartitions.remove(partitionId);
+        notifyListeners(listener -> listener.onPartitionRemoved(partitionId));
+        synchronized (inFlight) {
+            long deadline = System.nanoTime() + handoffTimeoutMs * 1_000_000;
+            try {
+                for (long left = handoffTimeoutMs; inFlight.containsKey(partitionId) && left > 0;
+                     left = (deadline - System.nanoTime()) / 1_000_000) {
+                    inFlight.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (inFlight.containsKey(partitionId)) {
+                log.warn("PartitionManager: {} tasks of partition {} still running after {} ms",
+                        inFlight.get(partitionId), partitionId, handoffTimeoutMs);
+            }
+        }
+        epochs.remove(partitionId);
         log.info("PartitionManager: Removed partition {}" , partitionId);
     }
 
+    /**
+     * Registers a task about to work on the partition; every successful call must be paired with
+     * {@link #finishWork}.
+     *
+     * @return false if the partition is no longer owned, or is being handed off, and the task must not run
+     */
+    public boolean startWork(int partitionId) {
+        synchronized (inFlight) {
+            if (!activePartitions.contains(partitionId)) {
+                return false;
+            }
+            inFlight.merge(partitionId, 1, Integer::sum);
+            return true;
+        }
+    }
+
+    public void finishWork(int partitionId) {
+        synchronized (inFlight) {
+            inFlight.computeIfPresent(partitionId, (partition, running) -> running == 1 ? null : running - 1);
+            inFlight.notifyAll();
+        }
+    }
+
+    /**
+     * @return the ownership epoch the partition's claims are made with, or 0, which is never current, if the
+     * partition is not owned
+     */
+    public long getEpoch(int partitionId) {
+        return epochs.getOrDefault(partitionId, 0L);
+    }
+
+    /**
+     * Marks a partition this worker is a SLAVE replica of, so its upcoming work can be prefetched for failover.
+     */
+    public void addStandbyPartition(int partitionId) {
+        standbyPartitions.add(partitionId);
+        log.info("PartitionManager: Standing by for partition {}" , partitionId);
+        notifyListeners(listener -> listener.onStandbyAdded(partitionId));
+    }
+
+    public void removeStandbyPartition(int partitionId) {
+        standbyPartitions.remove(partitionId);
+    }
+
     public Set<Integer> getActivePartitions() {
         return activePartitions;
     }
+
+    public Set<Integer> getStandbyPartitions() {
+        return standbyPartitions;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    private void notifyListeners(Consumer<Listener> notification) {
+        for (Listener listener : listeners) {
+            try {
+                notification.accept(listener);
+            } catch (Exception e) {
+                // A failing listener must not fail the Helix state transition
+                log.error("PartitionManager: Listener {} failed", listener, e);
+            }
+        }
+    }
+
+    /**
+     * Called on the Helix state transition thread, after the partition sets were updated.
+     */
+    public interface Listener {
+
+        default void onPartitionAdded(int partitionId) {
+        }
+
+        default void onStandbyAdded(int partitionId) {
+        }
+
+        /**
+         * Called before the handoff waits for the partition's work in flight.
+         */
+        default void onPartitionRemoved(int partitionId) {
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.PartitionNotifications;
+import com.jinternals.scheduler.common.VirtualBuckets;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Moves PENDING events into the partition their bucket maps to under the current {@code scheduler.partitions},
+ * after the partition count was raised. Each worker only drains the partitions it is master of, a batch at a
+ * time with SKIP LOCKED, so dispatching carries on meanwhile: an event fires from its old partition until it has
+ * been moved. The new owner is notified of moved events so they are loaded into its timing wheel.
+ * <p>
+ * Events scheduled before buckets existed get their bucket here too. Partitions with nothing left to move are
+ * checked less and less often.
+ */
+@Service
+@Slf4j
+@Profile("!init & !controller")
+@ConditionalOnProperty(name = "scheduler.repartition.enabled", havingValue = "true")
+public class PartitionMigrator {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int MAX_BATCHES_PER_RUN = 10;
+
+    private final PartitionManager partitionManager;
+    private final EventRepository eventRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Executor eventTaskExecutor;
+    private final PartitionPollSchedule pollSchedule;
+
+    @Value("${scheduler.partitions:6}")
+    private int numPartitions;
+
+    public PartitionMigrator(PartitionManager partitionManager,
+                             EventRepository eventRepository,
+                             JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager,
+                             @Qualifier("eventTaskExecutor") Executor eventTaskExecutor,
+                             @Value("${scheduler.repartition.min-interval-ms:1000}") long minIntervalMs,
+                             @Value("${scheduler.repartition.max-interval-ms:600000}") long maxIntervalMs) {
+        this.partitionManager = partitionManager;
+        this.eventRepository = eventRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventTaskExecutor = eventTaskExecutor;
+        this.pollSchedule = new PartitionPollSchedule(minIntervalMs, maxIntervalMs);
+    }
+
+    @Scheduled(fixedDelayString = "${scheduler.repartition.tick-ms:1000}")
+    public void execute() {
+        Set<Integer> partitions = partitionManager.getActivePartitions();
+        pollSchedule.retain(partitions);
+        long now = System.currentTimeMillis();
+        for (Integer partition : partitions) {
+            if (pollSchedule.tryStart(partition, now)) {
+                eventTaskExecutor.execute(() -> migratePartition(partition));
+            }
+        }
+    }
+
+    private void migratePartition(int partition) {
+        int moved = 0;
+        try {
+            for (int batch = 0; batch < MAX_BATCHES_PER_RUN; batch++) {
+                int count = transactionTemplate.execute(status -> migrateBatch(partition));
+                moved += count;
+                if (count < BATCH_SIZE) {
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to migrate events out of partition {}", partition, e);
+        } finally {
+            if (moved > 0) {
+                log.info("Moved {} events out of partition {}", moved, partition);
+                pollSchedule.pollAgain(partition);
+            } else {
+                pollSchedule.backOff(partition, System.currentTimeMillis());
+            }
+        }
+    }
+
+    private int migrateBatch(int partition) {
+        List<Event> events = eventRepository.lockMisplacedEvents(partition, numPartitions, BATCH_SIZE);
+        Map<Integer, LocalDateTime> earliestByTarget = new HashMap<>();
+        for (Event event : events) {
+            if (event.getBucket() == null) {
+                event.setBucket(VirtualBuckets.bucket(event.getId()));
+            }
+            int target = VirtualBuckets.partition(event.getBucket(), numPartitions);
+            event.setPartitionId(target);
+            if (target != partition) {
+                earliestByTarget.merge(target, event.getScheduledTime(), (a, b) -> a.isBefore(b) ? a : b);
+            }
+        }
+        eventRepository.saveAll(events);
+        // Delivered on commit
+        earliestByTarget.forEach((target, scheduledTime) -> jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)",
+                String.class, PartitionNotifications.channel(target),
+                PartitionNotifications.payload(scheduledTime, null)));
+        return events.size();
+    }
+}
@@ -0,0 +1,145 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.PartitionNotifications;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Listens on the notification channel of every partition this node owns, so events scheduled after a partition's
+ * window was prefetched fire on time instead of waiting for the next poll. Notifications are only a hint: after
+ * (re)connecting every owned partition is resynced, and the adaptive poll still covers anything missed.
+ */
+@Service
+@Slf4j
+@Profile("!init & !controller")
+@ConditionalOnProperty(name = "scheduler.notify.enabled", havingValue = "true", matchIfMissing = true)
+public class PartitionNotificationListener {
+
+    private static final int RECEIVE_TIMEOUT_MS = 500;
+
+    private final DataSource dataSource;
+    private final PartitionManager partitionManager;
+    private final EventProcessor eventProcessor;
+    private final long reconnectDelayMs;
+
+    private final Set<Integer> listening = new HashSet<>();
+    private volatile boolean running;
+    private Thread listener;
+
+    public PartitionNotificationListener(DataSource dataSource,
+                                         PartitionManager partitionManager,
+                                         EventProcessor eventProcessor,
+                                         @Value("${scheduler.notify.reconnect-delay-ms:5000}") long reconnectDelayMs) {
+        this.dataSource = dataSource;
+        this.partitionManager = partitionManager;
+        this.eventProcessor = eventProcessor;
+        this.reconnectDelayMs = reconnectDelayMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        listener = Thread.ofPlatform()
+                .name("partition-listener")
+                .daemon(true)
+                .start(this::run);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listener != null) {
+            listener.join(RECEIVE_TIMEOUT_MS * 2L);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            // Dedicated connection, held for the lifetime of the listener; LISTEN does not survive a pool return
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(true);
+                listen(connection, connection.unwrap(PGConnection.class));
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("Partition listener disconnected, reconnecting in {} ms", reconnectDelayMs, e);
+                    sleep(reconnectDelayMs);
+                }
+            } finally {
+                listening.clear();
+            }
+        }
+    }
+
+    private void listen(Connection connection, PGConnection pgConnection) throws SQLException {
+        while (running) {
+            // Anything scheduled while we were not listening on a channel must be picked up by a poll
+            for (Integer partition : syncChannels(connection)) {
+                eventProcessor.resync(partition);
+            }
+
+            PGNotification[] notifications = pgConnection.getNotifications(RECEIVE_TIMEOUT_MS);
+            if (notifications != null) {
+                for (PGNotification notification : notifications) {
+                    dispatch(notification);
+                }
+            }
+        }
+    }
+
+    private Set<Integer> syncChannels(Connection connection) throws SQLException {
+        Set<Integer> owned = Set.copyOf(partitionManager.getActivePartitions());
+        Set<Integer> added = new HashSet<>();
+        try (Statement statement = connection.createStatement()) {
+            for (Integer partition : owned) {
+                if (listening.add(partition)) {
+                    statement.execute("LISTEN " + PartitionNotifications.channel(partition));
+                    added.add(partition);
+                }
+            }
+            for (Integer partition : Set.copyOf(listening)) {
+                if (!owned.contains(partition)) {
+                    statement.execute("UNLISTEN " + PartitionNotifications.channel(partition));
+                    listening.remove(partition);
+                }
+            }
+        }
+        return added;
+    }
+
+    private void dispatch(PGNotification notification) {
+        int partition = PartitionNotifications.partitionId(notification.getName());
+        if (partition < 0) {
+            return;
+        }
+        try {
+            LocalDateTime scheduledTime = PartitionNotifications.scheduledTime(notification.getParameter());
+            String eventId = PartitionNotifications.eventId(notification.getParameter());
+            eventProcessor.onEventsScheduled(partition, scheduledTime, eventId);
+        } catch (Exception e) {
+            log.error("Failed to handle notification {} on {}", notification.getParameter(), notification.getName(), e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
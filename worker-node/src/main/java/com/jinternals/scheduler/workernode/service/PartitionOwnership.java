@@ -0,0 +1,57 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import com.jinternals.scheduler.common.repositories.PartitionEpochRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Acquires the ownership epoch of a partition this worker becomes master of. Until the acquiring transaction
+ * commits, claims of the previous master still go through; from then on they match no rows. The events the
+ * previous masters left IN_PROGRESS are returned to PENDING in the same transaction, without waiting for their
+ * leases to run out.
+ */
+@Service
+@Slf4j
+@Profile("!init & !controller")
+public class PartitionOwnership {
+
+    private final PartitionEpochRepository partitionEpochRepository;
+    private final EventRepository eventRepository;
+    private final SchedulerMetrics metrics;
+    private final TransactionTemplate transactionTemplate;
+    private final String instanceName;
+
+    public PartitionOwnership(PartitionEpochRepository partitionEpochRepository,
+                              EventRepository eventRepository,
+                              SchedulerMetrics metrics,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${helix.instance.name}") String instanceName) {
+        this.partitionEpochRepository = partitionEpochRepository;
+        this.eventRepository = eventRepository;
+        this.metrics = metrics;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.instanceName = instanceName;
+    }
+
+    /**
+     * @return the new epoch of the partition
+     */
+    public long acquire(int partition) {
+        return transactionTemplate.execute(status -> {
+            long epoch = partitionEpochRepository.acquire(partition, instanceName);
+            int recovered = eventRepository.releaseOrphanedClaims(partition, epoch, EventStatus.IN_PROGRESS,
+                    EventStatus.PENDING);
+            if (recovered > 0) {
+                metrics.recordReaped(recovered);
+                log.warn("Recovered {} events of partition {} claimed before epoch {}", recovered, partition, epoch);
+            }
+            return epoch;
+        });
+    }
+}
@@ -0,0 +1,123 @@
+package com.jinternals.scheduler.workernode.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Decides when each partition should be polled next. Busy partitions are polled again right away, partitions
+ * with a known next due time sleep until then, and partitions with nothing pending back off exponentially.
+ * Every wait is capped by the maximum interval. At most one poll per partition is in flight at a time.
+ */
+public class PartitionPollSchedule {
+
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final Map<Integer, State> states = new ConcurrentHashMap<>();
+
+    public PartitionPollSchedule(long minIntervalMs, long maxIntervalMs) {
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+    }
+
+    /**
+     * @return true if the partition is due and no poll is running for it; the caller must then report the
+     * outcome through {@link #pollAgain}, {@link #pollAt} or {@link #backOff}
+     */
+    public boolean tryStart(int partition, long nowMs) {
+        State state = states.computeIfAbsent(partition, p -> new State());
+        synchronized (state) {
+            if (state.inFlight || state.nextPollAt > nowMs) {
+                return false;
+            }
+            state.inFlight = true;
+            return true;
+        }
+    }
+
+    /**
+     * The partition still has a backlog.
+     */
+    public void pollAgain(int partition) {
+        update(partition, state -> {
+            state.backoffMs = 0;
+            state.nextPollAt = 0;
+        });
+    }
+
+    /**
+     * Nothing is due before {@code dueMs}.
+     */
+    public void pollAt(int partition, long nowMs, long dueMs) {
+        update(partition, state -> {
+            state.backoffMs = 0;
+            state.nextPollAt = Math.min(dueMs, nowMs + maxIntervalMs);
+        });
+    }
+
+    /**
+     * Nothing is pending at all.
+     */
+    public void backOff(int partition, long nowMs) {
+        update(partition, state -> {
+            state.backoffMs = state.backoffMs == 0 ? minIntervalMs : Math.min(state.backoffMs * 2, maxIntervalMs);
+            state.nextPollAt = nowMs + state.backoffMs;
+        });
+    }
+
+    /**
+     * Makes the partition due right away, e.g. because new work was signalled. A wakeup that arrives while a poll
+     * is in flight is applied when that poll reports its outcome, so it cannot be overwritten by a stale deadline.
+     */
+    public void wakeUp(int partition) {
+        State state = states.get(partition);
+        if (state != null) {
+            synchronized (state) {
+                if (state.inFlight) {
+                    state.wakeRequested = true;
+                } else {
+                    state.backoffMs = 0;
+                    state.nextPollAt = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return when the partition is due next, 0 if right away
+     */
+    public long nextPollAt(int partition) {
+        State state = states.get(partition);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.nextPollAt;
+        }
+    }
+
+    public void retain(Set<Integer> partitions) {
+        states.keySet().retainAll(partitions);
+    }
+
+    private void update(int partition, Consumer<State> change) {
+        State state = states.computeIfAbsent(partition, p -> new State());
+        synchronized (state) {
+            change.accept(state);
+            if (state.wakeRequested) {
+                state.backoffMs = 0;
+                state.nextPollAt = 0;
+                state.wakeRequested = false;
+            }
+            state.inFlight = false;
+        }
+    }
+
+    private static final class State {
+        private long nextPollAt;
+        private long backoffMs;
+        private boolean inFlight;
+        private boolean wakeRequested;
+    }
+}
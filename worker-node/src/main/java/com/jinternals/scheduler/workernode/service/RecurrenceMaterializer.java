@@ -0,0 +1,110 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.PartitionNotifications;
+import com.jinternals.scheduler.common.Recurrences;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.jinternals.scheduler.common.model.EventStatus.PENDING;
+
+/**
+ * Stores the next occurrence of every recurring event being dispatched. Must be called within the transaction
+ * that dispatches the events, so a series never loses or duplicates an occurrence: a rolled back dispatch takes
+ * the new occurrence with it, and a repeated one finds it already stored under the same id.
+ * <p>
+ * The next occurrence keeps the series' bucket and partition. One inside the prefetch window is announced like a
+ * newly scheduled event, so it gets on the timing wheel right away.
+ */
+@Service
+@Profile("!init & !controller")
+public class RecurrenceMaterializer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecurrenceMaterializer.class);
+
+    private final EventRepository eventRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ClockService clockService;
+
+    @Value("${scheduler.notify.enabled:true}")
+    private boolean notifyEnabled = true;
+
+    @Value("${scheduler.wheel.lookahead-ms:60000}")
+    private long lookaheadMs = 60000;
+
+    public RecurrenceMaterializer(EventRepository eventRepository, JdbcTemplate jdbcTemplate,
+                                  ClockService clockService) {
+        this.eventRepository = eventRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.clockService = clockService;
+    }
+
+    /**
+     * @return the number of occurrences stored
+     */
+    public int materializeNext(List<Event> dispatched) {
+        LocalDateTime now = null;
+        int stored = 0;
+        for (Event event : dispatched) {
+            if (!Recurrences.isRecurring(event)) {
+                continue;
+            }
+            if (now == null) {
+                now = clockService.getCurrentDateTime();
+            }
+            LocalDateTime nextFireTime = Recurrences.nextFireTime(event, now);
+            if (nextFireTime == null) {
+                logger.info("Series {} has ended", seriesId(event));
+                continue;
+            }
+            Event next = nextOccurrence(event, nextFireTime);
+            if (eventRepository.insertOccurrence(next) == 1) {
+                stored++;
+                announce(next, now);
+            }
+        }
+        return stored;
+    }
+
+    private static Event nextOccurrence(Event event, LocalDateTime nextFireTime) {
+        String seriesId = seriesId(event);
+        Event next = new Event();
+        next.setId(Recurrences.occurrenceId(seriesId, nextFireTime));
+        next.setSeriesId(seriesId);
+        next.setPartitionId(event.getPartitionId());
+        next.setBucket(event.getBucket());
+        next.setScheduledTime(nextFireTime);
+        next.setStatus(PENDING);
+        next.setEventName(event.getEventName());
+        next.setNamespace(event.getNamespace());
+        next.setPriority(event.getPriority());
+        next.setPayload(event.getPayload());
+        next.setPayloadRef(event.getPayloadRef());
+        next.setCronExpression(event.getCronExpression());
+        next.setIntervalMs(event.getIntervalMs());
+        next.setRecurrenceEnd(event.getRecurrenceEnd());
+        return next;
+    }
+
+    private static String seriesId(Event event) {
+        return event.getSeriesId() != null ? event.getSeriesId() : event.getId();
+    }
+
+    private void announce(Event next, LocalDateTime now) {
+        if (!notifyEnabled || next.getScheduledTime().isAfter(now.plusNanos(lookaheadMs * 1_000_000))) {
+            return;
+        }
+        // Delivered on commit
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", String.class,
+                PartitionNotifications.channel(next.getPartitionId()),
+                PartitionNotifications.payload(next.getScheduledTime(), next.getId()));
+    }
+}
@@ -0,0 +1,115 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static com.jinternals.scheduler.common.model.EventStatus.*;
+
+/**
+ * Decides what happens to a claimed event whose dispatch failed. The event is rescheduled as PENDING after an
+ * exponential backoff, pushing its {@code scheduled_time} forward so the retry is claimed through the same index
+ * as any other due event. Once {@code scheduler.retry.max-attempts} dispatches failed, it is moved to FAILED
+ * until it is re-driven. Either way the error is kept on the event.
+ */
+@Component
+@Profile("!init & !controller")
+public class RetryPolicy {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    // Length of events.exception_stack_trace
+    static final int MAX_STACK_TRACE_LENGTH = 4096;
+
+    private final EventRepository eventRepository;
+    private final ClockService clockService;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+
+    public RetryPolicy(EventRepository eventRepository,
+                       ClockService clockService,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${scheduler.retry.max-attempts:10}") int maxAttempts,
+                       @Value("${scheduler.retry.base-delay-ms:1000}") long baseDelayMs,
+                       @Value("${scheduler.retry.max-delay-ms:600000}") long maxDelayMs) {
+        this.eventRepository = eventRepository;
+        this.clockService = clockService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Reschedules or fails a claimed (IN_PROGRESS) event in a transaction of its own. Nothing happens if the
+     * claim was lost in the meantime.
+     */
+    public void recordFailure(int partition, Event event, Exception cause) {
+        int attempts = event.getAttempts() + 1;
+        LocalDateTime now = clockService.getCurrentDateTime();
+        boolean exhausted = attempts >= maxAttempts;
+        LocalDateTime retryAt = exhausted ? event.getScheduledTime() : now.plus(backoff(attempts));
+        Integer updated = transactionTemplate.execute(status -> eventRepository.failClaim(partition, event.getId(),
+                event.getLockedAt(), IN_PROGRESS, exhausted ? FAILED : PENDING, retryAt, stackTrace(cause)));
+        if (updated == null || updated == 0) {
+            return;
+        }
+        if (exhausted) {
+            logger.error("Event {} of partition {} failed after {} attempts", event.getId(), partition, attempts,
+                    cause);
+        } else {
+            logger.warn("Event {} of partition {} failed attempt {}, retrying at {}", event.getId(), partition,
+                    attempts, retryAt, cause);
+        }
+    }
+
+    /**
+     * Reschedules claimed events whose dispatch failed through no fault of their own, e.g. because the broker is
+     * unavailable: they are PENDING again after the first backoff, without counting an attempt. Nothing happens
+     * to events whose claim was lost in the meantime.
+     *
+     * @param events events claimed together, all carrying the same {@code lockedAt}
+     */
+    public void postpone(int partition, List<Event> events, Exception cause) {
+        LocalDateTime retryAt = clockService.getCurrentDateTime().plus(backoff(1));
+        List<String> ids = events.stream().map(Event::getId).toList();
+        Integer updated = transactionTemplate.execute(status -> eventRepository.postponeClaim(partition, ids,
+                events.getFirst().getLockedAt(), IN_PROGRESS, PENDING, retryAt));
+        logger.warn("Postponed {} events of partition {} to {}", updated, partition, retryAt, cause);
+    }
+
+    /**
+     * @return the delay before retrying an event that failed {@code attempts} times: doubling from
+     * {@code scheduler.retry.base-delay-ms} up to {@code scheduler.retry.max-delay-ms}, of which the upper half
+     * is random so events failing together do not retry together
+     */
+    Duration backoff(int attempts) {
+        long delay = baseDelayMs << Math.min(attempts - 1, 30);
+        if (delay <= 0 || delay > maxDelayMs) {
+            delay = maxDelayMs;
+        }
+        return Duration.ofMillis(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+    }
+
+    static String stackTrace(Exception cause) {
+        StringWriter writer = new StringWriter();
+        cause.printStackTrace(new PrintWriter(writer));
+        String trace = writer.toString();
+        return trace.length() > MAX_STACK_TRACE_LENGTH ? trace.substring(0, MAX_STACK_TRACE_LENGTH) : trace;
+    }
+}
@@ -0,0 +1,92 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.Event;
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Meters of the dispatch path, exposed on {@code /actuator/prometheus}. Only the outbox backlog is tagged by
+ * partition, one gauge per partition this worker owns; everything else is tagged with a handful of fixed values
+ * at most, so the number of series does not grow with the number of partitions or events.
+ */
+@Component
+@Profile("!init & !controller")
+public class SchedulerMetrics {
+
+    /**
+     * Claims made by the overdue drain.
+     */
+    public static final String SOURCE_POLL = "poll";
+    /**
+     * Claims of events fired on time by the timing wheel.
+     */
+    public static final String SOURCE_WHEEL = "wheel";
+
+    private final MeterRegistry registry;
+    private final ClockService clockService;
+    private final Timer dispatchLag;
+    private final Counter reaped;
+
+    public SchedulerMetrics(MeterRegistry registry, PartitionManager partitionManager, ClockService clockService) {
+        this.registry = registry;
+        this.clockService = clockService;
+        this.dispatchLag = Timer.builder("scheduler.dispatch.lag")
+                .description("Time from the scheduled time of an event until it was handed to the outbox or Kafka")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.reaped = Counter.builder("scheduler.reaper.recovered")
+                .description("IN_PROGRESS events returned to PENDING after their lease ran out or their master changed")
+                .register(registry);
+        Gauge.builder("scheduler.partitions.active", partitionManager, manager -> manager.getActivePartitions().size())
+                .description("Partitions this worker is master of")
+                .register(registry);
+    }
+
+    /**
+     * Records the dispatch lag of events that were just dispatched.
+     */
+    public void recordDispatched(List<Event> events) {
+        LocalDateTime now = clockService.getCurrentDateTime();
+        for (Event event : events) {
+            if (event.getScheduledTime() != null) {
+                dispatchLag.record(Duration.between(event.getScheduledTime(), now));
+            }
+        }
+    }
+
+    /**
+     * Runs a claim statement, recording how long it took and how many events it claimed.
+     *
+     * @param source {@link #SOURCE_POLL} or {@link #SOURCE_WHEEL}
+     */
+    public <T> List<T> timeClaim(String source, Supplier<List<T>> claim) {
+        Timer.Sample sample = Timer.start(registry);
+        List<T> claimed = claim.get();
+        sample.stop(Timer.builder("scheduler.claim.latency")
+                .description("Duration of a claim statement")
+                .tag("source", source)
+                .publishPercentileHistogram()
+                .register(registry));
+        DistributionSummary.builder("scheduler.claim.size")
+                .description("Events claimed by a claim statement")
+                .tag("source", source)
+                .register(registry)
+                .record(claimed.size());
+        return claimed;
+    }
+
+    public void recordReaped(int count) {
+        reaped.increment(count);
+    }
+
+    public void bind(MeterBinder binder) {
+        binder.bindTo(registry);
+    }
+}
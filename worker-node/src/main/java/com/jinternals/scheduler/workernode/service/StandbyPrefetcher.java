@@ -0,0 +1,134 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.EventTrigger;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static com.jinternals.scheduler.common.model.EventStatus.PENDING;
+
+/**
+ * Keeps a warm window of the events due in the next {@code scheduler.standby.lookahead-ms} of every partition this
+ * worker is a SLAVE replica of, so a failover does not start cold. The window is read-only and reloaded as a
+ * whole every {@code scheduler.standby.refresh-ms}, since the master keeps dispatching from it. When the partition
+ * is promoted, the window is handed to {@link EventProcessor#warmStart}.
+ */
+@Service
+@Slf4j
+@Profile("!init & !controller")
+@ConditionalOnProperty(name = "scheduler.standby.enabled", havingValue = "true", matchIfMissing = true)
+public class StandbyPrefetcher implements PartitionManager.Listener {
+
+    private final PartitionManager partitionManager;
+    private final EventRepository eventRepository;
+    private final EventProcessor eventProcessor;
+    private final ClockService clockService;
+    private final Executor eventTaskExecutor;
+    private final long lookaheadMs;
+    private final int prefetchLimit;
+
+    private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+    private final Set<Integer> loading = ConcurrentHashMap.newKeySet();
+
+    public StandbyPrefetcher(PartitionManager partitionManager,
+                             EventRepository eventRepository,
+                             EventProcessor eventProcessor,
+                             ClockService clockService,
+                             @Qualifier("eventTaskExecutor") Executor eventTaskExecutor,
+                             @Value("${scheduler.standby.lookahead-ms:10000}") long lookaheadMs,
+                             @Value("${scheduler.wheel.prefetch-limit:5000}") int prefetchLimit) {
+        this.partitionManager = partitionManager;
+        this.eventRepository = eventRepository;
+        this.eventProcessor = eventProcessor;
+        this.clockService = clockService;
+        this.eventTaskExecutor = eventTaskExecutor;
+        this.lookaheadMs = lookaheadMs;
+        this.prefetchLimit = prefetchLimit;
+    }
+
+    @PostConstruct
+    public void start() {
+        partitionManager.addListener(this);
+    }
+
+    @Scheduled(fixedDelayString = "${scheduler.standby.refresh-ms:2000}")
+    public void refresh() {
+        Set<Integer> standby = partitionManager.getStandbyPartitions();
+        windows.keySet().retainAll(standby);
+        standby.forEach(this::load);
+    }
+
+    @Override
+    public void onStandbyAdded(int partitionId) {
+        load(partitionId);
+    }
+
+    @Override
+    public void onPartitionAdded(int partitionId) {
+        Window window = windows.remove(partitionId);
+        if (window == null) {
+            eventProcessor.warmStart(partitionId, List.of(), null);
+            return;
+        }
+        log.info("Warm start of partition {} with {} prefetched events, next due at {}", partitionId,
+                window.triggers().size(), window.nextDue());
+        eventProcessor.warmStart(partitionId, window.triggers(), window.horizon());
+    }
+
+    private void load(int partition) {
+        if (!loading.add(partition)) {
+            return;
+        }
+        eventTaskExecutor.execute(() -> {
+            try {
+                Window window = prefetch(partition);
+                // Promoted or dropped while loading
+                if (partitionManager.getStandbyPartitions().contains(partition)) {
+                    windows.put(partition, window);
+                }
+            } catch (Exception e) {
+                log.warn("Failed to prefetch standby partition {}", partition, e);
+            } finally {
+                loading.remove(partition);
+            }
+        });
+    }
+
+    private Window prefetch(int partition) {
+        LocalDateTime now = clockService.getCurrentDateTime();
+        LocalDateTime until = now.plus(Duration.ofMillis(lookaheadMs));
+        // Index-only probe; an idle partition needs no window
+        LocalDateTime nextDue = eventRepository.findNextScheduledTime(partition, PENDING);
+        List<EventTrigger> triggers = nextDue == null || nextDue.isAfter(until)
+                ? List.of()
+                : eventRepository.findTriggers(partition, PENDING, now, until, Limit.of(prefetchLimit));
+        // A truncated window only reaches as far as what was actually loaded
+        LocalDateTime horizon = triggers.size() < prefetchLimit ? until : triggers.getLast().scheduledTime();
+        return new Window(triggers, horizon, nextDue);
+    }
+
+    Window window(int partition) {
+        return windows.get(partition);
+    }
+
+    /**
+     * @param nextDue the earliest due time of the partition, overdue or not, or null if nothing is pending
+     */
+    record Window(List<EventTrigger> triggers, LocalDateTime horizon, LocalDateTime nextDue) {
+    }
+}
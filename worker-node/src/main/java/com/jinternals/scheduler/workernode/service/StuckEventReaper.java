@@ -9,8 +9,15 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-
+import java.util.Set;
+
+/**
+ * Heartbeat of the claims this worker holds: renews the leases of the claims still being dispatched, then
+ * returns events whose lease ran out to PENDING, i.e. events left IN_PROGRESS by a claim that is no longer being
+ * dispatched. Both statements run per owned partition, so they only touch its IN_PROGRESS rows through the
+ * partition index. Claims of a previous master are recovered as soon as the partition is acquired, see
+ * {@link PartitionOwnership}. {@link DispatchMode#FUSED} never leaves rows IN_PROGRESS.
+ */
 @Service
 @Slf4j
 @Profile("!init & !controller")
@@ -18,30 +25,35 @@ public class StuckEventReaper {
 
     private final EventRepository eventRepository;
     private final PartitionManager partitionManager;
+    private final ClaimLeases claimLeases;
+    private final ClockService clockService;
+    private final SchedulerMetrics metrics;
 
-    public StuckEventReaper(EventRepository eventRepository, PartitionManager partitionManager) {
+    public StuckEventReaper(EventRepository eventRepository, PartitionManager partitionManager,
+                            ClaimLeases claimLeases, ClockService clockService, SchedulerMetrics metrics) {
         this.eventRepository = eventRepository;
         this.partitionManager = partitionManager;
+        this.claimLeases = claimLeases;
+        this.clockService = clockService;
+        this.metrics = metrics;
     }
 
-    @Scheduled(fixedDelay = 60000)
+    @Scheduled(fixedDelayString = "${scheduler.lease.renew-interval-ms:2000}")
     @Transactional
     public void recoverStuckEvents() {
-        var activePartitions = partitionManager.getActivePartitions();
-        if (activePartitions.isEmpty()) {
-            return;
-        }
-
-        LocalDateTime cutoff = LocalDateTime.now().minusMinutes(10);
-        int updatedCount = eventRepository.resetStuckEvents(
-                EventStatus.IN_PROGRESS,
-                EventStatus.PENDING,
-                cutoff,
-                new ArrayList<>(activePartitions));
-
-        if (updatedCount > 0) {
-            log.warn("REAPER: Recovered {} stuck events (locked before {}) for partitions {}",
-                    updatedCount, cutoff, activePartitions);
+        LocalDateTime now = clockService.getCurrentDateTime();
+        for (Integer partition : Set.copyOf(partitionManager.getActivePartitions())) {
+            Set<LocalDateTime> held = claimLeases.held(partition);
+            if (!held.isEmpty()) {
+                eventRepository.renewLeases(partition, EventStatus.IN_PROGRESS, held, claimLeases.leaseUntil(now));
+            }
+
+            int recovered = eventRepository.releaseExpiredLeases(partition, EventStatus.IN_PROGRESS,
+                    EventStatus.PENDING, now);
+            if (recovered > 0) {
+                metrics.recordReaped(recovered);
+                log.warn("REAPER: Recovered {} events of partition {} whose lease expired", recovered, partition);
+            }
         }
     }
 }
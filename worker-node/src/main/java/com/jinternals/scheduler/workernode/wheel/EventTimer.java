@@ -0,0 +1,183 @@
+package com.jinternals.scheduler.workernode.wheel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Fires prefetched events at their due time. Each partition owns its own {@link PartitionWheel}; a single
+ * daemon thread sleeps until the earliest bucket of any partition expires and hands the due ids, grouped by
+ * partition, to the {@link DueHandler}. The thread is started lazily on the first scheduled event.
+ */
+public class EventTimer implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventTimer.class);
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final DueHandler handler;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeup = lock.newCondition();
+    private final Map<Integer, PartitionWheel> wheels = new HashMap<>();
+    private final Map<Integer, List<String>> overdue = new HashMap<>();
+
+    private Thread driver;
+    private boolean closed;
+
+    public EventTimer(long tickMs, int wheelSize, DueHandler handler) {
+        this(tickMs, wheelSize, handler, System::currentTimeMillis);
+    }
+
+    EventTimer(long tickMs, int wheelSize, DueHandler handler, LongSupplier clock) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.handler = handler;
+        this.clock = clock;
+    }
+
+    public void schedule(int partition, String id, LocalDateTime scheduledTime) {
+        schedule(partition, id, toEpochMillis(scheduledTime));
+    }
+
+    public void schedule(int partition, String id, long deadlineMs) {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            PartitionWheel wheel = wheels.computeIfAbsent(partition,
+                    p -> new PartitionWheel(tickMs, wheelSize, clock.getAsLong()));
+            long previousExpiration = wheel.nextExpiration();
+            if (!wheel.add(id, deadlineMs)) {
+                overdue.computeIfAbsent(partition, p -> new ArrayList<>()).add(id);
+                wakeup.signal();
+            } else if (wheel.nextExpiration() < previousExpiration) {
+                wakeup.signal();
+            }
+            ensureStarted();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the wheels of partitions this node no longer owns; their events are left to the new owner.
+     */
+    public void retainPartitions(Set<Integer> partitions) {
+        lock.lock();
+        try {
+            wheels.keySet().retainAll(partitions);
+            overdue.keySet().retainAll(partitions);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size(int partition) {
+        lock.lock();
+        try {
+            PartitionWheel wheel = wheels.get(partition);
+            return wheel == null ? 0 : wheel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            wheels.clear();
+            overdue.clear();
+            wakeup.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void ensureStarted() {
+        if (driver == null) {
+            driver = Thread.ofPlatform()
+                    .name("event-timer")
+                    .daemon(true)
+                    .start(this::run);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Map<Integer, List<String>> due;
+            lock.lock();
+            try {
+                due = collectDue();
+                while (due.isEmpty()) {
+                    if (closed) {
+                        return;
+                    }
+                    long delayMs = nextExpiration() - clock.getAsLong();
+                    if (delayMs > 0) {
+                        wakeup.await(delayMs, TimeUnit.MILLISECONDS);
+                    }
+                    due = collectDue();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            due.forEach((partition, ids) -> {
+                try {
+                    handler.onDue(partition, ids);
+                } catch (Exception e) {
+                    logger.error("Failed to hand off {} due events for partition {}", ids.size(), partition, e);
+                }
+            });
+        }
+    }
+
+    private Map<Integer, List<String>> collectDue() {
+        Map<Integer, List<String>> due = new HashMap<>(overdue);
+        overdue.clear();
+        long now = clock.getAsLong();
+        wheels.forEach((partition, wheel) -> wheel.expire(now,
+                (id, deadlineMs) -> due.computeIfAbsent(partition, p -> new ArrayList<>()).add(id)));
+        return due;
+    }
+
+    private long nextExpiration() {
+        long next = Long.MAX_VALUE;
+        for (PartitionWheel wheel : wheels.values()) {
+            next = Math.min(next, wheel.nextExpiration());
+        }
+        return next;
+    }
+
+    /**
+     * Rounds sub-millisecond precision up, so an event never fires before its stored scheduled time.
+     */
+    public static long toEpochMillis(LocalDateTime dateTime) {
+        long millis = dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return dateTime.getNano() % 1_000_000 == 0 ? millis : millis + 1;
+    }
+
+    @FunctionalInterface
+    public interface DueHandler {
+        void onDue(int partition, List<String> ids);
+    }
+}
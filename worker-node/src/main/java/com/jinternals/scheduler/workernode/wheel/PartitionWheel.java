@@ -0,0 +1,58 @@
+package com.jinternals.scheduler.workernode.wheel;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Hierarchical timing wheel holding the prefetched due times of a single partition. Not thread-safe; guarded by
+ * {@link EventTimer}.
+ */
+final class PartitionWheel {
+
+    private final PriorityQueue<TimerBucket> queue =
+            new PriorityQueue<>(Comparator.comparingLong(TimerBucket::getExpiration));
+    private final TimingWheel wheel;
+    private int size;
+
+    PartitionWheel(long tickMs, int wheelSize, long startMs) {
+        this.wheel = new TimingWheel(tickMs, wheelSize, startMs, queue);
+    }
+
+    boolean add(String id, long deadlineMs) {
+        if (wheel.add(id, deadlineMs)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the expiration of the earliest non-empty bucket, or {@link Long#MAX_VALUE} if the wheel is empty
+     */
+    long nextExpiration() {
+        TimerBucket head = queue.peek();
+        return head == null ? Long.MAX_VALUE : head.getExpiration();
+    }
+
+    /**
+     * Advances the wheel up to {@code nowMs}, cascading entries from coarser levels and handing every entry whose
+     * deadline has been reached to the consumer.
+     */
+    void expire(long nowMs, TimerBucket.EntryConsumer consumer) {
+        TimerBucket bucket;
+        while ((bucket = queue.peek()) != null && bucket.getExpiration() <= nowMs) {
+            queue.poll();
+            wheel.advanceClock(bucket.getExpiration());
+            size -= bucket.size();
+            bucket.flush((id, deadlineMs) -> {
+                if (!add(id, deadlineMs)) {
+                    consumer.accept(id, deadlineMs);
+                }
+            });
+        }
+    }
+
+    int size() {
+        return size;
+    }
+}
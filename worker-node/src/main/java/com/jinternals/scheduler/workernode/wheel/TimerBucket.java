@@ -0,0 +1,70 @@
+package com.jinternals.scheduler.workernode.wheel;
+
+import java.util.Arrays;
+
+/**
+ * A slot of a {@link TimingWheel}. Entries are kept as parallel arrays of epoch-millis deadlines and event ids,
+ * so a prefetched window of thousands of events costs two arrays instead of thousands of entity objects.
+ */
+final class TimerBucket {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private long expiration = -1L;
+    private long[] deadlines = new long[INITIAL_CAPACITY];
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private int size;
+
+    void add(String id, long deadlineMs) {
+        if (size == ids.length) {
+            deadlines = Arrays.copyOf(deadlines, size << 1);
+            ids = Arrays.copyOf(ids, size << 1);
+        }
+        deadlines[size] = deadlineMs;
+        ids[size] = id;
+        size++;
+    }
+
+    /**
+     * @return true if the expiration changed, meaning the bucket has to be (re)queued
+     */
+    boolean setExpiration(long expirationMs) {
+        if (expiration == expirationMs) {
+            return false;
+        }
+        expiration = expirationMs;
+        return true;
+    }
+
+    long getExpiration() {
+        return expiration;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Empties the bucket and hands every entry to the consumer. The bucket may be refilled by the consumer,
+     * so the current arrays are detached before iterating.
+     */
+    void flush(EntryConsumer consumer) {
+        long[] flushedDeadlines = deadlines;
+        String[] flushedIds = ids;
+        int flushedSize = size;
+
+        deadlines = new long[INITIAL_CAPACITY];
+        ids = new String[INITIAL_CAPACITY];
+        size = 0;
+        expiration = -1L;
+
+        for (int i = 0; i < flushedSize; i++) {
+            consumer.accept(flushedIds[i], flushedDeadlines[i]);
+        }
+    }
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(String id, long deadlineMs);
+    }
+}
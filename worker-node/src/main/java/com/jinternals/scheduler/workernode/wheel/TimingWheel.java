@@ -0,0 +1,65 @@
+package com.jinternals.scheduler.workernode.wheel;
+
+import java.util.Queue;
+
+/**
+ * One level of a hierarchical timing wheel. Deadlines beyond this level's interval are pushed to a lazily
+ * created overflow wheel whose tick is this level's whole interval; entries cascade down as the clock advances.
+ * <p>
+ * All levels share one queue of non-empty buckets ordered by expiration, so the owner only has to wake up when
+ * the earliest bucket expires instead of ticking every millisecond. Not thread-safe.
+ */
+final class TimingWheel {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final TimerBucket[] buckets;
+    private final Queue<TimerBucket> queue;
+
+    private long currentTime;
+    private TimingWheel overflowWheel;
+
+    TimingWheel(long tickMs, int wheelSize, long startMs, Queue<TimerBucket> queue) {
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.queue = queue;
+        this.buckets = new TimerBucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new TimerBucket();
+        }
+        this.currentTime = startMs - (startMs % tickMs);
+    }
+
+    /**
+     * @return false if the deadline already falls within the current tick and the entry should fire right away
+     */
+    boolean add(String id, long deadlineMs) {
+        if (deadlineMs < currentTime + tickMs) {
+            return false;
+        }
+        if (deadlineMs < currentTime + interval) {
+            long virtualId = deadlineMs / tickMs;
+            TimerBucket bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.add(id, deadlineMs);
+            if (bucket.setExpiration(virtualId * tickMs)) {
+                queue.offer(bucket);
+            }
+            return true;
+        }
+        if (overflowWheel == null) {
+            overflowWheel = new TimingWheel(interval, wheelSize, currentTime, queue);
+        }
+        return overflowWheel.add(id, deadlineMs);
+    }
+
+    void advanceClock(long timeMs) {
+        if (timeMs >= currentTime + tickMs) {
+            currentTime = timeMs - (timeMs % tickMs);
+            if (overflowWheel != null) {
+                overflowWheel.advanceClock(currentTime);
+            }
+        }
+    }
+}
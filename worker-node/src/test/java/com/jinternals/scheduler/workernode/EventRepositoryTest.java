@@ -1,23 +1,31 @@
 package com.jinternals.scheduler.workernode;
 
 import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.OutboxEvent;
 import com.jinternals.scheduler.common.repositories.EventRepository;
 import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.model.EventTrigger;
+import com.jinternals.scheduler.common.repositories.OutboxRepository;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.data.jpa.test.autoconfigure.DataJpaTest;
 import org.springframework.context.annotation.ComponentScan;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.Statement;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -28,9 +36,14 @@ import static org.assertj.core.api.Assertions.assertThat;
 @Transactional(propagation = Propagation.NOT_SUPPORTED)
 public class EventRepositoryTest {
 
+    private static final LocalDateTime CLAIMED_AT = LocalDateTime.of(2030, 1, 1, 0, 0);
+
     @Autowired
     private EventRepository eventRepository;
 
+    @Autowired
+    private OutboxRepository outboxRepository;
+
     @Autowired
     private DataSource dataSource;
 
@@ -40,6 +53,7 @@ public class EventRepositoryTest {
     @AfterEach
     public void cleanup() {
         eventRepository.deleteAll();
+        outboxRepository.deleteAll();
     }
 
     @Test
@@ -109,6 +123,130 @@ public class EventRepositoryTest {
         }
     }
 
+    @Test
+    public void testFindTriggersWithinWindow() {
+        LocalDateTime now = LocalDateTime.now();
+        Event due = createEvent("Due", 1);
+        due.setScheduledTime(now.plusSeconds(10));
+        Event later = createEvent("Later", 1);
+        later.setScheduledTime(now.plusSeconds(5));
+        Event outsideWindow = createEvent("Outside", 1);
+        outsideWindow.setScheduledTime(now.plusMinutes(5));
+        Event otherPartition = createEvent("Other", 2);
+        otherPartition.setScheduledTime(now.plusSeconds(10));
+        eventRepository.saveAll(List.of(due, later, outsideWindow, otherPartition));
+
+        List<EventTrigger> triggers = eventRepository.findTriggers(1, EventStatus.PENDING, now,
+                now.plusMinutes(1), Limit.of(10));
+
+        assertThat(triggers).extracting(EventTrigger::id).containsExactly(later.getId(), due.getId());
+        assertThat(eventRepository.findTriggers(1, EventStatus.PENDING, now, now.plusMinutes(1), Limit.of(1)))
+                .hasSize(1);
+    }
+
+    @Test
+    public void testCompleteClaimOnlyWhileTheClaimHolds() {
+        Event first = claimedEvent("First", CLAIMED_AT);
+        Event second = claimedEvent("Second", CLAIMED_AT);
+        // Reset by the stuck event reaper and claimed again since
+        Event reclaimed = claimedEvent("Reclaimed", CLAIMED_AT.plusMinutes(5));
+        eventRepository.saveAll(List.of(first, second, reclaimed));
+
+        int completed = eventRepository.completeClaim(1, List.of(first.getId(), second.getId(), reclaimed.getId()),
+                CLAIMED_AT, EventStatus.IN_PROGRESS, EventStatus.PROCESSED);
+
+        assertThat(completed).isEqualTo(2);
+        Map<String, Event> events = findAll();
+        assertThat(events.get(first.getId()).getStatus()).isEqualTo(EventStatus.PROCESSED);
+        assertThat(events.get(second.getId()).getStatus()).isEqualTo(EventStatus.PROCESSED);
+        assertThat(events.get(reclaimed.getId()).getStatus()).isEqualTo(EventStatus.IN_PROGRESS);
+        // Already completed, so a second attempt finds nothing left to complete
+        assertThat(eventRepository.completeClaim(1, List.of(first.getId()), CLAIMED_AT, EventStatus.IN_PROGRESS,
+                EventStatus.PROCESSED)).isZero();
+    }
+
+    @Test
+    public void testFailClaimRecordsAnAttemptOnlyWhileTheClaimHolds() {
+        Event event = eventRepository.save(claimedEvent("Failing", CLAIMED_AT));
+        LocalDateTime retryAt = CLAIMED_AT.plusMinutes(1);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Integer stale = transactionTemplate.execute(status -> eventRepository.failClaim(1, event.getId(),
+                CLAIMED_AT.minusMinutes(5), EventStatus.IN_PROGRESS, EventStatus.PENDING, retryAt, "stale"));
+        Integer failed = transactionTemplate.execute(status -> eventRepository.failClaim(1, event.getId(),
+                CLAIMED_AT, EventStatus.IN_PROGRESS, EventStatus.PENDING, retryAt, "broker down"));
+
+        assertThat(stale).isZero();
+        assertThat(failed).isEqualTo(1);
+        Event stored = eventRepository.findById(event.getId()).orElseThrow();
+        assertThat(stored.getStatus()).isEqualTo(EventStatus.PENDING);
+        assertThat(stored.getAttempts()).isEqualTo(1);
+        assertThat(stored.getLockedAt()).isNull();
+        assertThat(stored.getScheduledTime()).isEqualTo(retryAt);
+        assertThat(stored.getExceptionStackTrace()).isEqualTo("broker down");
+    }
+
+    @Test
+    public void testPostponeClaimWithoutCountingAnAttempt() {
+        Event postponed = claimedEvent("Postponed", CLAIMED_AT);
+        Event reclaimed = claimedEvent("Reclaimed", CLAIMED_AT.plusMinutes(5));
+        eventRepository.saveAll(List.of(postponed, reclaimed));
+        LocalDateTime retryAt = CLAIMED_AT.plusMinutes(1);
+
+        int updated = eventRepository.postponeClaim(1, List.of(postponed.getId(), reclaimed.getId()), CLAIMED_AT,
+                EventStatus.IN_PROGRESS, EventStatus.PENDING, retryAt);
+
+        assertThat(updated).isEqualTo(1);
+        Map<String, Event> events = findAll();
+        Event stored = events.get(postponed.getId());
+        assertThat(stored.getStatus()).isEqualTo(EventStatus.PENDING);
+        assertThat(stored.getAttempts()).isZero();
+        assertThat(stored.getLockedAt()).isNull();
+        assertThat(stored.getScheduledTime()).isEqualTo(retryAt);
+        assertThat(events.get(reclaimed.getId()).getLockedAt()).isEqualTo(CLAIMED_AT.plusMinutes(5));
+    }
+
+    @Test
+    public void testOutboxInsertAllAndDeleteByIds() {
+        List<OutboxEvent> rows = List.of(outboxEvent("outbox-0", "payload-0", null, 0),
+                outboxEvent("outbox-1", null, "event-1", 1), outboxEvent("outbox-2", "payload-2", null, 2));
+
+        outboxRepository.insertAll(rows);
+
+        List<OutboxEvent> oldest = outboxRepository.findOldest(1, Limit.of(10));
+        assertThat(oldest).extracting(OutboxEvent::getId).containsExactly("outbox-0", "outbox-1", "outbox-2");
+        assertThat(oldest.get(1).getPayload()).isNull();
+        assertThat(oldest.get(1).getPayloadRef()).isEqualTo("event-1");
+        assertThat(oldest.get(2).getPayload()).isEqualTo("payload-2");
+        assertThat(outboxRepository.deleteByIds(List.of("outbox-0", "outbox-1", "missing"))).isEqualTo(2);
+        assertThat(outboxRepository.findOldest(1, Limit.of(10))).extracting(OutboxEvent::getId)
+                .containsExactly("outbox-2");
+    }
+
+    private Map<String, Event> findAll() {
+        return eventRepository.findAll().stream().collect(Collectors.toMap(Event::getId, Function.identity()));
+    }
+
+    private Event claimedEvent(String name, LocalDateTime lockedAt) {
+        Event e = createEvent(name, 1);
+        e.setStatus(EventStatus.IN_PROGRESS);
+        e.setScheduledTime(CLAIMED_AT);
+        e.setLockedAt(lockedAt);
+        return e;
+    }
+
+    private static OutboxEvent outboxEvent(String id, String payload, String payloadRef, int second) {
+        return OutboxEvent.builder()
+                .id(id)
+                .aggregateId(id.replace("outbox", "event"))
+                .aggregateType("EVENT")
+                .payload(payload)
+                .payloadRef(payloadRef)
+                .createdAt(CLAIMED_AT.plusSeconds(second))
+                .partitionId(1)
+                .build();
+    }
+
     private Event createEvent(String name, int partition) {
         Event e = new Event();
         e.setId(UUID.randomUUID().toString());
@@ -0,0 +1,77 @@
+package com.jinternals.scheduler.workernode.config;
+
+import com.github.luben.zstd.Zstd;
+import com.jinternals.scheduler.common.Payloads;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventPayload;
+import com.jinternals.scheduler.workernode.service.OffloadedPayloads;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.support.serializer.JacksonJsonDeserializer;
+
+import java.util.Map;
+
+import static com.jinternals.scheduler.workernode.config.KafkaConfig.SCHEDULER_EVENTS_TOPIC;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PayloadSerializerTest {
+
+    // A JSON document with characters that have to be escaped in a JSON string
+    private static final String PAYLOAD = "{\"greeting\":\"grüß dich\",\"lines\":\"a\\nb\\tc\"}";
+
+    private final PayloadSerializer serializer = new PayloadSerializer();
+    private final JacksonJsonDeserializer<Object> deserializer = new JacksonJsonDeserializer<>();
+
+    @AfterEach
+    void tearDown() {
+        serializer.close();
+        deserializer.close();
+    }
+
+    @Test
+    void consumersReadTheSameValueWhetherThePayloadWasOffloadedOrNot() {
+        serializer.configure(Map.of(), false);
+        deserializer.configure(Map.of(), false);
+        Event small = event("small");
+        Event large = event("large");
+        assertNull(Payloads.offload(small, Integer.MAX_VALUE));
+        EventPayload offloaded = Payloads.offload(large, 1);
+
+        Headers inlineHeaders = new RecordHeaders();
+        byte[] inline = serializer.serialize(SCHEDULER_EVENTS_TOPIC, inlineHeaders, small.getPayload());
+        ProducerRecord<String, Object> record = OffloadedPayloads.record(SCHEDULER_EVENTS_TOPIC, 0, "large",
+                offloaded);
+        byte[] compressed = serializer.serialize(SCHEDULER_EVENTS_TOPIC, record.headers(), record.value());
+        byte[] decompressed = Zstd.decompress(compressed, Math.toIntExact(Zstd.getFrameContentSize(compressed)));
+
+        assertArrayEquals(inline, decompressed);
+        assertArrayEquals(inlineHeaders.lastHeader("__TypeId__").value(),
+                record.headers().lastHeader("__TypeId__").value());
+        assertEquals(PAYLOAD, deserializer.deserialize(SCHEDULER_EVENTS_TOPIC, inlineHeaders, inline));
+        assertEquals(PAYLOAD, deserializer.deserialize(SCHEDULER_EVENTS_TOPIC, record.headers(), decompressed));
+        assertEquals(PAYLOAD, Payloads.decompress(offloaded));
+    }
+
+    @Test
+    void leavesOffloadedRecordsUntypedWhenTypeHeadersAreOff() {
+        serializer.configure(Map.of("spring.json.add.type.headers", false), false);
+        Headers headers = new RecordHeaders();
+
+        byte[] bytes = {1, 2, 3};
+
+        assertArrayEquals(bytes, serializer.serialize(SCHEDULER_EVENTS_TOPIC, headers, bytes));
+        assertNull(headers.lastHeader("__TypeId__"));
+    }
+
+    private static Event event(String id) {
+        Event event = new Event();
+        event.setId(id);
+        event.setPayload(PAYLOAD);
+        return event;
+    }
+}
@@ -0,0 +1,78 @@
+package com.jinternals.scheduler.workernode.configuration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class EventTablePartitionerTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private EventTablePartitioner partitioner;
+
+    @BeforeEach
+    void setUp() {
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        partitioner = new EventTablePartitioner(jdbcTemplate, transactionManager);
+        ReflectionTestUtils.setField(partitioner, "numPartitions", 2);
+    }
+
+    @Test
+    void migratesAnUnpartitionedTableIntoPartitionsOfEveryStoredPartitionId() {
+        givenEventsTableKind("r");
+        // Partition 3 is beyond scheduler.partitions but still holds rows
+        when(jdbcTemplate.queryForList("SELECT DISTINCT partition_id FROM events_unpartitioned", Integer.class))
+                .thenReturn(List.of(0, 3));
+
+        partitioner.run();
+
+        InOrder inOrder = inOrder(jdbcTemplate, transactionManager);
+        inOrder.verify(jdbcTemplate).execute("LOCK TABLE events IN ACCESS EXCLUSIVE MODE");
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE events RENAME TO events_unpartitioned");
+        inOrder.verify(jdbcTemplate).execute(startsWith("CREATE TABLE events (LIKE events_unpartitioned"));
+        inOrder.verify(jdbcTemplate).execute(contains("PRIMARY KEY (id, partition_id)"));
+        inOrder.verify(jdbcTemplate).execute(contains("PARTITION OF events FOR VALUES IN (3)"));
+        inOrder.verify(jdbcTemplate).update("INSERT INTO events SELECT * FROM events_unpartitioned");
+        inOrder.verify(jdbcTemplate).execute(contains("events_p1 PARTITION OF events FOR VALUES IN (1)"));
+        inOrder.verify(transactionManager).commit(any());
+        verify(jdbcTemplate, never()).execute(startsWith("DROP"));
+    }
+
+    @Test
+    void createsAPartitionedTableWhenThereIsNone() {
+        givenEventsTableKind("");
+
+        partitioner.run();
+
+        verify(jdbcTemplate).execute(contains("PARTITION BY LIST (partition_id)"));
+        verify(jdbcTemplate).execute(contains("PRIMARY KEY (id, partition_id)"));
+        verify(jdbcTemplate).execute(contains("events_p0 PARTITION OF events FOR VALUES IN (0)"));
+        verify(jdbcTemplate).execute(contains("events_p1 PARTITION OF events FOR VALUES IN (1)"));
+        verify(jdbcTemplate, never()).update(anyString());
+    }
+
+    @Test
+    void onlyAddsMissingColumnsIndexesAndPartitionsToAPartitionedTable() {
+        givenEventsTableKind("p");
+
+        partitioner.run();
+
+        verify(jdbcTemplate).execute("ALTER TABLE events ADD COLUMN IF NOT EXISTS payload_ref VARCHAR(36)");
+        verify(jdbcTemplate).execute(contains("events_p1 PARTITION OF events FOR VALUES IN (1)"));
+        verify(jdbcTemplate, never()).execute(startsWith("CREATE TABLE events "));
+        verify(jdbcTemplate, never()).execute(contains("PRIMARY KEY"));
+    }
+
+    private void givenEventsTableKind(String kind) {
+        when(jdbcTemplate.queryForObject(contains("relkind"), eq(String.class))).thenReturn(kind);
+    }
+}
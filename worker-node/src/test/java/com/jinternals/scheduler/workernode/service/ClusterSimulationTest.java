@@ -4,10 +4,12 @@ import com.jinternals.scheduler.common.model.Event;
 import com.jinternals.scheduler.common.repositories.EventRepository;
 import com.jinternals.scheduler.common.model.EventStatus;
 import com.jinternals.scheduler.common.repositories.OutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -40,7 +42,6 @@ class ClusterSimulationTest {
         }
 
         List<EventProcessor> processors = new ArrayList<>();
-        ExecutorService nodeExecutor = Executors.newFixedThreadPool(nodes);
 
         PlatformTransactionManager txManager = mock(PlatformTransactionManager.class);
         when(txManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
@@ -54,36 +55,19 @@ class ClusterSimulationTest {
         }
 
         long startTime = System.currentTimeMillis();
-        AtomicInteger activeNodes = new AtomicInteger(nodes);
 
+        // Each node starts a drain loop per partition it was assigned
         for (int i = 0; i < nodes; i++) {
-            final int nodeId = i;
-            final EventProcessor processor = processors.get(i);
-
-            nodeExecutor.submit(() -> {
-                System.out.println("Node " + nodeId + " started.");
-                while (true) {
-                    try {
-                        processor.execute();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
-
-                    long pendingCount = database.values().stream()
-                            .filter(e -> e.getStatus() == EventStatus.PENDING)
-                            .count();
-
-                    if (pendingCount == 0) {
-                        break;
-                    }
-                }
-                System.out.println("Node " + nodeId + " finished.");
-                activeNodes.decrementAndGet();
-            });
+            processors.get(i).onPartitionAdded(i * 2);
+            processors.get(i).onPartitionAdded(i * 2 + 1);
         }
 
-        nodeExecutor.shutdown();
-        nodeExecutor.awaitTermination(60, TimeUnit.SECONDS);
+        long deadline = startTime + 60_000;
+        while (System.currentTimeMillis() < deadline && database.values().stream()
+                .anyMatch(e -> e.getStatus() != EventStatus.PROCESSED)) {
+            Thread.sleep(10);
+        }
+        processors.forEach(EventProcessor::stop);
 
         long endTime = System.currentTimeMillis();
         System.out.println("Processing finished in " + (endTime - startTime) + "ms");
@@ -131,7 +115,7 @@ class ClusterSimulationTest {
         ExecutorService runner = Executors.newSingleThreadExecutor();
         runner.submit(() -> {
             while (true) {
-                processor.execute();
+                processor.drainIfDue(targetPartition);
 
                 try {
                     Thread.sleep(100); // Shorter sleep to speed up test
@@ -195,28 +179,55 @@ class ClusterSimulationTest {
     private EventProcessor createNode(int nodeId, Set<Integer> partitions, PlatformTransactionManager txManager) {
         PartitionManager partitionManager = mock(PartitionManager.class);
         when(partitionManager.getActivePartitions()).thenReturn(partitions);
+        when(partitionManager.startWork(anyInt())).thenReturn(true);
 
         EventRepository eventRepository = mock(EventRepository.class);
 
-        when(eventRepository.findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(
-                anyInt(), eq(EventStatus.PENDING), any()))
+        // Claim is a single UPDATE ... RETURNING: lock, mark IN_PROGRESS and return in one step
+        when(eventRepository.claimDueEvents(anyInt(), anyLong(), any(), any(), any(), anyInt(), any()))
                 .thenAnswer(invocation -> {
                     int pId = invocation.getArgument(0);
-                    return database.values().stream()
-                            .filter(e -> e.getPartitionId() == pId && e.getStatus() == EventStatus.PENDING)
-                            .sorted(Comparator.comparing(Event::getId))
-                            .limit(50)
-                            .collect(Collectors.toList());
+                    LocalDateTime lockedAt = invocation.getArgument(3);
+                    int limit = invocation.getArgument(5);
+                    synchronized (database) {
+                        List<Event> claimed = database.values().stream()
+                                .filter(e -> e.getPartitionId() == pId && e.getStatus() == EventStatus.PENDING)
+                                .sorted(Comparator.comparing(Event::getId))
+                                .limit(limit)
+                                .collect(Collectors.toList());
+                        claimed.forEach(e -> {
+                            e.setStatus(EventStatus.IN_PROGRESS);
+                            e.setLockedAt(lockedAt);
+                        });
+                        return claimed;
+                    }
                 });
 
-        when(eventRepository.saveAll(anyList())).thenAnswer(invocation -> {
-            List<Event> batch = invocation.getArgument(0);
-            for (Event e : batch) {
-                database.put(e.getId(), e);
-            }
-            return batch;
+        when(eventRepository.findNextScheduledTime(anyInt(), eq(EventStatus.PENDING))).thenAnswer(invocation -> {
+            int pId = invocation.getArgument(0);
+            boolean pending = database.values().stream()
+                    .anyMatch(e -> e.getPartitionId() == pId && e.getStatus() == EventStatus.PENDING);
+            return pending ? LocalDateTime.now().minusMinutes(1) : null;
         });
 
+        // Completing a claim only moves the events still IN_PROGRESS
+        when(eventRepository.completeClaim(anyInt(), anyList(), any(), eq(EventStatus.IN_PROGRESS), any()))
+                .thenAnswer(invocation -> {
+                    List<String> ids = invocation.getArgument(1);
+                    EventStatus newStatus = invocation.getArgument(4);
+                    synchronized (database) {
+                        int completed = 0;
+                        for (String id : ids) {
+                            Event e = database.get(id);
+                            if (e != null && e.getStatus() == EventStatus.IN_PROGRESS) {
+                                e.setStatus(newStatus);
+                                completed++;
+                            }
+                        }
+                        return completed;
+                    }
+                });
+
         when(eventRepository.save(any(Event.class))).thenAnswer(invocation -> {
             Event e = invocation.getArgument(0);
             database.put(e.getId(), e);
@@ -228,16 +239,22 @@ class ClusterSimulationTest {
 
         OutboxRepository outboxRepository = mock(OutboxRepository.class);
         ClockService clockService = mock(ClockService.class);
+        when(clockService.getCurrentDateTime()).thenAnswer(invocation -> LocalDateTime.now());
 
         // Mock Outbox Save
-        when(outboxRepository.saveAll(anyList())).thenAnswer(invocation -> {
+        doAnswer(invocation -> {
             List<com.jinternals.scheduler.common.model.OutboxEvent> batch = invocation.getArgument(0);
             for (com.jinternals.scheduler.common.model.OutboxEvent e : batch) {
                 outboxDatabase.put(e.getId(), e);
             }
-            return batch;
-        });
-
-        return new EventProcessor(partitionManager, eventRepository, outboxRepository, txManager, clockService, executor);
+            return null;
+        }).when(outboxRepository).insertAll(anyList());
+
+        return new EventProcessor(partitionManager, eventRepository, outboxRepository, txManager, clockService,
+                mock(OutboxPublisher.class), mock(RecurrenceMaterializer.class),
+                new NamespaceRateLimiter(partitionManager, Map.of(), 6), mock(RetryPolicy.class),
+                new SchedulerMetrics(new SimpleMeterRegistry(), partitionManager, clockService),
+                new ClaimLeases(10000), new DrainLimiter(partitionManager, 0, 0, 6), Optional.empty(),
+                executor, 500, 5000, true);
     }
 }
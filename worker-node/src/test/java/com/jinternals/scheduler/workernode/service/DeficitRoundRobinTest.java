@@ -0,0 +1,46 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DeficitRoundRobinTest {
+
+    private final Map<String, Integer> backlog = new HashMap<>();
+    private final Map<String, Integer> claimed = new HashMap<>();
+
+    @Test
+    void smallNamespacesAreServedDespiteALargeBacklog() {
+        backlog.put("bulk", 1_000_000);
+        backlog.put("small-1", 30);
+        backlog.put("small-2", 70);
+        DeficitRoundRobin roundRobin = new DeficitRoundRobin(Map.of(), 50, 50);
+
+        assertEquals(1000, roundRobin.drain(List.of("bulk", "small-1", "small-2"), 1000, this::claim));
+
+        assertEquals(30, claimed.get("small-1"));
+        assertEquals(70, claimed.get("small-2"));
+        assertEquals(900, claimed.get("bulk"));
+    }
+
+    @Test
+    void backloggedNamespacesShareByWeight() {
+        backlog.put("gold", 1_000_000);
+        backlog.put("bronze", 1_000_000);
+        DeficitRoundRobin roundRobin = new DeficitRoundRobin(Map.of("gold", 3), 50, 50);
+
+        assertEquals(800, roundRobin.drain(List.of("gold", "bronze"), 800, this::claim));
+
+        assertEquals(600, claimed.get("gold"));
+        assertEquals(200, claimed.get("bronze"));
+    }
+
+    private int claim(String namespace, int limit) {
+        int count = Math.min(limit, backlog.get(namespace));
+        backlog.merge(namespace, -count, Integer::sum);
+        claimed.merge(namespace, count, Integer::sum);
+        return count;
+    }
+}
@@ -0,0 +1,227 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventPayloadRepository;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import com.jinternals.scheduler.workernode.config.KafkaPartitionMapping;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.RecordTooLargeException;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaOperations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static com.jinternals.scheduler.workernode.config.KafkaConfig.SCHEDULER_EVENTS_TOPIC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@EmbeddedKafka(partitions = 4, topics = SCHEDULER_EVENTS_TOPIC, brokerProperties = {
+        "transaction.state.log.replication.factor=1", "transaction.state.log.min.isr=1"})
+class DirectDispatcherTest {
+
+    private static final LocalDateTime CLAIMED_AT = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final RetryPolicy retryPolicy = mock(RetryPolicy.class);
+    private DefaultKafkaProducerFactory<String, Object> producerFactory;
+    private DirectDispatcher directDispatcher;
+    private Consumer<String, String> consumer;
+
+    @BeforeEach
+    void setUp(EmbeddedKafkaBroker broker) {
+        when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+
+        Map<String, Object> producerProps = new HashMap<>(KafkaTestUtils.producerProps(broker));
+        producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        producerFactory = new DefaultKafkaProducerFactory<>(producerProps);
+        producerFactory.setTransactionIdPrefix("direct-dispatcher-test-");
+        directDispatcher = new DirectDispatcher(eventRepository, new KafkaTemplate<>(producerFactory),
+                new KafkaPartitionMapping(2, 4), new OffloadedPayloads(mock(EventPayloadRepository.class)),
+                mock(RecurrenceMaterializer.class), retryPolicy,
+                new SchedulerMetrics(new SimpleMeterRegistry(), new PartitionManager(), new ClockService()),
+                transactionManager);
+
+        Map<String, Object> consumerProps = KafkaTestUtils.consumerProps(broker, "direct-dispatcher-test", false);
+        consumerProps.put(ConsumerConfig.ISOLATION_LEVEL_CONFIG, "read_committed");
+        consumer = new DefaultKafkaConsumerFactory<>(consumerProps, new StringDeserializer(), new StringDeserializer())
+                .createConsumer();
+        broker.consumeFromAnEmbeddedTopic(consumer, SCHEDULER_EVENTS_TOPIC);
+    }
+
+    @AfterEach
+    void tearDown() {
+        consumer.close();
+        producerFactory.destroy();
+    }
+
+    @Test
+    void producesOnlyBatchesWhoseClaimStillHolds() {
+        List<Event> lost = List.of(event("lost-1"), event("lost-2"));
+        List<Event> owned = List.of(event("owned-1"), event("owned-2"));
+        // The stuck event reaper handed lost-2 out again, so only one of the lost batch is still ours
+        when(eventRepository.completeClaim(eq(1), eq(List.of("lost-1", "lost-2")), eq(CLAIMED_AT),
+                eq(EventStatus.IN_PROGRESS), eq(EventStatus.PROCESSED))).thenReturn(1);
+        when(eventRepository.completeClaim(eq(1), eq(List.of("owned-1", "owned-2")), eq(CLAIMED_AT),
+                eq(EventStatus.IN_PROGRESS), eq(EventStatus.PROCESSED))).thenReturn(2);
+
+        assertEquals(0, directDispatcher.dispatch(1, lost));
+        assertEquals(2, directDispatcher.dispatch(1, owned));
+
+        List<String> keys = new ArrayList<>();
+        while (keys.size() < 2) {
+            for (ConsumerRecord<String, String> record : KafkaTestUtils.getRecords(consumer, Duration.ofSeconds(10))) {
+                keys.add(record.key());
+                // Partition 1 of 2 owns topic partitions 2 and 3
+                assertTrue(record.partition() == 2 || record.partition() == 3);
+            }
+        }
+        keys.sort(null);
+        assertEquals(List.of("owned-1", "owned-2"), keys);
+        verify(eventRepository).releaseClaim(1, List.of("lost-1", "lost-2"), CLAIMED_AT,
+                EventStatus.IN_PROGRESS, EventStatus.PENDING);
+        verify(eventRepository, never()).releaseClaim(eq(1), eq(List.of("owned-1", "owned-2")), any(), any(), any());
+    }
+
+    @Test
+    void postponesABatchTheBrokerFailedWithoutCountingAnAttempt() {
+        KafkaTemplate<String, Object> kafkaTemplate = mockKafkaTemplate();
+        TimeoutException timeout = new TimeoutException("Expiring 2 record(s)");
+        when(kafkaTemplate.executeInTransaction(any())).thenThrow(timeout);
+        List<Event> events = List.of(event("a"), event("b"));
+        givenClaimsHold();
+
+        assertEquals(0, dispatcherWith(kafkaTemplate).dispatch(1, events));
+
+        verify(retryPolicy).postpone(1, events, timeout);
+        verify(retryPolicy, never()).recordFailure(anyInt(), any(), any());
+    }
+
+    @Test
+    void countsAFailureOnlyAgainstTheEventThatCannotBeSerialized() {
+        KafkaTemplate<String, Object> kafkaTemplate = mockKafkaTemplate();
+        KafkaOperations<String, Object> operations = givenOperations(kafkaTemplate);
+        SerializationException unserializable = new SerializationException("Can't serialize poison");
+        when(operations.send(anyString(), anyInt(), eq("poison"), any())).thenThrow(unserializable);
+        Event poison = event("poison");
+        givenClaimsHold();
+
+        assertEquals(2, dispatcherWith(kafkaTemplate).dispatch(1, List.of(event("a"), poison, event("b"))));
+
+        // The batch, then each of its events on its own
+        verify(kafkaTemplate, times(4)).executeInTransaction(any());
+        verify(retryPolicy).recordFailure(1, poison, unserializable);
+        verify(retryPolicy, never()).postpone(anyInt(), anyList(), any());
+    }
+
+    @Test
+    void postponesTheRestOnceTheBrokerFailsWhileProducingOneByOne() {
+        KafkaTemplate<String, Object> kafkaTemplate = mockKafkaTemplate();
+        KafkaOperations<String, Object> operations = givenOperations(kafkaTemplate);
+        when(operations.send(anyString(), anyInt(), eq("poison"), any()))
+                .thenThrow(new SerializationException("Can't serialize poison"));
+        TimeoutException timeout = new TimeoutException("Expiring 1 record(s)");
+        when(operations.send(anyString(), anyInt(), eq("b"), any())).thenThrow(timeout);
+        Event b = event("b");
+        Event c = event("c");
+        givenClaimsHold();
+
+        assertEquals(1, dispatcherWith(kafkaTemplate).dispatch(1, List.of(event("a"), event("poison"), b, c)));
+
+        verify(retryPolicy).recordFailure(eq(1), any(), any(SerializationException.class));
+        verify(retryPolicy).postpone(1, List.of(b, c), timeout);
+        // c is not tried against the unavailable broker
+        verify(operations, never()).send(anyString(), anyInt(), eq("c"), any());
+    }
+
+    @Test
+    void skipsAnEventWhosePayloadWasRemoved() {
+        KafkaTemplate<String, Object> kafkaTemplate = mockKafkaTemplate();
+        KafkaOperations<String, Object> operations = givenOperations(kafkaTemplate);
+        Event removed = event("removed");
+        removed.setPayload(null);
+        removed.setPayloadRef("removed");
+        givenClaimsHold();
+
+        assertEquals(2, dispatcherWith(kafkaTemplate).dispatch(1, List.of(event("a"), removed)));
+
+        verify(operations).send(anyString(), anyInt(), eq("a"), eq("payload-a"));
+        verify(operations, never()).send(anyString(), anyInt(), eq("removed"), any());
+        verify(operations, never()).send(any(ProducerRecord.class));
+    }
+
+    @Test
+    void tellsEventFailuresFromBrokerAndDatabaseFailures() {
+        assertTrue(DirectDispatcher.isEventFailure(new SerializationException("bad record")));
+        assertTrue(DirectDispatcher.isEventFailure(
+                new org.springframework.kafka.KafkaException("Send failed", new RecordTooLargeException("too big"))));
+        assertTrue(DirectDispatcher.isEventFailure(new IllegalArgumentException("bad cron")));
+        assertFalse(DirectDispatcher.isEventFailure(new TimeoutException("Expiring 1 record(s)")));
+        assertFalse(DirectDispatcher.isEventFailure(
+                new org.springframework.kafka.KafkaException("Send failed", new IllegalStateException())));
+        assertFalse(DirectDispatcher.isEventFailure(new QueryTimeoutException("canceling statement")));
+    }
+
+    private void givenClaimsHold() {
+        when(eventRepository.completeClaim(eq(1), anyList(), eq(CLAIMED_AT), eq(EventStatus.IN_PROGRESS),
+                eq(EventStatus.PROCESSED))).thenAnswer(invocation -> invocation.<List<?>>getArgument(1).size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static KafkaTemplate<String, Object> mockKafkaTemplate() {
+        return mock(KafkaTemplate.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static KafkaOperations<String, Object> givenOperations(KafkaTemplate<String, Object> kafkaTemplate) {
+        KafkaOperations<String, Object> operations = mock(KafkaOperations.class);
+        when(kafkaTemplate.executeInTransaction(any())).thenAnswer(invocation -> invocation
+                .<KafkaOperations.OperationsCallback<String, Object, Object>>getArgument(0)
+                .doInOperations(operations));
+        return operations;
+    }
+
+    private DirectDispatcher dispatcherWith(KafkaTemplate<String, Object> kafkaTemplate) {
+        return new DirectDispatcher(eventRepository, kafkaTemplate, new KafkaPartitionMapping(2, 4),
+                new OffloadedPayloads(mock(EventPayloadRepository.class)), mock(RecurrenceMaterializer.class),
+                retryPolicy, new SchedulerMetrics(new SimpleMeterRegistry(), new PartitionManager(),
+                new ClockService()), transactionManager);
+    }
+
+    private static Event event(String id) {
+        Event event = new Event();
+        event.setId(id);
+        event.setPartitionId(1);
+        event.setPayload("payload-" + id);
+        event.setStatus(EventStatus.IN_PROGRESS);
+        event.setLockedAt(CLAIMED_AT);
+        return event;
+    }
+}
@@ -0,0 +1,62 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DrainLimiterTest {
+
+    private final PartitionManager partitionManager = new PartitionManager();
+
+    @Test
+    void workerRunsItsShareOfTheClusterCap() {
+        DrainLimiter limiter = new DrainLimiter(partitionManager, 8, 0, 6);
+        // Owning nothing yet still allows one drain
+        assertEquals(1, limiter.permits());
+
+        // Partitions 0 and 1 carry the 2 permits left over from 8 / 6
+        partitionManager.addPartition(0, 1);
+        partitionManager.addPartition(1, 1);
+        partitionManager.addPartition(2, 1);
+        assertEquals(5, limiter.permits());
+        assertEquals(Integer.MAX_VALUE, limiter.dispatchPermits());
+        assertEquals(Integer.MAX_VALUE, new DrainLimiter(partitionManager, 0, 0, 6).permits());
+    }
+
+    @Test
+    void sharesAddUpToTheCap() {
+        PartitionManager other = new PartitionManager();
+        for (int partition = 0; partition < 7; partition++) {
+            (partition % 2 == 0 ? partitionManager : other).addPartition(partition, 1);
+        }
+
+        assertEquals(10, new DrainLimiter(partitionManager, 10, 0, 7).permits()
+                + new DrainLimiter(other, 10, 0, 7).permits());
+    }
+
+    @Test
+    void drainWaitsForAPermit() throws Exception {
+        DrainLimiter limiter = new DrainLimiter(partitionManager, 1, 1, 6);
+        limiter.acquire();
+
+        CompletableFuture<Void> next = CompletableFuture.runAsync(() -> {
+            try {
+                limiter.acquire();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(next.isDone());
+
+        // Wheel dispatches do not compete with drains
+        limiter.acquireDispatch();
+        limiter.releaseDispatch();
+
+        limiter.release();
+        next.get(5, TimeUnit.SECONDS);
+    }
+}
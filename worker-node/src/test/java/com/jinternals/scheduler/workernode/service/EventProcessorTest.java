@@ -3,21 +3,29 @@ package com.jinternals.scheduler.workernode.service;
 import com.jinternals.scheduler.common.model.Event;
 import com.jinternals.scheduler.common.repositories.EventRepository;
 import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.model.EventTrigger;
+import com.jinternals.scheduler.common.model.OutboxEvent;
 import com.jinternals.scheduler.common.repositories.OutboxRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.transaction.TransactionStatus;
 
+import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.Executor;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 class EventProcessorTest {
@@ -40,6 +48,17 @@ class EventProcessorTest {
         @Mock
         private OutboxRepository outboxRepository;
 
+        @Mock
+        private OutboxPublisher outboxPublisher;
+
+        @Mock
+        private RecurrenceMaterializer recurrenceMaterializer;
+
+        @Mock
+        private RetryPolicy retryPolicy;
+
+        private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
         private EventProcessor eventProcessor;
 
         @BeforeEach
@@ -49,9 +68,28 @@ class EventProcessorTest {
                         ((Runnable) invocation.getArgument(0)).run();
                         return null;
                 }).when(eventTaskExecutor).execute(any(Runnable.class));
+                when(clockService.getCurrentDateTime()).thenAnswer(invocation -> LocalDateTime.now());
+                when(partitionManager.startWork(anyInt())).thenReturn(true);
+                when(eventRepository.completeClaim(anyInt(), anyList(), any(), eq(EventStatus.IN_PROGRESS),
+                                eq(EventStatus.PROCESSED))).thenAnswer(invocation -> invocation.<List<?>>getArgument(1).size());
+                // Every partition has overdue work, so each poll goes on to claim
+                when(eventRepository.findNextScheduledTime(anyInt(), eq(EventStatus.PENDING)))
+                                .thenAnswer(invocation -> LocalDateTime.now().minusSeconds(1));
+
+                eventProcessor = newEventProcessor(true);
+        }
+
+        private EventProcessor newEventProcessor(boolean notifyEnabled) {
+                return newEventProcessor(new NamespaceRateLimiter(partitionManager, Map.of(), 6), notifyEnabled);
+        }
 
-                eventProcessor = new EventProcessor(partitionManager, eventRepository, outboxRepository,
-                                transactionManager, clockService, eventTaskExecutor);
+        private EventProcessor newEventProcessor(NamespaceRateLimiter rateLimiter, boolean notifyEnabled) {
+                return new EventProcessor(partitionManager, eventRepository, outboxRepository,
+                                transactionManager, clockService, outboxPublisher, recurrenceMaterializer,
+                                rateLimiter, retryPolicy,
+                                new SchedulerMetrics(meterRegistry, partitionManager, clockService), new ClaimLeases(10000),
+                                new DrainLimiter(partitionManager, 0, 0, 6), Optional.empty(), eventTaskExecutor, 500, 5000,
+                                notifyEnabled);
         }
 
         @Test
@@ -66,50 +104,299 @@ class EventProcessorTest {
                 Event e2 = createEvent(2, 1);
                 Event e3 = createEvent(2, 2);
 
-                when(eventRepository.findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(
-                                eq(1),
-                                eq(EventStatus.PENDING), any()))
+                when(eventRepository.claimDueEvents(eq(1), anyLong(), any(), any(), any(), anyInt(), any()))
                                 .thenReturn(Collections.singletonList(e1)) // 1st call
                                 .thenReturn(Collections.emptyList()); // 2nd call
 
-                when(eventRepository.findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(
-                                eq(2),
-                                eq(EventStatus.PENDING), any()))
+                when(eventRepository.claimDueEvents(eq(2), anyLong(), any(), any(), any(), anyInt(), any()))
                                 .thenReturn(Collections.singletonList(e2)) // 1st call
                                 .thenReturn(Collections.singletonList(e3)) // 2nd call
                                 .thenReturn(Collections.emptyList()); // 3rd call
 
-                when(eventRepository.findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(
-                                eq(3),
-                                eq(EventStatus.PENDING), any()))
+                when(eventRepository.claimDueEvents(eq(3), anyLong(), any(), any(), any(), anyInt(), any()))
                                 .thenReturn(Collections.emptyList()); // 1st call
 
-                // Mock saveAll to return the list passed to it (fluent-like)
-                when(eventRepository.saveAll(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
-
-                eventProcessor.execute();
+                activePartitions.forEach(eventProcessor::drainIfDue);
 
                 verify(eventRepository, times(2))
-                                .findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(eq(1),
-                                                eq(EventStatus.PENDING), any());
+                                .claimDueEvents(eq(1), anyLong(), any(), any(), any(), anyInt(), any());
                 verify(eventRepository, times(3))
-                                .findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(eq(2),
-                                                eq(EventStatus.PENDING), any());
+                                .claimDueEvents(eq(2), anyLong(), any(), any(), any(), anyInt(), any());
                 verify(eventRepository, times(1))
-                                .findTop50ByPartitionIdAndStatusAndScheduledTimeLessThanEqualOrderByScheduledTime(eq(3),
-                                                eq(EventStatus.PENDING), any());
-
-                // We expect 3 successful batches:
-                // 1. Partition 1 (1 event) -> Save IN_PROGRESS -> Save PROCESSED
-                // 2. Partition 2 (1 event) -> Save IN_PROGRESS -> Save PROCESSED
-                // 3. Partition 2 (1 event) -> Save IN_PROGRESS -> Save PROCESSED
-                // Total = 6 calls to saveAll
-                verify(eventRepository, times(6)).saveAll(anyList());
+                                .claimDueEvents(eq(3), anyLong(), any(), any(), any(), anyInt(), any());
+
+                // We expect 3 successful batches, each claimed IN_PROGRESS by a single statement:
+                // 1. Partition 1 (1 event) -> Complete claim as PROCESSED
+                // 2. Partition 2 (1 event) -> Complete claim as PROCESSED
+                // 3. Partition 2 (1 event) -> Complete claim as PROCESSED
+                // Total = 3 calls to completeClaim
+                verify(eventRepository, times(3)).completeClaim(anyInt(), anyList(), any(), any(), any());
+                verify(eventRepository, never()).saveAll(anyList());
                 verify(eventRepository, never()).save(any(Event.class));
+                verify(outboxPublisher, times(1)).wakeUp(1);
+                verify(outboxPublisher, times(2)).wakeUp(2);
 
                 assertEquals(EventStatus.PROCESSED, e1.getStatus());
                 assertEquals(EventStatus.PROCESSED, e2.getStatus());
                 assertEquals(EventStatus.PROCESSED, e3.getStatus());
+
+                assertEquals(6, meterRegistry.get("scheduler.claim.size").tag("source", "poll").summary().count());
+                assertEquals(3, meterRegistry.get("scheduler.claim.size").tag("source", "poll").summary().totalAmount());
+                assertEquals(3, meterRegistry.get("scheduler.dispatch.lag").timer().count());
+        }
+
+        @Test
+        void testExecute_PoisonEventDoesNotRollBackItsBatch() {
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+                when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+
+                Event healthy1 = createEvent(1, 1);
+                Event poison = createEvent(1, 2);
+                Event healthy2 = createEvent(1, 3);
+                when(eventRepository.claimDueEvents(eq(1), anyLong(), any(), any(), any(), anyInt(), any()))
+                                .thenReturn(List.of(healthy1, poison, healthy2))
+                                .thenReturn(Collections.emptyList());
+                RuntimeException failure = new RuntimeException("unserializable payload");
+                doAnswer(invocation -> {
+                        List<OutboxEvent> batch = invocation.getArgument(0);
+                        if (batch.stream().anyMatch(outboxEvent -> outboxEvent.getAggregateId().equals(poison.getId()))) {
+                                throw failure;
+                        }
+                        return null;
+                }).when(outboxRepository).insertAll(anyList());
+
+                eventProcessor.drainIfDue(1);
+
+                // The batch, then each of its events on its own
+                verify(outboxRepository, times(4)).insertAll(anyList());
+                verify(retryPolicy).recordFailure(1, poison, failure);
+                verify(retryPolicy, never()).recordFailure(anyInt(), eq(healthy1), any());
+                verify(retryPolicy, never()).recordFailure(anyInt(), eq(healthy2), any());
+                assertEquals(EventStatus.PROCESSED, healthy1.getStatus());
+                assertEquals(EventStatus.IN_PROGRESS, poison.getStatus());
+                assertEquals(EventStatus.PROCESSED, healthy2.getStatus());
+        }
+
+        @Test
+        void testExecute_FusedDispatch() {
+                ReflectionTestUtils.setField(eventProcessor, "dispatchMode", DispatchMode.FUSED);
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+                when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+
+                when(eventRepository.enqueueDueEvents(eq(1), anyLong(), any(), anyInt(), any()))
+                                .thenReturn(events(50))
+                                .thenReturn(events(7))
+                                .thenReturn(List.of());
+
+                eventProcessor.drainIfDue(1);
+
+                // Drains until a claim comes back empty, without any IN_PROGRESS round trip
+                verify(eventRepository, times(3)).enqueueDueEvents(eq(1), anyLong(), any(), anyInt(), any());
+                verify(eventRepository, never()).claimDueEvents(anyInt(), anyLong(), any(), any(), any(), anyInt(), any());
+                verify(eventRepository, never()).saveAll(anyList());
+                verify(outboxRepository, never()).insertAll(anyList());
+                verify(recurrenceMaterializer, times(3)).materializeNext(anyList());
+        }
+
+        @Test
+        void testExecute_ThrottledNamespaceClaimsOnlyItsTokens() {
+                NamespaceRateLimiter rateLimiter = mock(NamespaceRateLimiter.class);
+                when(rateLimiter.isEnabled()).thenReturn(true);
+                when(rateLimiter.isLimited("bulk")).thenReturn(true);
+                when(rateLimiter.limitedNamespaces()).thenReturn(new String[]{"bulk"});
+                // The bucket holds 10 tokens, then runs dry
+                when(rateLimiter.acquire(eq("bulk"), anyInt())).thenReturn(10).thenReturn(0);
+                when(rateLimiter.acquire(isNull(), anyInt())).thenAnswer(invocation -> invocation.getArgument(1));
+                EventProcessor throttled = newEventProcessor(rateLimiter, true);
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+                when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+                when(eventRepository.findPendingNamespaces(1)).thenReturn(List.of("bulk"));
+                when(eventRepository.claimDueEventsInNamespace(eq(1), anyLong(), eq("bulk"), any(), any(), any(),
+                                anyInt())).thenReturn(claimed(1, 4));
+                when(eventRepository.claimDueEvents(eq(1), anyLong(), any(), any(), any(), anyInt(), any()))
+                                .thenAnswer(invocation -> claimed(1, 3));
+
+                throttled.drainIfDue(1);
+
+                // The namespace's claim is sized by its tokens, and the unused ones go back to the bucket
+                verify(eventRepository).claimDueEventsInNamespace(eq(1), anyLong(), eq("bulk"), any(), any(), any(),
+                                eq(10));
+                verify(rateLimiter).release("bulk", 6);
+                // Every other claim leaves the limited namespace alone
+                verify(eventRepository).claimDueEvents(eq(1), anyLong(), any(), any(), any(), eq(50),
+                                aryEq(new String[]{"bulk"}));
+
+                throttled.drainIfDue(1);
+
+                // Out of tokens: the namespace is not claimed from at all until the bucket refills
+                verify(eventRepository, times(1)).claimDueEventsInNamespace(anyInt(), anyLong(), any(), any(), any(),
+                                any(), anyInt());
+                verify(eventRepository, times(2)).claimDueEvents(eq(1), anyLong(), any(), any(), any(), eq(50),
+                                aryEq(new String[]{"bulk"}));
+        }
+
+        @Test
+        void testExecute_CatchAllLaneLeavesNamespacesWithALaneAlone() {
+                ReflectionTestUtils.setField(eventProcessor, "fairnessEnabled", true);
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+                when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+                when(eventRepository.findPendingNamespaces(1)).thenReturn(List.of("archive", "billing"));
+                // The archive backlog is older than anything else, so it would come first in time order
+                when(eventRepository.claimDueEventsInNamespace(eq(1), anyLong(), eq("archive"), any(), any(), any(),
+                                anyInt())).thenAnswer(invocation -> claimed(1, invocation.getArgument(6)));
+                when(eventRepository.claimDueEventsInNamespace(eq(1), anyLong(), eq("billing"), any(), any(), any(),
+                                anyInt())).thenReturn(claimed(1, 5));
+                List<Set<String>> catchAllExclusions = new ArrayList<>();
+                when(eventRepository.claimDueEvents(eq(1), anyLong(), any(), any(), any(), anyInt(), any()))
+                                .thenAnswer(invocation -> {
+                                        Set<String> excluded = Set.of(invocation.<String[]>getArgument(6));
+                                        catchAllExclusions.add(excluded);
+                                        return excluded.contains("archive") ? List.of() : claimed(1, 50);
+                                });
+
+                eventProcessor.drainIfDue(1);
+
+                // The archive lane gets its share, and the catch-all lane claims nothing of it on top
+                assertEquals(List.of(Set.of("archive", "billing")), catchAllExclusions);
+                verify(eventRepository).claimDueEventsInNamespace(eq(1), anyLong(), eq("billing"), any(), any(),
+                                any(), eq(50));
+        }
+
+        @Test
+        void testExecute_FusedCatchAllLaneLeavesNamespacesWithALaneAlone() {
+                ReflectionTestUtils.setField(eventProcessor, "fairnessEnabled", true);
+                ReflectionTestUtils.setField(eventProcessor, "dispatchMode", DispatchMode.FUSED);
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+                when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+                when(eventRepository.findPendingNamespaces(1)).thenReturn(List.of("archive"));
+                when(eventRepository.enqueueDueEventsInNamespace(eq(1), anyLong(), eq("archive"), any(), anyInt()))
+                                .thenReturn(events(3));
+                when(eventRepository.enqueueDueEvents(eq(1), anyLong(), any(), anyInt(), any())).thenReturn(List.of());
+
+                eventProcessor.drainIfDue(1);
+
+                verify(eventRepository).enqueueDueEvents(eq(1), anyLong(), any(), eq(50),
+                                aryEq(new String[]{"archive"}));
+        }
+
+        @Test
+        void testStart_FailsInDirectModeWithoutDirectDispatcher() {
+                ReflectionTestUtils.setField(eventProcessor, "dispatchMode", DispatchMode.DIRECT);
+
+                assertThrows(IllegalStateException.class, eventProcessor::start);
+                verify(partitionManager, never()).addListener(any());
+        }
+
+        private static List<Event> events(int count) {
+                List<Event> events = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                        Event event = new Event();
+                        event.setId("event-" + i);
+                        event.setStatus(EventStatus.PROCESSED);
+                        events.add(event);
+                }
+                return events;
+        }
+
+        @Test
+        void testExecute_SkipsClaimWhenNothingIsDue() {
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1, 2));
+                when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+                when(eventRepository.findNextScheduledTime(1, EventStatus.PENDING)).thenReturn(null);
+                when(eventRepository.findNextScheduledTime(2, EventStatus.PENDING))
+                                .thenReturn(LocalDateTime.now().plusMinutes(10));
+
+                Set.of(1, 2).forEach(eventProcessor::drainIfDue);
+                // Both partitions are now sleeping: an empty one backs off, a future one waits for its due time
+                Set.of(1, 2).forEach(eventProcessor::drainIfDue);
+
+                verify(eventRepository, times(1)).findNextScheduledTime(1, EventStatus.PENDING);
+                verify(eventRepository, times(1)).findNextScheduledTime(2, EventStatus.PENDING);
+                verify(eventRepository, never()).claimDueEvents(anyInt(), anyLong(), any(), any(), any(), anyInt(), any());
+        }
+
+        @Test
+        void testExecute_PollsEverySecondWithoutNotifications() {
+                LocalDateTime start = LocalDateTime.now();
+                List<LocalDateTime> clock = new ArrayList<>(List.of(start));
+                when(clockService.getCurrentDateTime()).thenAnswer(invocation -> clock.getLast());
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+                // Due inside the prefetched window, which is only reloaded once half of it has elapsed
+                when(eventRepository.findNextScheduledTime(1, EventStatus.PENDING)).thenReturn(start.plusSeconds(30));
+                EventProcessor unnotified = newEventProcessor(false);
+
+                eventProcessor.drainIfDue(1);
+                unnotified.drainIfDue(1);
+                clock.add(start.plusNanos(1_001_000_000));
+                eventProcessor.drainIfDue(1);
+                unnotified.drainIfDue(1);
+
+                // An event scheduled into the window meanwhile is only found by the next poll
+                verify(eventRepository, times(3)).findNextScheduledTime(1, EventStatus.PENDING);
+        }
+
+        @Test
+        void testExecute_RefillsADenseWindowOncePerHorizonAdvance() {
+                LocalDateTime start = LocalDateTime.now();
+                List<LocalDateTime> clock = new ArrayList<>(List.of(start));
+                when(clockService.getCurrentDateTime()).thenAnswer(invocation -> clock.getLast());
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+                ReflectionTestUtils.setField(eventProcessor, "prefetchLimit", 2);
+                when(eventRepository.findNextScheduledTime(1, EventStatus.PENDING))
+                                .thenAnswer(invocation -> clock.getLast().plusSeconds(10));
+                // Every refill hits the prefetch limit: each one loads the next two events, a second apart
+                when(eventRepository.findTriggers(eq(1), eq(EventStatus.PENDING), any(), any(), any()))
+                                .thenAnswer(invocation -> {
+                                        LocalDateTime from = invocation.getArgument(2);
+                                        return List.of(new EventTrigger("a", from.plusSeconds(10)),
+                                                        new EventTrigger("b", from.plusSeconds(11)));
+                                });
+
+                eventProcessor.drainIfDue(1);
+                // The truncated window is not refilled again until the wheel has nearly caught up with it
+                clock.add(start.plusSeconds(5));
+                eventProcessor.drainIfDue(1);
+                verify(eventRepository, times(1)).findTriggers(anyInt(), any(), any(), any(), any());
+
+                clock.add(start.plusSeconds(11));
+                eventProcessor.drainIfDue(1);
+                eventProcessor.drainIfDue(1);
+
+                verify(eventRepository, times(2)).findTriggers(anyInt(), any(), any(), any(), any());
+                verify(eventRepository).findTriggers(eq(1), eq(EventStatus.PENDING), eq(start.plusSeconds(11)), any(),
+                                any());
+                eventProcessor.stop();
+        }
+
+        @Test
+        void testWarmStart_DispatchesStandbyWindowWithoutWaitingForItsPollDeadline() {
+                when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+                when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+                when(eventRepository.claimDueEvents(eq(1), anyLong(), any(), any(), any(), anyInt(), any()))
+                                .thenReturn(Collections.emptyList());
+                eventProcessor.onPartitionAdded(1);
+                verify(eventRepository, timeout(1000)).claimDueEvents(eq(1), anyLong(), any(), any(), any(), anyInt(), any());
+                // The partition has nothing left and backs off
+                LocalDateTime now = LocalDateTime.now();
+
+                eventProcessor.warmStart(1, List.of(new EventTrigger("1001", now.minusNanos(1_000_000))),
+                                now.plusSeconds(10));
+
+                // The drain loop is woken up at once, and the wheel fires the prefetched id; a claim by id only
+                // dispatches it if the previous master has not
+                verify(eventRepository, timeout(200).times(2))
+                                .claimDueEvents(eq(1), anyLong(), any(), any(), any(), anyInt(), any());
+                verify(eventRepository, timeout(1000)).claimDueEventsById(eq(1), anyLong(), eq(List.of("1001")), any(),
+                                any(), any(), any());
+                eventProcessor.stop();
+        }
+
+        private List<Event> claimed(int partitionId, int count) {
+                List<Event> events = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                        events.add(createEvent(partitionId, i));
+                }
+                return events;
         }
 
         private Event createEvent(int partitionId, long idSuffix) {
@@ -117,6 +404,8 @@ class EventProcessorTest {
                 event.setId(String.valueOf((long) partitionId * 1000 + idSuffix));
                 event.setEventName("TestEvent");
                 event.setPartitionId(partitionId);
+                event.setScheduledTime(LocalDateTime.now().minusSeconds(1));
+                event.setLockedAt(LocalDateTime.now());
                 event.setStatus(EventStatus.PENDING);
                 return event;
         }
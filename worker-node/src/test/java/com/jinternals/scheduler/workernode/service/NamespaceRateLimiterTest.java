@@ -0,0 +1,42 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class NamespaceRateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void grantsPartialBatchesAtTheWorkersShareOfTheQuota() {
+        NamespaceRateLimiter.TokenBucket bucket = new NamespaceRateLimiter.TokenBucket();
+        // Owning 3 of 6 partitions of a 100 events/s namespace
+        double share = 50;
+
+        assertEquals(0, bucket.acquire(50, share, 0));
+        assertEquals(25, bucket.acquire(50, share, SECOND / 2));
+        assertEquals(0, bucket.acquire(50, share, SECOND / 2));
+        // Idle time only adds up to one second worth of tokens
+        assertEquals(50, bucket.acquire(500, share, 10 * SECOND));
+    }
+
+    @Test
+    void leavesNamespacesWithoutQuotaAlone() {
+        PartitionManager partitionManager = mock(PartitionManager.class);
+        when(partitionManager.getActivePartitions()).thenReturn(Set.of(0, 1, 2));
+        NamespaceRateLimiter rateLimiter = new NamespaceRateLimiter(partitionManager, Map.of("bulk", 100), 6);
+
+        assertTrue(rateLimiter.isEnabled());
+        assertArrayEquals(new String[]{"bulk"}, rateLimiter.limitedNamespaces());
+        assertTrue(rateLimiter.isLimited("bulk"));
+        assertFalse(rateLimiter.isLimited(null));
+        assertEquals(500, rateLimiter.acquire("other", 500));
+        assertEquals(500, rateLimiter.acquire(null, 500));
+    }
+}
@@ -0,0 +1,161 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.Payloads;
+import com.jinternals.scheduler.common.model.EventPayload;
+import com.jinternals.scheduler.common.model.OutboxEvent;
+import com.jinternals.scheduler.common.repositories.EventPayloadRepository;
+import com.jinternals.scheduler.common.repositories.OutboxRepository;
+import com.jinternals.scheduler.workernode.config.KafkaPartitionMapping;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxPublisherTest {
+
+    private static final LocalDateTime CREATED_AT = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    @Mock
+    private PartitionManager partitionManager;
+
+    @Mock
+    private OutboxRepository outboxRepository;
+
+    @Mock
+    private KafkaTemplate<String, Object> kafkaTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EventPayloadRepository eventPayloadRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<Collection<String>> deleted = new ArrayList<>();
+    private OutboxPublisher outboxPublisher;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+        when(partitionManager.startWork(anyInt())).thenReturn(true);
+        when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+        when(outboxRepository.deleteByIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            deleted.add(List.copyOf(ids));
+            return ids.size();
+        });
+        when(kafkaTemplate.send(anyString(), anyInt(), anyString(), any()))
+                .thenAnswer(i -> CompletableFuture.completedFuture(mock(SendResult.class)));
+
+        outboxPublisher = new OutboxPublisher(partitionManager, outboxRepository, kafkaTemplate,
+                new KafkaPartitionMapping(6, 12), new OffloadedPayloads(eventPayloadRepository), transactionManager,
+                new SchedulerMetrics(meterRegistry, partitionManager, new ClockService()),
+                new DrainLimiter(partitionManager, 0, 0, 6), 100, 30000);
+    }
+
+    @Test
+    void deletesOnlyTheAcknowledgedPrefixOfAFailedBatch() {
+        when(outboxRepository.findOldest(eq(1), any())).thenReturn(events(0, 4));
+        when(kafkaTemplate.send(anyString(), anyInt(), eq("event-1"), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+
+        outboxPublisher.drainIfDue(1);
+
+        // event-2 and event-3 were acknowledged, but must not overtake the retry of event-1
+        assertEquals(List.of(List.of("outbox-0")), deleted);
+        assertEquals(1, outboxPublisher.getStats().publishedTotal());
+        assertEquals(3, outboxPublisher.getStats().failedTotal());
+        verify(outboxRepository, never()).findOldestAfter(anyInt(), any(), anyString(), any());
+    }
+
+    @Test
+    void pipelinesFullBatchesWithOneDeletePerBatch() {
+        List<OutboxEvent> first = events(0, 500);
+        when(outboxRepository.findOldest(eq(1), any())).thenReturn(first);
+        when(outboxRepository.findOldestAfter(eq(1), eq(CREATED_AT), eq("outbox-499"), any()))
+                .thenReturn(events(500, 502));
+
+        outboxPublisher.drainIfDue(1);
+
+        assertEquals(2, deleted.size());
+        assertEquals(500, deleted.get(0).size());
+        assertEquals(List.of("outbox-500", "outbox-501"), deleted.get(1));
+        assertEquals(502, outboxPublisher.getStats().publishedTotal());
+        assertEquals(Map.of(1, 0L), outboxPublisher.getStats().backlog());
+        assertEquals(502, meterRegistry.get("scheduler.outbox.published").functionCounter().count());
+        assertEquals(0, meterRegistry.get("scheduler.outbox.backlog").tag("partition", "1").gauge().value());
+        // Partition 1 of 6 owns topic partitions 2 and 3
+        verify(kafkaTemplate, times(502)).send(anyString(), intThat(p -> p == 2 || p == 3), anyString(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void publishesOffloadedPayloadsAsStored() {
+        byte[] compressed = {40, -75, 47, -3, 1, 2, 3};
+        List<OutboxEvent> batch = events(0, 2);
+        batch.get(1).setPayload(null);
+        batch.get(1).setPayloadRef("event-1");
+        when(outboxRepository.findOldest(eq(1), any())).thenReturn(batch);
+        when(eventPayloadRepository.findAllById(Set.of("event-1")))
+                .thenReturn(List.of(new EventPayload("event-1", Payloads.ZSTD, compressed)));
+        ArgumentCaptor<ProducerRecord<String, Object>> record = ArgumentCaptor.forClass(ProducerRecord.class);
+        when(kafkaTemplate.send(record.capture()))
+                .thenAnswer(i -> CompletableFuture.completedFuture(mock(SendResult.class)));
+
+        outboxPublisher.drainIfDue(1);
+
+        verify(kafkaTemplate).send(anyString(), anyInt(), eq("event-0"), eq("payload-0"));
+        assertEquals("event-1", record.getValue().key());
+        assertArrayEquals(compressed, (byte[]) record.getValue().value());
+        assertArrayEquals(Payloads.ZSTD.getBytes(),
+                record.getValue().headers().lastHeader(Payloads.CONTENT_ENCODING_HEADER).value());
+        assertEquals(List.of(List.of("outbox-0", "outbox-1")), deleted);
+    }
+
+    @Test
+    void dropsTheRowsOfEventsWhosePayloadWasRemoved() {
+        List<OutboxEvent> batch = events(0, 3);
+        batch.get(1).setPayload(null);
+        batch.get(1).setPayloadRef("event-1");
+        when(outboxRepository.findOldest(eq(1), any())).thenReturn(batch);
+        when(eventPayloadRepository.findAllById(Set.of("event-1"))).thenReturn(List.of());
+
+        outboxPublisher.drainIfDue(1);
+
+        verify(kafkaTemplate, never()).send(any(ProducerRecord.class));
+        verify(kafkaTemplate, never()).send(anyString(), anyInt(), eq("event-1"), any());
+        verify(kafkaTemplate).send(anyString(), anyInt(), eq("event-2"), eq("payload-2"));
+        assertEquals(List.of(List.of("outbox-0", "outbox-1", "outbox-2")), deleted);
+    }
+
+    private static List<OutboxEvent> events(int from, int to) {
+        return IntStream.range(from, to)
+                .mapToObj(i -> OutboxEvent.builder()
+                        .id("outbox-" + i)
+                        .aggregateId("event-" + i)
+                        .aggregateType("EVENT")
+                        .payload("payload-" + i)
+                        .createdAt(CREATED_AT)
+                        .partitionId(1)
+                        .build())
+                .toList();
+    }
+}
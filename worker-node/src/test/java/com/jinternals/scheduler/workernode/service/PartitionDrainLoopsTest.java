@@ -0,0 +1,34 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionDrainLoopsTest {
+
+    @Test
+    void keepsDrainingAfterADrainThrowsAnError() throws Exception {
+        PartitionPollSchedule schedule = new PartitionPollSchedule(10, 10);
+        AtomicInteger drains = new AtomicInteger();
+        CountDownLatch drainedAgain = new CountDownLatch(1);
+        PartitionDrainLoops loops = new PartitionDrainLoops("test-drain", schedule,
+                new DrainLimiter(new PartitionManager(), 1, 1, 6), partition -> {
+                    if (drains.incrementAndGet() == 1) {
+                        throw new StackOverflowError();
+                    }
+                    drainedAgain.countDown();
+                    schedule.backOff(partition, System.currentTimeMillis());
+                }, System::currentTimeMillis);
+
+        loops.start(0);
+        try {
+            assertTrue(drainedAgain.await(5, TimeUnit.SECONDS));
+        } finally {
+            loops.stopAll();
+        }
+    }
+}
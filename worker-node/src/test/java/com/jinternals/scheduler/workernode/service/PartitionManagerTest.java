@@ -0,0 +1,46 @@
+package com.jinternals.scheduler.workernode.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionManagerTest {
+
+    private final PartitionManager partitionManager = new PartitionManager();
+
+    @Test
+    void handoffWaitsForWorkInFlight() throws Exception {
+        partitionManager.addPartition(1, 7);
+        assertEquals(7, partitionManager.getEpoch(1));
+        assertTrue(partitionManager.startWork(1));
+
+        CompletableFuture<Void> handoff = CompletableFuture.runAsync(() -> partitionManager.removePartition(1));
+        // New work is refused as soon as the handoff started, but the handoff waits for the running task
+        while (partitionManager.getActivePartitions().contains(1)) {
+            Thread.onSpinWait();
+        }
+        assertFalse(partitionManager.startWork(1));
+        Thread.sleep(100);
+        assertFalse(handoff.isDone());
+
+        partitionManager.finishWork(1);
+        handoff.get(5, TimeUnit.SECONDS);
+        assertEquals(0, partitionManager.getEpoch(1));
+    }
+
+    @Test
+    void handoffGivesUpOnStuckWorkAfterTheTimeout() {
+        ReflectionTestUtils.setField(partitionManager, "handoffTimeoutMs", 50L);
+        partitionManager.addPartition(1, 1);
+        assertTrue(partitionManager.startWork(1));
+
+        long started = System.nanoTime();
+        partitionManager.removePartition(1);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 50);
+        assertFalse(partitionManager.getActivePartitions().contains(1));
+    }
+}
@@ -0,0 +1,86 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.VirtualBuckets;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PartitionMigratorTest {
+
+    @Mock
+    private PartitionManager partitionManager;
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PartitionMigrator partitionMigrator;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(partitionManager.getActivePartitions()).thenReturn(Set.of(1));
+        when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+
+        partitionMigrator = new PartitionMigrator(partitionManager, eventRepository, jdbcTemplate, transactionManager,
+                Runnable::run, 100, 30000);
+        ReflectionTestUtils.setField(partitionMigrator, "numPartitions", 12);
+    }
+
+    @Test
+    void movesMisplacedEventsToTheirBucketsPartition() {
+        // Partition 1 of 6 holds the buckets that now map to 1 or 7
+        List<Event> misplaced = IntStream.range(0, 200)
+                .mapToObj(i -> "event-" + i)
+                .filter(id -> VirtualBuckets.partition(id, 6) == 1 && VirtualBuckets.partition(id, 12) == 7)
+                .map(PartitionMigratorTest::event)
+                .toList();
+        Event legacy = event("legacy");
+        legacy.setBucket(null);
+        List<Event> batch = new ArrayList<>(misplaced);
+        batch.add(legacy);
+        when(eventRepository.lockMisplacedEvents(1, 12, 500)).thenReturn(batch);
+
+        partitionMigrator.execute();
+
+        misplaced.forEach(event -> assertEquals(7, event.getPartitionId()));
+        assertEquals(VirtualBuckets.bucket("legacy"), legacy.getBucket());
+        assertEquals(VirtualBuckets.partition("legacy", 12), legacy.getPartitionId());
+        verify(eventRepository).saveAll(batch);
+        verify(jdbcTemplate).queryForObject(eq("SELECT pg_notify(?, ?)"), eq(String.class),
+                eq("scheduler_partition_7"), anyString());
+    }
+
+    private static Event event(String id) {
+        Event event = new Event();
+        event.setId(id);
+        event.setBucket(VirtualBuckets.bucket(id));
+        event.setPartitionId(1);
+        event.setStatus(EventStatus.PENDING);
+        event.setScheduledTime(LocalDateTime.of(2030, 1, 1, 0, 0));
+        return event;
+    }
+}
@@ -0,0 +1,64 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.PartitionNotifications;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Needs a real Postgres, e.g. {@code -Dscheduler.test.postgres-url=jdbc:postgresql://localhost:5432/scheduler_db}.
+ */
+@EnabledIfSystemProperty(named = "scheduler.test.postgres-url", matches = ".+")
+class PartitionNotificationListenerTest {
+
+    private final PartitionManager partitionManager = mock(PartitionManager.class);
+    private final EventProcessor eventProcessor = mock(EventProcessor.class);
+    private DriverManagerDataSource dataSource;
+    private PartitionNotificationListener listener;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new DriverManagerDataSource(System.getProperty("scheduler.test.postgres-url"),
+                System.getProperty("scheduler.test.postgres-user", "user"),
+                System.getProperty("scheduler.test.postgres-password", "password"));
+        when(partitionManager.getActivePartitions()).thenReturn(Set.of(1, 2));
+        listener = new PartitionNotificationListener(dataSource, partitionManager, eventProcessor, 100);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        listener.stop();
+    }
+
+    @Test
+    void resyncsOwnedPartitionsAndForwardsTheirNotifications() {
+        listener.start();
+        verify(eventProcessor, timeout(2000)).resync(1);
+        verify(eventProcessor, timeout(2000)).resync(2);
+
+        LocalDateTime scheduledTime = LocalDateTime.of(2030, 1, 1, 12, 0);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        notify(jdbcTemplate, 1, PartitionNotifications.payload(scheduledTime, "event-1"));
+        notify(jdbcTemplate, 2, PartitionNotifications.payload(scheduledTime, null));
+        notify(jdbcTemplate, 3, PartitionNotifications.payload(scheduledTime, "not-owned"));
+
+        verify(eventProcessor, timeout(2000)).onEventsScheduled(1, scheduledTime, "event-1");
+        verify(eventProcessor, timeout(2000)).onEventsScheduled(2, scheduledTime, null);
+        verify(eventProcessor, after(500).never()).onEventsScheduled(eq(3), any(), any());
+        verify(eventProcessor, times(2)).resync(anyInt());
+    }
+
+    private static void notify(JdbcTemplate jdbcTemplate, int partition, String payload) {
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", String.class,
+                PartitionNotifications.channel(partition), payload);
+    }
+}
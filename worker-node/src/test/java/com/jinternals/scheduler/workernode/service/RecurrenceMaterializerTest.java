@@ -0,0 +1,89 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.Recurrences;
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RecurrenceMaterializerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2030, 1, 1, 12, 0, 7);
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ClockService clockService;
+
+    private RecurrenceMaterializer recurrenceMaterializer;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(clockService.getCurrentDateTime()).thenReturn(NOW);
+        recurrenceMaterializer = new RecurrenceMaterializer(eventRepository, jdbcTemplate, clockService);
+    }
+
+    @Test
+    void storesTheNextOccurrenceOnTheSeriesGrid() {
+        Event fired = event("series-1", LocalDateTime.of(2030, 1, 1, 12, 0));
+        fired.setIntervalMs(5_000L);
+        when(eventRepository.insertOccurrence(any())).thenReturn(1);
+
+        assertEquals(1, recurrenceMaterializer.materializeNext(List.of(fired, event("one-off", NOW))));
+
+        // Fired 7s late: 12:00:05 was missed and is skipped
+        ArgumentCaptor<Event> next = ArgumentCaptor.forClass(Event.class);
+        verify(eventRepository).insertOccurrence(next.capture());
+        LocalDateTime expected = LocalDateTime.of(2030, 1, 1, 12, 0, 10);
+        assertEquals(expected, next.getValue().getScheduledTime());
+        assertEquals(Recurrences.occurrenceId("series-1", expected), next.getValue().getId());
+        assertEquals("series-1", next.getValue().getSeriesId());
+        assertEquals(3, next.getValue().getPartitionId());
+        assertEquals(EventStatus.PENDING, next.getValue().getStatus());
+        verify(jdbcTemplate).queryForObject(eq("SELECT pg_notify(?, ?)"), eq(String.class),
+                eq("scheduler_partition_3"), anyString());
+    }
+
+    @Test
+    void endsTheSeriesAndSkipsOccurrencesAlreadyStored() {
+        Event ending = event("series-1", LocalDateTime.of(2030, 1, 1, 12, 0));
+        ending.setCronExpression("0 0 * * * *");
+        ending.setRecurrenceEnd(LocalDateTime.of(2030, 1, 1, 12, 30));
+        Event repeated = event("series-2", LocalDateTime.of(2030, 1, 1, 12, 0));
+        repeated.setCronExpression("0 0 * * * *");
+        when(eventRepository.insertOccurrence(any())).thenReturn(0);
+
+        assertEquals(0, recurrenceMaterializer.materializeNext(List.of(ending, repeated)));
+
+        ArgumentCaptor<Event> next = ArgumentCaptor.forClass(Event.class);
+        verify(eventRepository).insertOccurrence(next.capture());
+        assertEquals(LocalDateTime.of(2030, 1, 1, 13, 0), next.getValue().getScheduledTime());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    private static Event event(String id, LocalDateTime scheduledTime) {
+        Event event = new Event();
+        event.setId(id);
+        event.setPartitionId(3);
+        event.setScheduledTime(scheduledTime);
+        event.setStatus(EventStatus.PROCESSED);
+        return event;
+    }
+}
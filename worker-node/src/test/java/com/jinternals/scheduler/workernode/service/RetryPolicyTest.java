@@ -0,0 +1,87 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.Event;
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RetryPolicyTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2030, 1, 1, 0, 0);
+    private static final LocalDateTime CLAIMED_AT = NOW.minusSeconds(1);
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+    private RetryPolicy retryPolicy;
+
+    @BeforeEach
+    void setUp() {
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(i -> mock(TransactionStatus.class));
+        ClockService clockService = mock(ClockService.class);
+        when(clockService.getCurrentDateTime()).thenReturn(NOW);
+        retryPolicy = new RetryPolicy(eventRepository, clockService, transactionManager, 3, 1000, 5000);
+    }
+
+    @Test
+    void backsOffExponentiallyUpToTheMaximumDelay() {
+        for (int attempts = 1; attempts <= 6; attempts++) {
+            long delay = Math.min(1000L << (attempts - 1), 5000);
+            Duration backoff = retryPolicy.backoff(attempts);
+            assertTrue(backoff.toMillis() >= delay / 2 && backoff.toMillis() <= delay, backoff.toString());
+        }
+    }
+
+    @Test
+    void reschedulesUntilTheLastAttemptThenFails() {
+        RuntimeException cause = new RuntimeException("x".repeat(10_000));
+
+        retryPolicy.recordFailure(1, event(0), cause);
+        ArgumentCaptor<LocalDateTime> retryAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<String> trace = ArgumentCaptor.forClass(String.class);
+        verify(eventRepository).failClaim(eq(1), eq("event-1"), eq(CLAIMED_AT), eq(EventStatus.IN_PROGRESS),
+                eq(EventStatus.PENDING), retryAt.capture(), trace.capture());
+        assertFalse(retryAt.getValue().isBefore(NOW.plusNanos(500_000_000)));
+        assertFalse(retryAt.getValue().isAfter(NOW.plusSeconds(1)));
+        assertEquals(RetryPolicy.MAX_STACK_TRACE_LENGTH, trace.getValue().length());
+
+        Event exhausted = event(2);
+        retryPolicy.recordFailure(1, exhausted, cause);
+        verify(eventRepository).failClaim(eq(1), eq("event-1"), eq(CLAIMED_AT), eq(EventStatus.IN_PROGRESS),
+                eq(EventStatus.FAILED), eq(exhausted.getScheduledTime()), anyString());
+    }
+
+    @Test
+    void postponesWithoutCountingAnAttempt() {
+        retryPolicy.postpone(1, List.of(event(2)), new RuntimeException("broker unavailable"));
+
+        ArgumentCaptor<LocalDateTime> retryAt = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(eventRepository).postponeClaim(eq(1), eq(List.of("event-1")), eq(CLAIMED_AT),
+                eq(EventStatus.IN_PROGRESS), eq(EventStatus.PENDING), retryAt.capture());
+        assertFalse(retryAt.getValue().isBefore(NOW.plusNanos(500_000_000)));
+        assertFalse(retryAt.getValue().isAfter(NOW.plusSeconds(1)));
+        verify(eventRepository, never()).failClaim(anyInt(), any(), any(), any(), any(), any(), any());
+    }
+
+    private static Event event(int attempts) {
+        Event event = new Event();
+        event.setId("event-1");
+        event.setPartitionId(1);
+        event.setStatus(EventStatus.IN_PROGRESS);
+        event.setLockedAt(CLAIMED_AT);
+        event.setScheduledTime(NOW.minusMinutes(1));
+        event.setAttempts(attempts);
+        return event;
+    }
+}
@@ -0,0 +1,74 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.model.EventTrigger;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StandbyPrefetcherTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+    private final EventProcessor eventProcessor = mock(EventProcessor.class);
+    private final PartitionManager partitionManager = new PartitionManager();
+    private StandbyPrefetcher prefetcher;
+
+    @BeforeEach
+    void setUp() {
+        ClockService clockService = mock(ClockService.class);
+        when(clockService.getCurrentDateTime()).thenReturn(NOW);
+        prefetcher = new StandbyPrefetcher(partitionManager, eventRepository, eventProcessor, clockService,
+                Runnable::run, 10_000, 2);
+        prefetcher.start();
+    }
+
+    @Test
+    void promotedPartitionStartsFromItsStandbyWindow() {
+        List<EventTrigger> triggers = List.of(new EventTrigger("event-1", NOW.plusSeconds(1)));
+        when(eventRepository.findNextScheduledTime(1, EventStatus.PENDING)).thenReturn(NOW.minusSeconds(5));
+        when(eventRepository.findTriggers(1, EventStatus.PENDING, NOW, NOW.plusSeconds(10), Limit.of(2)))
+                .thenReturn(triggers);
+
+        partitionManager.addStandbyPartition(1);
+        assertEquals(NOW.minusSeconds(5), prefetcher.window(1).nextDue());
+        verifyNoInteractions(eventProcessor);
+
+        partitionManager.addPartition(1, 1);
+        verify(eventProcessor).warmStart(1, triggers, NOW.plusSeconds(10));
+        assertNull(prefetcher.window(1));
+    }
+
+    @Test
+    void truncatedWindowOnlyReachesTheLastLoadedEvent() {
+        List<EventTrigger> triggers = List.of(new EventTrigger("event-1", NOW.plusSeconds(1)),
+                new EventTrigger("event-2", NOW.plusSeconds(2)));
+        when(eventRepository.findNextScheduledTime(1, EventStatus.PENDING)).thenReturn(NOW.plusSeconds(1));
+        when(eventRepository.findTriggers(eq(1), any(), any(), any(), any())).thenReturn(triggers);
+
+        partitionManager.addStandbyPartition(1);
+        assertEquals(NOW.plusSeconds(2), prefetcher.window(1).horizon());
+    }
+
+    @Test
+    void idlePartitionOnlyProbesAndColdPromotionPollsAtOnce() {
+        when(eventRepository.findNextScheduledTime(2, EventStatus.PENDING)).thenReturn(NOW.plusMinutes(5));
+
+        partitionManager.addStandbyPartition(2);
+        prefetcher.refresh();
+        verify(eventRepository, never()).findTriggers(anyInt(), any(), any(), any(), any());
+        assertTrue(prefetcher.window(2).triggers().isEmpty());
+
+        partitionManager.addPartition(3, 1);
+        verify(eventProcessor).warmStart(3, List.of(), null);
+    }
+}
@@ -0,0 +1,57 @@
+package com.jinternals.scheduler.workernode.service;
+
+import com.jinternals.scheduler.common.model.EventStatus;
+import com.jinternals.scheduler.common.repositories.EventRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StuckEventReaperTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2030, 1, 1, 0, 0);
+
+    private final EventRepository eventRepository = mock(EventRepository.class);
+    private final PartitionManager partitionManager = new PartitionManager();
+    private final ClaimLeases claimLeases = new ClaimLeases(10_000);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private StuckEventReaper reaper;
+
+    @BeforeEach
+    void setUp() {
+        ClockService clockService = mock(ClockService.class);
+        when(clockService.getCurrentDateTime()).thenReturn(NOW);
+        reaper = new StuckEventReaper(eventRepository, partitionManager, claimLeases, clockService,
+                new SchedulerMetrics(meterRegistry, partitionManager, clockService));
+        partitionManager.addPartition(1, 1);
+        partitionManager.addPartition(2, 1);
+    }
+
+    @Test
+    void renewsClaimsBeingDispatchedAndRecoversExpiredOnes() {
+        LocalDateTime claimedAt = NOW.minusSeconds(30);
+        claimLeases.hold(1, claimedAt);
+        claimLeases.hold(1, claimedAt);
+        claimLeases.release(1, claimedAt);
+        when(eventRepository.releaseExpiredLeases(2, EventStatus.IN_PROGRESS, EventStatus.PENDING, NOW))
+                .thenReturn(3);
+
+        reaper.recoverStuckEvents();
+
+        // Still held once, so the claim outlives its original lease
+        verify(eventRepository).renewLeases(1, EventStatus.IN_PROGRESS, Set.of(claimedAt), NOW.plusSeconds(10));
+        verify(eventRepository, never()).renewLeases(eq(2), any(), any(), any());
+        verify(eventRepository).releaseExpiredLeases(1, EventStatus.IN_PROGRESS, EventStatus.PENDING, NOW);
+        assertEquals(3, meterRegistry.get("scheduler.reaper.recovered").counter().count());
+
+        claimLeases.release(1, claimedAt);
+        reaper.recoverStuckEvents();
+        verify(eventRepository, times(1)).renewLeases(anyInt(), any(), any(), any());
+    }
+}
@@ -0,0 +1,86 @@
+package com.jinternals.scheduler.workernode.wheel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EventTimerTest {
+
+    private final Map<String, Long> firedAt = new ConcurrentHashMap<>();
+    private final Map<String, Integer> firedPartition = new ConcurrentHashMap<>();
+    private CountDownLatch latch;
+    private EventTimer timer;
+
+    @AfterEach
+    void tearDown() {
+        if (timer != null) {
+            timer.close();
+        }
+    }
+
+    @Test
+    void firesEachEventAtItsDeadlineAcrossWheelLevels() throws InterruptedException {
+        latch = new CountDownLatch(4);
+        timer = new EventTimer(1, 16, this::record);
+
+        long now = System.currentTimeMillis();
+        Map<String, Long> deadlines = Map.of(
+                "a", now + 20,
+                "b", now + 75,
+                "c", now + 300,
+                "d", now + 1200);
+        deadlines.forEach((id, deadline) -> timer.schedule(id.equals("d") ? 2 : 1, id, deadline));
+
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        deadlines.forEach((id, deadline) -> assertThat(firedAt.get(id))
+                .as("fire time of %s", id)
+                .isBetween(deadline, deadline + 100));
+        assertThat(firedPartition).containsEntry("a", 1).containsEntry("d", 2);
+        assertThat(timer.size(1)).isZero();
+    }
+
+    @Test
+    void firesOverdueEventsImmediately() throws InterruptedException {
+        latch = new CountDownLatch(1);
+        timer = new EventTimer(1, 16, this::record);
+
+        timer.schedule(1, "late", System.currentTimeMillis() - 1000);
+
+        assertThat(latch.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThat(firedAt).containsKey("late");
+    }
+
+    @Test
+    void dropsEventsOfReleasedPartitions() throws InterruptedException {
+        latch = new CountDownLatch(1);
+        timer = new EventTimer(1, 16, this::record);
+
+        long now = System.currentTimeMillis();
+        timer.schedule(1, "kept", now + 100);
+        timer.schedule(2, "released", now + 200);
+        assertThat(timer.size(2)).isEqualTo(1);
+
+        timer.retainPartitions(Set.of(1));
+
+        assertThat(latch.await(2, TimeUnit.SECONDS)).isTrue();
+        Thread.sleep(300);
+        assertThat(firedAt).containsOnlyKeys("kept");
+    }
+
+    private void record(int partition, List<String> ids) {
+        long now = System.currentTimeMillis();
+        ids.forEach(id -> {
+            firedAt.put(id, now);
+            firedPartition.put(id, partition);
+            latch.countDown();
+        });
+    }
+}